@@ -17,10 +17,16 @@
  */
 package org.magnum.dataup;
 
+import java.util.Arrays;
+
 import javax.servlet.MultipartConfigElement;
 
+import org.magnum.dataup.compression.CompressionFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.context.embedded.MultiPartConfigFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
@@ -62,4 +68,23 @@ public class Application {
 		return factory.createMultipartConfig();
 	}
 
+	// This filter compresses JSON responses for clients that send an
+	// Accept-Encoding header asking for gzip or deflate. Responses smaller
+	// than video.compression.min-size bytes, responses whose type isn't in
+	// video.compression.mime-types, and the (already compressed) video data
+	// are sent as they are. Set video.compression.enabled=false to turn it
+	// off, e.g., when a proxy in front of the application compresses.
+	@Bean
+	@ConditionalOnExpression("${video.compression.enabled:true}")
+	public CompressionFilter compressionFilter(
+			@Value("${video.compression.min-size:1024}") int minSize,
+			@Value("${video.compression.mime-types:application/json,text/html,text/plain}") String[] mimeTypes,
+			@Value("${video.compression.excluded-paths:" + VideoSvcApi.VIDEO_DATA_PATH + "}") String[] excludedPaths,
+			GaugeService gaugeService) {
+		CompressionFilter filter = new CompressionFilter(minSize,
+				Arrays.asList(mimeTypes), Arrays.asList(excludedPaths));
+		filter.setGaugeService(gaugeService);
+		return filter;
+	}
+
 }
@@ -0,0 +1,495 @@
+/*
+ *
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.magnum.dataup.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A servlet filter that compresses responses with gzip or deflate, for
+ * clients that say they can take them in their Accept-Encoding header.
+ * Lists of videos are repetitive JSON that usually shrinks to a fraction
+ * of its size, which is a big saving on a cellular link.
+ *
+ * A response is only compressed if:
+ *
+ * 1. Its Content-Type is in the allowlist of MIME types that the filter
+ *    was given (e.g., application/json). A type like "text/*" allows
+ *    every subtype.
+ * 2. Its body is at least minSize bytes. Below a few hundred bytes, the
+ *    gzip header and the CPU time cost more than they save.
+ * 3. Its path doesn't match one of the excluded path patterns. The video
+ *    data at VideoSvcApi.VIDEO_DATA_PATH is already compressed by its
+ *    codec, so compressing it again would burn CPU on every byte of a
+ *    large download for no gain.
+ *
+ * The filter buffers the first minSize bytes of a response to decide if
+ * it is big enough, and then streams the rest through the compressor, so
+ * a large response is never held in memory as a whole.
+ *
+ * The filter counts the bytes that it compressed and the bytes that it
+ * sent in their place (see getBytesIn() and getBytesOut()). If it is
+ * given a GaugeService, it also reports them as the
+ * "compression.bytes.in" and "compression.bytes.out" gauges on the
+ * /metrics endpoint.
+ *
+ * Spring Boot (as of 1.0) has no settings to turn on compression in the
+ * embedded container, and a filter works the same in Tomcat and Jetty.
+ *
+ * @author jules
+ *
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+	public static final String GZIP = "gzip";
+
+	public static final String DEFLATE = "deflate";
+
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	private static final String VARY = "Vary";
+
+	private final int minSize;
+
+	private final Set<String> mimeTypes = new HashSet<String>();
+
+	private final List<String> excludedPaths = new ArrayList<String>();
+
+	private final PathMatcher pathMatcher = new AntPathMatcher();
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	private final AtomicLong compressedResponses = new AtomicLong();
+
+	private final AtomicLong bytesIn = new AtomicLong();
+
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	private GaugeService gaugeService;
+
+	public CompressionFilter(int minSize, Collection<String> mimeTypes,
+			Collection<String> excludedPaths) {
+		this.minSize = minSize;
+		for (String type : mimeTypes) {
+			this.mimeTypes.add(type.trim().toLowerCase(Locale.ENGLISH));
+		}
+		for (String path : excludedPaths) {
+			this.excludedPaths.add(path.trim());
+		}
+	}
+
+	public void setGaugeService(GaugeService gaugeService) {
+		this.gaugeService = gaugeService;
+	}
+
+	public long getCompressedResponses() {
+		return compressedResponses.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request,
+			HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String encoding = chooseEncoding(request.getHeader(ACCEPT_ENCODING));
+		if (encoding == null || isExcluded(request)) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		CompressingResponse wrapper = new CompressingResponse(response, encoding);
+		try {
+			chain.doFilter(request, wrapper);
+			wrapper.finish();
+		} finally {
+			// Even if the application threw halfway through the body
+			wrapper.end();
+		}
+	}
+
+	private boolean isExcluded(HttpServletRequest request) {
+		String path = urlPathHelper.getPathWithinApplication(request);
+		for (String pattern : excludedPaths) {
+			if (pathMatcher.match(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		String type = contentType.toLowerCase(Locale.ENGLISH);
+		int params = type.indexOf(';');
+		if (params >= 0) {
+			type = type.substring(0, params);
+		}
+		type = type.trim();
+		int slash = type.indexOf('/');
+		return mimeTypes.contains(type)
+				|| (slash > 0 && mimeTypes.contains(type.substring(0, slash) + "/*"));
+	}
+
+	/**
+	 * Picks the encoding to use from an Accept-Encoding header, such as
+	 * "gzip, deflate" or "deflate;q=1.0, gzip;q=0.5". Returns null if the
+	 * client didn't ask for either one, or turned both off with q=0.
+	 * gzip wins a tie, because every client that knows deflate knows gzip
+	 * too, and some of them get deflate wrong.
+	 */
+	static String chooseEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+
+		float gzip = -1;
+		float deflate = -1;
+		float any = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim().toLowerCase(Locale.ENGLISH);
+			float q = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						q = Float.parseFloat(param.substring(2));
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+			if (GZIP.equals(name) || "x-gzip".equals(name)) {
+				gzip = q;
+			} else if (DEFLATE.equals(name)) {
+				deflate = q;
+			} else if ("*".equals(name)) {
+				any = q;
+			}
+		}
+		if (gzip < 0) {
+			gzip = Math.max(any, 0);
+		}
+		if (deflate < 0) {
+			deflate = Math.max(any, 0);
+		}
+
+		if (gzip > 0 && gzip >= deflate) {
+			return GZIP;
+		} else if (deflate > 0) {
+			return DEFLATE;
+		} else {
+			return null;
+		}
+	}
+
+	private void record(long in, long out) {
+		compressedResponses.incrementAndGet();
+		long totalIn = bytesIn.addAndGet(in);
+		long totalOut = bytesOut.addAndGet(out);
+		if (gaugeService != null) {
+			gaugeService.submit("compression.bytes.in", totalIn);
+			gaugeService.submit("compression.bytes.out", totalOut);
+		}
+	}
+
+	/**
+	 * Holds the body back until it has seen minSize bytes (or the end of
+	 * the body), and then decides whether to send it compressed or as-is.
+	 * The Content-Length that the application sets is held back too, since
+	 * it doesn't apply to a compressed body.
+	 */
+	private class CompressingResponse extends HttpServletResponseWrapper {
+
+		private final String encoding;
+
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		private OutputStream target;
+
+		private DeflaterOutputStream compressor;
+
+		// The zlib state behind the compressor lives outside the heap, so
+		// it is freed with end() as soon as the response is done rather
+		// than whenever the Deflater happens to be finalized
+		private Deflater deflater;
+
+		private CountingOutputStream compressed;
+
+		private long uncompressed;
+
+		private long contentLength = -1;
+
+		private ServletOutputStream stream;
+
+		private PrintWriter writer;
+
+		public CompressingResponse(HttpServletResponse response, String encoding) {
+			super(response);
+			this.encoding = encoding;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			if (target == null) {
+				contentLength = len;
+			} else if (compressor == null) {
+				super.setContentLength(len);
+			}
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLength(Integer.parseInt(value));
+			} else {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLength(Integer.parseInt(value));
+			} else {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLength(value);
+			} else {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLength(value);
+			} else {
+				super.addIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has already been called");
+			}
+			return stream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (stream != null) {
+					throw new IllegalStateException("getOutputStream() has already been called");
+				}
+				writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		private ServletOutputStream stream() {
+			if (stream == null) {
+				stream = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						CompressingResponse.this.write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						CompressingResponse.this.write(b, off, len);
+					}
+
+					@Override
+					public void flush() throws IOException {
+						CompressingResponse.this.flush();
+					}
+				};
+			}
+			return stream;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			flush();
+			super.flushBuffer();
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (buffer != null) {
+				buffer.reset();
+			}
+			super.resetBuffer();
+		}
+
+		@Override
+		public void reset() {
+			if (buffer != null) {
+				buffer.reset();
+				contentLength = -1;
+			}
+			super.reset();
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (target == null) {
+				if (buffer.size() + len < minSize) {
+					buffer.write(b, off, len);
+					return;
+				}
+				start(true);
+			}
+			uncompressed += len;
+			target.write(b, off, len);
+		}
+
+		// Until the filter has decided, a flush can't send anything (the
+		// headers would be committed), so the bytes stay in the buffer.
+		// Once it is compressing, a flush pushes out everything that has
+		// been compressed so far, as streamed responses expect.
+		private void flush() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (target != null) {
+				target.flush();
+			}
+		}
+
+		private void start(boolean large) throws IOException {
+			HttpServletResponse response = (HttpServletResponse) getResponse();
+			boolean compressible = isCompressible(getContentType());
+			if (compressible) {
+				response.addHeader(VARY, ACCEPT_ENCODING);
+			}
+
+			if (large && compressible && !response.containsHeader(CONTENT_ENCODING)) {
+				response.setHeader(CONTENT_ENCODING, encoding);
+				compressed = new CountingOutputStream(response.getOutputStream());
+				if (GZIP.equals(encoding)) {
+					GzipStream gzip = new GzipStream(compressed);
+					deflater = gzip.deflater();
+					compressor = gzip;
+				} else {
+					deflater = new Deflater();
+					compressor = new DeflaterOutputStream(compressed, deflater, 8192, true);
+				}
+				target = compressor;
+			} else {
+				if (!large) {
+					response.setContentLength(buffer.size());
+				} else if (contentLength >= 0) {
+					response.setContentLength((int) contentLength);
+				}
+				target = response.getOutputStream();
+			}
+
+			uncompressed = buffer.size();
+			buffer.writeTo(target);
+			buffer = null;
+		}
+
+		public void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (target == null) {
+				if (buffer.size() == 0) {
+					// Nothing was written (e.g., a redirect, a 304 or an
+					// error sent with sendError()), so leave it alone
+					return;
+				}
+				start(false);
+			}
+			if (compressor != null) {
+				compressor.finish();
+				compressor.flush();
+				record(uncompressed, compressed.getCount());
+			}
+		}
+
+		// Not close(), which would close the response's own stream too
+		public void end() {
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+	}
+
+	// A GZIPOutputStream that lets us get at its Deflater, so that it can be
+	// ended without closing the stream underneath
+	private static class GzipStream extends GZIPOutputStream {
+
+		public GzipStream(OutputStream out) throws IOException {
+			super(out, 8192, true);
+		}
+
+		public Deflater deflater() {
+			return def;
+		}
+	}
+
+}
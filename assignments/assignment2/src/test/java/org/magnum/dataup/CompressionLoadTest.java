@@ -0,0 +1,216 @@
+/*
+ *
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.dataup.model.Video;
+
+import retrofit.RestAdapter;
+import retrofit.mime.TypedFile;
+
+/**
+ *
+ * A small load test for the CompressionFilter. It fills the running
+ * application with videos and then has several threads fetch the list of
+ * videos over and over, once without compression and once with each of
+ * gzip and deflate. For each one, it prints the bytes that went over the
+ * wire, the share of them that compression saved, and the median (p50)
+ * and 99th percentile (p99) latency of a request.
+ *
+ * The latency includes the time that the client takes to decompress the
+ * list, since a phone pays for that too. It also checks that the video
+ * data isn't compressed, even for a client that asks for it.
+ *
+ * Like the AutoGradingTest, this test needs the application to be running
+ * on localhost:8080 first.
+ *
+ * @author jules
+ *
+ */
+public class CompressionLoadTest {
+
+	private static final String SERVER = "http://localhost:8080";
+
+	private static final int VIDEOS = 500;
+
+	private static final int THREADS = 8;
+
+	private static final int REQUESTS_PER_THREAD = 250;
+
+	private static final int WARMUP_REQUESTS = 200;
+
+	private File testVideoData = new File("src/test/resources/test.mp4");
+
+	private VideoSvcApi videoSvc = new RestAdapter.Builder()
+			.setEndpoint(SERVER).build()
+			.create(VideoSvcApi.class);
+
+	private Video video;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < VIDEOS; i++) {
+			video = videoSvc.addVideo(Video.create().withContentType("video/mp4")
+					.withDuration(123).withSubject(UUID.randomUUID().toString())
+					.withTitle(UUID.randomUUID().toString()).build());
+		}
+	}
+
+	@Test
+	public void testCompressionUnderLoad() throws Exception {
+		Result identity = load("identity");
+		Result gzip = load("gzip");
+		Result deflate = load("deflate");
+
+		print(identity, identity);
+		print(gzip, identity);
+		print(deflate, identity);
+
+		assertTrue(gzip.bytes < identity.bytes / 2);
+		assertTrue(deflate.bytes < identity.bytes / 2);
+	}
+
+	@Test
+	public void testVideoDataIsNotCompressed() throws Exception {
+		videoSvc.setVideoData(video.getId(), new TypedFile(video.getContentType(), testVideoData));
+
+		HttpURLConnection connection = open(SERVER
+				+ VideoSvcApi.VIDEO_DATA_PATH.replace("{id}", String.valueOf(video.getId())), "gzip, deflate");
+		assertEquals(200, connection.getResponseCode());
+		assertNull(connection.getHeaderField("Content-Encoding"));
+		assertArrayEquals(FileUtils.readFileToByteArray(testVideoData),
+				IOUtils.toByteArray(connection.getInputStream()));
+	}
+
+	private Result load(final String encoding) throws Exception {
+		for (int i = 0; i < WARMUP_REQUESTS; i++) {
+			fetchList(encoding);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<long[][]>> futures = new ArrayList<Future<long[][]>>();
+		for (int t = 0; t < THREADS; t++) {
+			futures.add(executor.submit(new Callable<long[][]>() {
+				@Override
+				public long[][] call() throws Exception {
+					long[] latencies = new long[REQUESTS_PER_THREAD];
+					long[] bytes = new long[REQUESTS_PER_THREAD];
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						long start = System.nanoTime();
+						bytes[i] = fetchList(encoding);
+						latencies[i] = System.nanoTime() - start;
+					}
+					return new long[][] { latencies, bytes };
+				}
+			}));
+		}
+
+		Result result = new Result(encoding, THREADS * REQUESTS_PER_THREAD);
+		int n = 0;
+		for (Future<long[][]> f : futures) {
+			long[][] r = f.get();
+			for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+				result.latencies[n++] = r[0][i];
+				result.bytes += r[1][i];
+			}
+		}
+		executor.shutdown();
+		Arrays.sort(result.latencies);
+		return result;
+	}
+
+	// Fetches the list of videos and returns the number of bytes that came
+	// over the wire (HttpURLConnection doesn't decompress on its own)
+	private long fetchList(String encoding) throws IOException {
+		HttpURLConnection connection = open(SERVER + VideoSvcApi.VIDEO_SVC_PATH, encoding);
+		byte[] wire = IOUtils.toByteArray(connection.getInputStream());
+
+		String contentEncoding = connection.getHeaderField("Content-Encoding");
+		InputStream in = new ByteArrayInputStream(wire);
+		if ("identity".equals(encoding)) {
+			assertNull(contentEncoding);
+		} else {
+			assertEquals(encoding, contentEncoding);
+			in = "gzip".equals(encoding) ? new GZIPInputStream(in) : new InflaterInputStream(in);
+		}
+		byte[] json = IOUtils.toByteArray(in);
+		assertEquals('[', json[0]);
+		return wire.length;
+	}
+
+	private HttpURLConnection open(String url, String encoding) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestProperty("Accept", "application/json");
+		connection.setRequestProperty("Accept-Encoding", encoding);
+		return connection;
+	}
+
+	private void print(Result r, Result baseline) {
+		long perRequest = r.bytes / r.latencies.length;
+		long saved = 100 - (100 * r.bytes / baseline.bytes);
+		System.out.println(String.format(
+				"%-9s %6d requests, %6d bytes each, %2d%% saved, p50 %5.2fms, p99 %5.2fms",
+				r.encoding + ":", r.latencies.length, perRequest, saved,
+				r.percentile(50) / 1e6, r.percentile(99) / 1e6));
+	}
+
+	private static class Result {
+
+		private final String encoding;
+
+		private final long[] latencies;
+
+		private long bytes;
+
+		public Result(String encoding, int requests) {
+			this.encoding = encoding;
+			this.latencies = new long[requests];
+		}
+
+		public long percentile(int p) {
+			int index = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+			return latencies[Math.max(index, 0)];
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.magnum.dataup.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.magnum.dataup.VideoSvcApi;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ *
+ * This test runs responses through the CompressionFilter with mock
+ * requests and responses, and checks which of them it compresses and that
+ * the compressed ones decompress to what the application wrote.
+ *
+ * @author jules
+ *
+ */
+public class CompressionFilterTest {
+
+	private static final String JSON = "application/json;charset=UTF-8";
+
+	private static final int MIN_SIZE = 1024;
+
+	private final CompressionFilter filter = new CompressionFilter(MIN_SIZE,
+			Arrays.asList("application/json", "text/*"),
+			Arrays.asList(VideoSvcApi.VIDEO_DATA_PATH));
+
+	@Test
+	public void testGzip() throws Exception {
+		byte[] body = videoList(100);
+		MockHttpServletResponse response = respond("/video", "gzip, deflate", JSON, body);
+
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		byte[] sent = response.getContentAsByteArray();
+		assertTrue(sent.length < body.length / 2);
+		assertArrayEquals(body, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(sent))));
+
+		assertEquals(1, filter.getCompressedResponses());
+		assertEquals(body.length, filter.getBytesIn());
+		assertEquals(sent.length, filter.getBytesOut());
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+		byte[] body = videoList(100);
+		MockHttpServletResponse response = respond("/video", "deflate", JSON, body);
+
+		assertEquals("deflate", response.getHeader("Content-Encoding"));
+		InputStream in = new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()));
+		assertArrayEquals(body, IOUtils.toByteArray(in));
+	}
+
+	@Test
+	public void testSmallResponseIsNotCompressed() throws Exception {
+		byte[] body = videoList(1);
+		assertTrue(body.length < MIN_SIZE);
+		MockHttpServletResponse response = respond("/video", "gzip", JSON, body);
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(body.length, response.getContentLength());
+		assertArrayEquals(body, response.getContentAsByteArray());
+	}
+
+	@Test
+	public void testOtherTypesAreNotCompressed() throws Exception {
+		byte[] body = videoList(100);
+		MockHttpServletResponse response = respond("/video", "gzip", "video/mp4", body);
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertArrayEquals(body, response.getContentAsByteArray());
+
+		response = respond("/video", "gzip", "text/plain", body);
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void testVideoDataIsNotCompressed() throws Exception {
+		byte[] body = videoList(100);
+		MockHttpServletResponse response = respond("/video/1/data", "gzip", JSON, body);
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertArrayEquals(body, response.getContentAsByteArray());
+		assertEquals(0, filter.getCompressedResponses());
+	}
+
+	@Test
+	public void testClientsThatDontAskGetPlainResponses() throws Exception {
+		byte[] body = videoList(100);
+		MockHttpServletResponse response = respond("/video", null, JSON, body);
+		assertNull(response.getHeader("Content-Encoding"));
+		assertArrayEquals(body, response.getContentAsByteArray());
+
+		response = respond("/video", "gzip;q=0, identity", JSON, body);
+		assertNull(response.getHeader("Content-Encoding"));
+	}
+
+	@Test
+	public void testApplicationErrorAfterCompressionStarted() throws Exception {
+		final byte[] body = videoList(100);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/video");
+		request.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			filter.doFilter(request, response, new FilterChain() {
+				@Override
+				public void doFilter(ServletRequest req, ServletResponse res)
+						throws IOException, ServletException {
+					res.setContentType(JSON);
+					res.getOutputStream().write(body);
+					throw new IllegalStateException("failed halfway");
+				}
+			});
+			fail("The application's exception should not be swallowed");
+		} catch (IllegalStateException e) {
+			// expected, and the compressor has been ended on the way out
+		}
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals(0, filter.getCompressedResponses());
+	}
+
+	@Test
+	public void testChooseEncoding() {
+		assertEquals("gzip", CompressionFilter.chooseEncoding("gzip"));
+		assertEquals("gzip", CompressionFilter.chooseEncoding("deflate, gzip"));
+		assertEquals("gzip", CompressionFilter.chooseEncoding("*"));
+		assertEquals("deflate", CompressionFilter.chooseEncoding("deflate"));
+		assertEquals("deflate", CompressionFilter.chooseEncoding("gzip;q=0.5, deflate"));
+		assertEquals("deflate", CompressionFilter.chooseEncoding("*, gzip;q=0"));
+		assertNull(CompressionFilter.chooseEncoding("identity"));
+		assertNull(CompressionFilter.chooseEncoding("*;q=0"));
+		assertNull(CompressionFilter.chooseEncoding(null));
+	}
+
+	private MockHttpServletResponse respond(String path, String acceptEncoding,
+			final String contentType, final byte[] body) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest req, ServletResponse res)
+					throws IOException, ServletException {
+				res.setContentType(contentType);
+				res.setContentLength(body.length);
+				res.getOutputStream().write(body);
+			}
+		});
+		return response;
+	}
+
+	// Something that looks like the JSON of a list of videos
+	private static byte[] videoList(int size) throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 1; i <= size; i++) {
+			if (i > 1) {
+				json.append(',');
+			}
+			json.append("{\"id\":").append(i)
+					.append(",\"title\":\"Video ").append(i)
+					.append("\",\"duration\":").append(i * 17)
+					.append(",\"location\":null,\"subject\":\"Mobile Cloud\"")
+					.append(",\"contentType\":\"video/mp4\"")
+					.append(",\"dataUrl\":\"http://localhost:8080/video/").append(i).append("/data\"}");
+		}
+		return json.append(']').toString().getBytes("UTF-8");
+	}
+
+}
@@ -1,5 +1,8 @@
 package org.magnum.mobilecloud.video;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.magnum.mobilecloud.video.json.ResourcesMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -7,6 +10,8 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -47,4 +52,19 @@ public class Application extends RepositoryRestMvcConfiguration {
 		return new ResourcesMapper();
 	}
 
+	// Lets clients ask for the compact format of the ResourcesMapper (a
+	// plain array of videos, without any links) by sending
+	// "Accept: application/x-compact+json". The converter is added after
+	// the ones from Spring Data Rest, so that clients that don't ask for
+	// it still get the usual format. Clients can also add "?compact" to
+	// the request instead (see ResourcesMapper).
+	@Override
+	protected void configureHttpMessageConverters(
+			List<HttpMessageConverter<?>> messageConverters){
+		MappingJackson2HttpMessageConverter compact = new MappingJackson2HttpMessageConverter();
+		compact.setObjectMapper(new ResourcesMapper(true));
+		compact.setSupportedMediaTypes(Arrays.asList(ResourcesMapper.COMPACT_JSON));
+		messageConverters.add(compact);
+	}
+
 }
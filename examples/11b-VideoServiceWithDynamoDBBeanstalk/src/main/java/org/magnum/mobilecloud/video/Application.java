@@ -1,5 +1,8 @@
 package org.magnum.mobilecloud.video;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.magnum.mobilecloud.video.json.ResourcesMapper;
 import org.socialsignin.spring.data.dynamodb.repository.config.EnableDynamoDBRepositories;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,6 +12,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import com.amazonaws.auth.AWSCredentials;
@@ -55,6 +60,21 @@ public class Application extends RepositoryRestMvcConfiguration {
 	public ObjectMapper halObjectMapper(){
 		return new ResourcesMapper();
 	}
+
+	// Lets clients ask for the compact format of the ResourcesMapper (a
+	// plain array of videos, without any links) by sending
+	// "Accept: application/x-compact+json". The converter is added after
+	// the ones from Spring Data Rest, so that clients that don't ask for
+	// it still get the usual format. Clients can also add "?compact" to
+	// the request instead (see ResourcesMapper).
+	@Override
+	protected void configureHttpMessageConverters(
+			List<HttpMessageConverter<?>> messageConverters){
+		MappingJackson2HttpMessageConverter compact = new MappingJackson2HttpMessageConverter();
+		compact.setObjectMapper(new ResourcesMapper(true));
+		compact.setSupportedMediaTypes(Arrays.asList(ResourcesMapper.COMPACT_JSON));
+		messageConverters.add(compact);
+	}
 	
     @Value("${AWS_ACCESS_KEY_ID}")
     private String amazonAWSAccessKey;
@@ -0,0 +1,124 @@
+package org.magnum.mobilecloud.video.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Streams a snapshot of the video list to a client using Servlet 3.1
+ * non-blocking IO. The container thread that received the request is
+ * released as soon as the AsyncContext is started.
+ *
+ * The list is written in bounded chunks, but only while the response's
+ * ServletOutputStream says that it is ready to take more. When the client
+ * stops reading and the socket buffers fill up, the writer simply returns
+ * and the container calls onWritePossible() again once the client has
+ * caught up. No thread ever waits on a slow client, so any number of slow
+ * clients can be connected without delaying the others.
+ *
+ * @author jules
+ *
+ */
+public class AsyncVideoListWriter implements WriteListener, AsyncListener {
+
+	private final AsyncContext asyncContext;
+	private final List<Video> snapshot;
+	private final int chunkSize;
+
+	private ServletOutputStream out;
+	private String charset;
+
+	// Set once the response has been completed (or the container
+	// has given up on it) so that no more chunks are written
+	private final AtomicBoolean done = new AtomicBoolean(false);
+
+	// Only touched from onWritePossible(), which the container never
+	// calls for the same response from two threads at once
+	private int position = 0;
+
+	public AsyncVideoListWriter(AsyncContext asyncContext,
+			List<Video> snapshot, int chunkSize) {
+		this.asyncContext = asyncContext;
+		this.snapshot = snapshot;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Registers this writer with the AsyncContext and the response's
+	 * output stream. The container calls onWritePossible() as soon as
+	 * the first chunk can be written.
+	 */
+	public void start() throws IOException {
+		asyncContext.addListener(this);
+		charset = asyncContext.getResponse().getCharacterEncoding();
+		out = asyncContext.getResponse().getOutputStream();
+		out.setWriteListener(this);
+	}
+
+	@Override
+	public void onWritePossible() throws IOException {
+		// Keep writing until the client has everything or the stream would
+		// block. In the second case, isReady() arranges for another call to
+		// onWritePossible() once the stream can take more.
+		while (!done.get() && out.isReady()) {
+			if (position >= snapshot.size()) {
+				finish();
+				return;
+			}
+
+			// Build the chunk first and then hand it to the container in a
+			// single write so that each chunk costs one trip through the
+			// response buffers
+			int end = Math.min(position + chunkSize, snapshot.size());
+			StringBuilder chunk = new StringBuilder();
+			for (int i = position; i < end; i++) {
+				Video v = snapshot.get(i);
+				chunk.append(v.getName()).append(" : ").append(v.getUrl()).append('\n');
+			}
+			position = end;
+			out.write(chunk.toString().getBytes(charset));
+		}
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		// The response is no longer usable (e.g., the client disconnected)
+		finish();
+	}
+
+	private void finish() {
+		if (done.compareAndSet(false, true)) {
+			try {
+				asyncContext.complete();
+			} catch (IllegalStateException e) {
+				// The container already completed the request
+			}
+		}
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) throws IOException {
+		done.set(true);
+	}
+
+	@Override
+	public void onTimeout(AsyncEvent event) throws IOException {
+		finish();
+	}
+
+	@Override
+	public void onError(AsyncEvent event) throws IOException {
+		finish();
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) throws IOException {
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.magnum.mobilecloud.video.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cache of the page that the HtmlVideoServlet sends back to clients.
+ *
+ * The page never changes except for the rows at the bottom, one per video,
+ * and videos are only ever added to the end of the VideoStore. So, rather
+ * than building the whole page for every request, the form and the other
+ * fixed parts of the page are encoded to bytes once and the row for each
+ * video is encoded once and appended to a byte buffer. Sending the page is
+ * then a handful of bulk writes, however many videos there are.
+ *
+ * Rows are appended under a lock. The buffer and the number of valid bytes
+ * in it are published through volatile fields, so requests that only read
+ * the page never lock.
+ *
+ * @author jules
+ *
+ */
+public class HtmlVideoPage {
+
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+
+	public static final String CONTENT_TYPE = "text/html;charset=UTF-8";
+
+	private static final byte[] PAGE_START = "<html><body>".getBytes(CHARSET);
+
+	private static final byte[] FORM = (
+			"<form name='formvideo' method='POST' target='_self'>" +
+			"<fieldset><legend>Video Data</legend>" +
+			"<table><tr>" +
+			"<td><label for='name'>Name:&nbsp;</label></td>" +
+			"<td><input type='text' name='name' id='name' size='64' maxlength='64' /></td>" +
+			"</tr><tr>" +
+			"<td><label for='url'>URL:&nbsp;</label></td>" +
+			"<td><input type='text' name='url' id='url' size='64' maxlength='256' /></td>" +
+			"</tr><tr>" +
+			"<td><label for='duration'>Duration:&nbsp;</label></td>" +
+			"<td><input type='text' name='duration' id='duration' size='16' maxlength='16' /></td>" +
+			"</tr><tr>" +
+			"<td style='text-align: right;' colspan=2><input type='submit' value='Add Video' /></td>" +
+			"</tr></table></fieldset></form>").getBytes(CHARSET);
+
+	private static final byte[] PAGE_END = "</body></html>".getBytes(CHARSET);
+
+	private final VideoStore videos;
+
+	private final Object renderLock = new Object();
+
+	// How many videos from the store have rows in the buffer. Only
+	// written while holding the renderLock.
+	private volatile int renderedVideos = 0;
+
+	// The encoded rows. A bigger buffer is published before the length
+	// that needs it, and bytes below the published length never change.
+	private volatile byte[] rows = new byte[4096];
+
+	// The number of bytes of rows that readers are allowed to send
+	private volatile int rowsLength = 0;
+
+	public HtmlVideoPage(VideoStore videos) {
+		this.videos = videos;
+	}
+
+	/**
+	 * Encodes the rows for any videos that have been added to the store
+	 * since the last call. Videos may have been added by another servlet
+	 * that shares the store, so this is also done before sending the page.
+	 */
+	public void update() {
+		if (renderedVideos == videos.size()) {
+			return;
+		}
+		synchronized (renderLock) {
+			List<Video> snapshot = videos.snapshot();
+			if (renderedVideos == snapshot.size()) {
+				return;
+			}
+
+			StringBuilder html = new StringBuilder();
+			for (int i = renderedVideos; i < snapshot.size(); i++) {
+				Video v = snapshot.get(i);
+				html.append(v.getName()).append(" : ").append(v.getUrl())
+					.append(" (").append(v.getDuration()).append(")<br />");
+			}
+			append(html.toString().getBytes(CHARSET));
+			renderedVideos = snapshot.size();
+		}
+	}
+
+	/**
+	 * Sends the page, with every video that has been added so far.
+	 *
+	 * @param out
+	 * @param message an optional message (e.g., "Video added.") to put above the form
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out, String message) throws IOException {
+		update();
+
+		// Read the length before the buffer, the buffer that we get is
+		// at least as big as the one the length was published with
+		int length = rowsLength;
+		byte[] buffer = rows;
+
+		out.write(PAGE_START);
+		if (message != null) {
+			out.write(message.getBytes(CHARSET));
+		}
+		out.write(FORM);
+		out.write(buffer, 0, length);
+		out.write(PAGE_END);
+	}
+
+	// Must be called while holding the renderLock
+	private void append(byte[] encoded) {
+		byte[] buffer = rows;
+		int length = rowsLength;
+		if (length + encoded.length > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + encoded.length));
+			rows = buffer;
+		}
+		System.arraycopy(encoded, 0, buffer, length, encoded.length);
+		rowsLength = length + encoded.length;
+	}
+
+}
@@ -7,14 +7,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Adds an html form to capture and display video metadata. 
  * Allows clients to send HTTP POST
- * requests with videos that are stored in memory using a list.
+ * requests with videos that are stored in memory using a VideoStore.
  * Clients can send HTTP GET requests to receive a 
  * listing of the videos that have been sent to the servlet
  * so far. Stopping the servlet will cause it to lose the history
@@ -30,48 +27,34 @@ public class HtmlVideoServlet extends HttpServlet // Servlets should inherit Htt
 	private static final long serialVersionUID = 1L;
 	
 	public static final String VIDEO_ADDED = "Video added.";
-    // An in-memory list that the servlet uses to store the
-    // videos that are sent to it by clients
-    private List<Video> videos = new java.util.concurrent.CopyOnWriteArrayList<Video>();
+    // An in-memory store that the servlet uses to store the
+    // videos that are sent to it by clients. The store is shared
+    // with the VideoServlet, so videos sent to either servlet
+    // show up in both.
+    private VideoStore videos;
+
+    // A cache of the encoded page, which is updated as videos are
+    // added rather than rebuilt for every request
+    private HtmlVideoPage page;
+
+    @Override
+    public void init() throws ServletException {
+        videos = VideoStore.forContext(getServletContext());
+        page = new HtmlVideoPage(videos);
+    }
     
-    protected void processRequest(HttpServletRequest req, HttpServletResponse resp)
+    protected void processRequest(HttpServletRequest req, HttpServletResponse resp, String message)
             throws ServletException, IOException {
 
         // Make sure and set the content-type header so that the client
         // can properly (and securely!) display the content that you send
         // back
-        resp.setContentType("text/html");
+        resp.setContentType(HtmlVideoPage.CONTENT_TYPE);
 
-        // This PrintWriter allows us to write data to the HTTP 
-        // response body that is going to be sent to the client.
-        PrintWriter sendToClient = resp.getWriter();
-        
-        // UI form
-        sendToClient.write(
-            "<form name='formvideo' method='POST' target='_self'>" +
-            "<fieldset><legend>Video Data</legend>" +
-            "<table><tr>" +
-            "<td><label for='name'>Name:&nbsp;</label></td>" +
-            "<td><input type='text' name='name' id='name' size='64' maxlength='64' /></td>" +
-            "</tr><tr>" +
-            "<td><label for='url'>URL:&nbsp;</label></td>" +
-            "<td><input type='text' name='url' id='url' size='64' maxlength='256' /></td>" +
-            "</tr><tr>" +
-            "<td><label for='duration'>Duration:&nbsp;</label></td>" +
-            "<td><input type='text' name='duration' id='duration' size='16' maxlength='16' /></td>" +
-            "</tr><tr>" +
-            "<td style='text-align: right;' colspan=2><input type='submit' value='Add Video' /></td>" +
-            "</tr></table></fieldset></form>");
-        
-        // Loop through all of the stored videos and print them out
-        // for the client to see.
-        for (Video v : this.videos) {
-            
-            // For each video, write its name and URL into the HTTP
-            // response body
-            sendToClient.write(v.getName() + " : " + v.getUrl() + " (" + v.getDuration() + ")<br />");
-        }
-        sendToClient.write("</body></html>");
+        // The form and a row for every stored video have already been
+        // encoded by the HtmlVideoPage, so we just copy its bytes into
+        // the HTTP response body that is going to be sent to the client.
+        page.writeTo(resp.getOutputStream(), message);
     }
     
     /**
@@ -84,8 +67,7 @@ public class HtmlVideoServlet extends HttpServlet // Servlets should inherit Htt
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-    	resp.getWriter().write("<html><body>");
-        processRequest(req, resp);
+        processRequest(req, resp, null);
     }
 
     /**
@@ -138,14 +120,14 @@ public class HtmlVideoServlet extends HttpServlet // Servlets should inherit Htt
             // we need, use that data to construct a new Video object
             Video v = new Video(name, url, duration);
             
-            // Add the video to our in-memory list of videos
+            // Add the video to our in-memory list of videos and
+            // append its row to the cached page
             videos.add(v);
+            page.update();
             
             // Let the client know that we successfully added the video
             // by writing a message into the HTTP response body
-            resp.getWriter().write("<html><body>" + VIDEO_ADDED);
-            
-            processRequest(req, resp);
+            processRequest(req, resp, VIDEO_ADDED);
         }
     }
 }
\ No newline at end of file
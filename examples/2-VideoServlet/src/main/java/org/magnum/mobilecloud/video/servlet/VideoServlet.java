@@ -1,5 +1,6 @@
 package org.magnum.mobilecloud.video.servlet;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -7,18 +8,28 @@ import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * This simple VideoServlet allows clients to send HTTP POST
- * requests with videos that are stored in memory using a list.
+ * requests with videos that are stored in memory using a VideoStore.
  * Clients can send HTTP GET requests to receive a plain/test
  * listing of the videos that have been sent to the servlet
  * so far. Stopping the servlet will cause it to lose the history
  * of videos that have been sent to it because they are stored
  * in memory.
  * 
+ * The servlet can optionally stream the list asynchronously (see the
+ * "async" init-param in web.xml). In that mode, the container thread
+ * that receives a GET is released immediately and the list is written
+ * in bounded chunks with non-blocking IO, so slow clients cannot tie up
+ * any threads at all. The async mode requires a Servlet 3.1 container.
+ * 
+ * Each list that the servlet sends carries an ETag that changes whenever
+ * a video is added. Clients that poll the list can send the ETag back in
+ * an If-None-Match header and get an empty 304 Not Modified response when
+ * nothing has changed.
+ * 
  * @author jules
  *
  */
@@ -26,9 +37,58 @@ public class VideoServlet extends HttpServlet // Servlets should inherit HttpSer
 {
 
 	public static final String VIDEO_ADDED = "Video added.";
-	// An in-memory list that the servlet uses to store the
-	// videos that are sent to it by clients
-	private List<Video> videos = new ArrayList<Video>();
+	// An in-memory store that the servlet uses to store the
+	// videos that are sent to it by clients. The store is shared
+	// with the HtmlVideoServlet and is safe to use from many
+	// request threads at once.
+	private VideoStore videos;
+
+	// Identifies this run of the servlet in the ETags that it sends
+	private final String instanceId = Long.toHexString(System.currentTimeMillis());
+
+	// The names of the init-params (see web.xml) that turn on and
+	// tune the asynchronous streaming of the video list
+	public static final String ASYNC_PARAMETER = "async";
+	public static final String CHUNK_SIZE_PARAMETER = "chunkSize";
+	public static final String ASYNC_TIMEOUT_PARAMETER = "asyncTimeout";
+
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+	public static final long DEFAULT_ASYNC_TIMEOUT = 60 * 1000; // 1min in milliseconds
+
+	private boolean async;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+
+	/**
+	 * Looks up the shared VideoStore and reads the async streaming
+	 * init-params.
+	 */
+	@Override
+	public void init() throws ServletException {
+		videos = VideoStore.forContext(getServletContext());
+
+		async = Boolean.parseBoolean(getInitParameter(ASYNC_PARAMETER));
+		if (async) {
+			chunkSize = intParameter(CHUNK_SIZE_PARAMETER, DEFAULT_CHUNK_SIZE);
+			asyncTimeout = intParameter(ASYNC_TIMEOUT_PARAMETER, (int) DEFAULT_ASYNC_TIMEOUT);
+		}
+	}
+
+	private int intParameter(String name, int defaultValue) throws ServletException {
+		String value = getInitParameter(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int parsed = Integer.parseInt(value.trim());
+			if (parsed > 0) {
+				return parsed;
+			}
+		} catch (NumberFormatException e) {
+			// Fall through to the error below
+		}
+		throw new ServletException("The '" + name + "' init-param must be a positive number.");
+	}
 
 	/**
 	 * This method processes all of the HTTP GET requests routed to the
@@ -46,13 +106,37 @@ public class VideoServlet extends HttpServlet // Servlets should inherit HttpSer
 		// back
 		resp.setContentType("text/plain");
 
+		// Take a snapshot of the list so that videos added while we
+		// are writing the response do not affect it
+		List<Video> snapshot = videos.snapshot();
+
+		// Videos are only ever added to the end of the store, so the size
+		// of the snapshot identifies which version of the list it is. If
+		// the client already has this version, tell it so and skip
+		// sending the list again.
+		String etag = etagFor(snapshot);
+		resp.setHeader("ETag", etag);
+		if (matches(req.getHeader("If-None-Match"), etag)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		// In async mode, hand the snapshot to a non-blocking writer and
+		// give the container thread back right away
+		if (async && req.isAsyncSupported()) {
+			AsyncContext asyncContext = req.startAsync();
+			asyncContext.setTimeout(asyncTimeout);
+			new AsyncVideoListWriter(asyncContext, snapshot, chunkSize).start();
+			return;
+		}
+
 		// This PrintWriter allows us to write data to the HTTP 
 		// response body that is going to be sent to the client.
 		PrintWriter sendToClient = resp.getWriter();
 		
 		// Loop through all of the stored videos and print them out
 		// for the client to see.
-		for (Video v : this.videos) {
+		for (Video v : snapshot) {
 			
 			// For each video, write its name and URL into the HTTP
 			// response body
@@ -61,6 +145,30 @@ public class VideoServlet extends HttpServlet // Servlets should inherit HttpSer
 
 	}
 
+	// The ETag combines the size of the snapshot with the time that the
+	// servlet was started, so that a client cannot mistake a list from
+	// before a restart for the current one
+	private String etagFor(List<Video> snapshot) {
+		return "\"" + instanceId + "-" + snapshot.size() + "\"";
+	}
+
+	// Checks an If-None-Match header, which may list several ETags
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * This method handles all HTTP POST requests that are routed to the
 	 * servlet by the web container.
@@ -0,0 +1,134 @@
+package org.magnum.mobilecloud.video.servlet;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+/**
+ * An in-memory, append-only store of videos that is shared by the
+ * VideoServlet and the HtmlVideoServlet.
+ *
+ * The videos are kept in fixed-size chunks. Adding a video writes it into
+ * the last chunk and then publishes the new size, so an add never copies
+ * the videos that are already stored (unlike a CopyOnWriteArrayList, which
+ * copies the whole array on every add). Writers take a short lock to claim
+ * a slot. Readers never lock: they read the published size and then only
+ * look at the slots below it, which are never changed again.
+ *
+ * Because the store is append-only, a snapshot is just the published size
+ * and the chunks it covers. Taking one is constant time and the snapshot
+ * does not change when more videos are added.
+ *
+ * @author jules
+ *
+ */
+public class VideoStore {
+
+	// The name of the ServletContext attribute that holds the store
+	// shared by all of the servlets in the web application
+	public static final String CONTEXT_ATTRIBUTE = VideoStore.class.getName();
+
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	private final int chunkSize;
+
+	private final Object writeLock = new Object();
+
+	// The chunks are only ever appended to. A new chunks array is
+	// published before the size that needs it.
+	private volatile Video[][] chunks;
+
+	// The number of videos that readers are allowed to see
+	private volatile int size;
+
+	public VideoStore() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public VideoStore(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive.");
+		}
+		this.chunkSize = chunkSize;
+		this.chunks = new Video[][] { new Video[chunkSize] };
+	}
+
+	/**
+	 * Returns the store shared by the servlets in the given ServletContext,
+	 * creating it the first time that it is asked for.
+	 *
+	 * @param context
+	 * @return
+	 */
+	public static VideoStore forContext(ServletContext context) {
+		synchronized (context) {
+			VideoStore store = (VideoStore) context.getAttribute(CONTEXT_ATTRIBUTE);
+			if (store == null) {
+				store = new VideoStore();
+				context.setAttribute(CONTEXT_ATTRIBUTE, store);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Adds a video to the end of the store.
+	 *
+	 * @param v
+	 */
+	public void add(Video v) {
+		synchronized (writeLock) {
+			int index = size;
+			int chunk = index / chunkSize;
+			Video[][] current = chunks;
+			if (chunk == current.length) {
+				// Only the (small) array of chunk references is copied,
+				// never the videos themselves
+				current = Arrays.copyOf(current, current.length * 2);
+				chunks = current;
+			}
+			if (current[chunk] == null) {
+				current[chunk] = new Video[chunkSize];
+			}
+			current[chunk][index % chunkSize] = v;
+
+			// Publishing the size makes the new video visible to readers
+			size = index + 1;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the videos that have been added
+	 * so far. Videos that are added afterwards do not show up in the
+	 * snapshot.
+	 *
+	 * @return
+	 */
+	public List<Video> snapshot() {
+		// Read the size first: the chunks that it needs were published
+		// before it was
+		final int snapshotSize = size;
+		final Video[][] snapshotChunks = chunks;
+		return new AbstractList<Video>() {
+			@Override
+			public Video get(int index) {
+				if (index < 0 || index >= snapshotSize) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + snapshotSize);
+				}
+				return snapshotChunks[index / chunkSize][index % chunkSize];
+			}
+
+			@Override
+			public int size() {
+				return snapshotSize;
+			}
+		};
+	}
+
+}
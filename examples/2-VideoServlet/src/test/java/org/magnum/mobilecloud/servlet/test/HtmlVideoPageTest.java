@@ -0,0 +1,153 @@
+package org.magnum.mobilecloud.servlet.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.servlet.HtmlVideoPage;
+import org.magnum.mobilecloud.video.servlet.HtmlVideoServlet;
+import org.magnum.mobilecloud.video.servlet.Video;
+import org.magnum.mobilecloud.video.servlet.VideoStore;
+
+/**
+ *
+ * This test checks that the cached page built by the HtmlVideoPage is
+ * exactly the page that the HtmlVideoServlet used to build for every
+ * request, including while other threads are adding videos.
+ *
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ *
+ * @author jules
+ *
+ */
+public class HtmlVideoPageTest {
+
+	private static final String FORM_END = "</fieldset></form>";
+
+	private static final String PAGE_END = "</body></html>";
+
+	@Test
+	public void testPageListsEveryVideo() throws Exception {
+		VideoStore store = new VideoStore();
+		HtmlVideoPage page = new HtmlVideoPage(store);
+
+		store.add(new Video("First", "http://coursera.org/first", 10));
+		String html = render(page, HtmlVideoServlet.VIDEO_ADDED);
+		assertTrue(html.startsWith("<html><body>" + HtmlVideoServlet.VIDEO_ADDED + "<form"));
+		assertEquals("First : http://coursera.org/first (10)<br />", rows(html));
+
+		// A video added to the store by another servlet shows up too,
+		// even though nobody told the page about it
+		store.add(new Video("Second", "http://coursera.org/second", 20));
+		html = render(page, null);
+		assertTrue(html.startsWith("<html><body><form"));
+		assertEquals("First : http://coursera.org/first (10)<br />"
+				+ "Second : http://coursera.org/second (20)<br />", rows(html));
+	}
+
+	/**
+	 * Writers add videos while readers render the page. Every page must
+	 * list a prefix of the store (in order, with no half-written rows) and
+	 * must include at least the videos that were added before it was
+	 * requested.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAddAndRender() throws Exception {
+		final int writers = 4;
+		final int perWriter = 2000;
+		final VideoStore store = new VideoStore(32);
+		final HtmlVideoPage page = new HtmlVideoPage(store);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					for (int i = 0; i < perWriter; i++) {
+						store.add(new Video(writer + "-" + i, "http://coursera.org/video", i + 1));
+						page.update();
+					}
+				}
+			});
+		}
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				await(start);
+				try {
+					while (writing.get()) {
+						int before = store.size();
+						List<Video> expected = store.snapshot();
+						String rows = rows(render(page, null));
+						String prefix = expectedRows(expected.subList(0, before));
+						assertTrue(rows.startsWith(prefix));
+						assertTrue(expectedRows(store.snapshot()).startsWith(rows));
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}
+		};
+
+		for (Thread t : threads) {
+			t.start();
+		}
+		reader.start();
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		writing.set(false);
+		reader.join();
+
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertEquals(expectedRows(store.snapshot()), rows(render(page, null)));
+	}
+
+	// This is how the HtmlVideoServlet built each row before the page was cached
+	private static String expectedRows(List<Video> videos) {
+		StringBuilder html = new StringBuilder();
+		for (Video v : videos) {
+			html.append(v.getName() + " : " + v.getUrl() + " (" + v.getDuration() + ")<br />");
+		}
+		return html.toString();
+	}
+
+	private static String render(HtmlVideoPage page, String message) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		page.writeTo(out, message);
+		return new String(out.toByteArray(), HtmlVideoPage.CHARSET);
+	}
+
+	private static String rows(String html) {
+		assertTrue(html.endsWith(PAGE_END));
+		return html.substring(html.indexOf(FORM_END) + FORM_END.length(),
+				html.length() - PAGE_END.length());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
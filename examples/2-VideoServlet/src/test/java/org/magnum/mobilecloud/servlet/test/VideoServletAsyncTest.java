@@ -0,0 +1,186 @@
+package org.magnum.mobilecloud.servlet.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Consts;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.servlet.VideoServlet;
+
+/**
+ *
+ * This test launches the VideoServlet in an embedded Jetty container with
+ * a deliberately small worker thread pool and the "async" init-param turned
+ * on. It then connects more "slow" clients than there are worker threads.
+ * The slow clients request the video list but never read the response, so
+ * the servlet cannot finish writing to them.
+ *
+ * If the list were written with blocking writes, every thread that writes
+ * it would be stuck on a slow client and the server would stop answering.
+ * In async mode, the list is only written while a client can take it, so
+ * a fast client gets the whole list while the slow clients are still
+ * connected.
+ *
+ * Unlike VideoServletHttpTest, this test starts its own server and does not
+ * require the servlet to be running first.
+ *
+ * @author jules
+ *
+ */
+public class VideoServletAsyncTest {
+
+	// Keep the pool small so that it would be easy to exhaust
+	private static final int WORKER_THREADS = 12;
+
+	// More slow clients than there are worker threads
+	private static final int SLOW_CLIENTS = WORKER_THREADS * 2;
+
+	// Enough videos with long urls that the list (~4MB) cannot fit in the
+	// socket buffers, so writes to a slow client block
+	private static final int VIDEOS = 2000;
+	private static final int URL_PADDING = 2000;
+
+	private Server server;
+	private ServerConnector connector;
+	private QueuedThreadPool workers;
+	private String testUrl;
+
+	private final List<Socket> slowClients = new ArrayList<Socket>();
+
+	private final CloseableHttpClient httpClient = HttpClients.custom()
+			.setDefaultRequestConfig(RequestConfig.custom()
+					.setConnectTimeout(5000)
+					.setSocketTimeout(5000)
+					.build())
+			.build();
+
+	@Before
+	public void setUp() throws Exception {
+		workers = new QueuedThreadPool(WORKER_THREADS);
+
+		server = new Server(workers);
+
+		// One acceptor thread and one selector thread
+		connector = new ServerConnector(server, 1, 1);
+		connector.setPort(0);
+		server.addConnector(connector);
+
+		ServletHolder holder = new ServletHolder(VideoServlet.class);
+		holder.setInitParameter(VideoServlet.ASYNC_PARAMETER, "true");
+		holder.setInitParameter(VideoServlet.CHUNK_SIZE_PARAMETER, "64");
+		holder.setAsyncSupported(true);
+
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.addServlet(holder, "/video");
+		server.setHandler(context);
+
+		server.start();
+		testUrl = "http://localhost:" + connector.getLocalPort() + "/video";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		closeSlowClients();
+		httpClient.close();
+		server.stop();
+	}
+
+	/**
+	 * This test connects more slow clients than there are worker threads
+	 * and then checks that the container still has idle worker threads,
+	 * that the server still accepts new videos, and that a fast client
+	 * gets the whole list while the slow clients are still connected.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWorkerThreadsStayFreeWithSlowReaders() throws Exception {
+		String lastUrl = null;
+		char[] padding = new char[URL_PADDING];
+		Arrays.fill(padding, 'x');
+		for (int i = 0; i < VIDEOS; i++) {
+			lastUrl = "http://coursera.org/some/video-" + i + "-" + new String(padding);
+			assertEquals(200, post("Video-" + i, lastUrl, 60 * 1000));
+		}
+
+		for (int i = 0; i < SLOW_CLIENTS; i++) {
+			Socket s = new Socket("localhost", connector.getLocalPort());
+			OutputStream out = s.getOutputStream();
+			out.write("GET /video HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes("US-ASCII"));
+			out.flush();
+			slowClients.add(s);
+		}
+
+		// Give the server a moment to start streaming to every slow client
+		Thread.sleep(1000);
+
+		// Every slow client is still connected, yet the container has
+		// worker threads to spare and can still handle a new request
+		assertTrue(workers.getIdleThreads() > 0);
+		String title = "Video - " + UUID.randomUUID();
+		assertEquals(200, post(title, "http://coursera.org/some/video-extra", 60 * 1000));
+
+		// A fast client receives the complete list, including the video
+		// that was added, while every slow client is still connected and
+		// waiting on the rest of its own list
+		HttpResponse response = httpClient.execute(new HttpGet(testUrl));
+		assertEquals(200, response.getStatusLine().getStatusCode());
+		String body = IOUtils.toString(response.getEntity().getContent());
+		assertTrue(body.startsWith("Video-0 : "));
+		assertTrue(body.contains("Video-" + (VIDEOS - 1) + " : " + lastUrl + "\n"));
+		assertTrue(body.endsWith(title + " : http://coursera.org/some/video-extra\n"));
+
+		// The slow clients were never dropped, and each of them can still
+		// read its own list
+		for (Socket s : slowClients) {
+			s.setSoTimeout(5000);
+			assertTrue(s.getInputStream().read() >= 0);
+		}
+	}
+
+	private int post(String title, String videoUrl, long duration) throws IOException {
+		HttpPost post = new HttpPost(testUrl);
+		List<NameValuePair> params = new ArrayList<>();
+		params.add(new BasicNameValuePair("name", title));
+		params.add(new BasicNameValuePair("url", videoUrl));
+		params.add(new BasicNameValuePair("duration", "" + duration));
+		post.setEntity(new UrlEncodedFormEntity(params, Consts.UTF_8));
+		HttpResponse response = httpClient.execute(post);
+		IOUtils.toString(response.getEntity().getContent());
+		return response.getStatusLine().getStatusCode();
+	}
+
+	private void closeSlowClients() throws IOException {
+		for (Socket s : slowClients) {
+			s.close();
+		}
+		slowClients.clear();
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.magnum.mobilecloud.servlet.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Consts;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.servlet.VideoServlet;
+
+/**
+ *
+ * This test checks that the VideoServlet tags each list that it sends
+ * with an ETag and answers a conditional GET for an unchanged list with
+ * an empty 304 Not Modified response.
+ *
+ * Like VideoServletAsyncTest, this test starts the servlet in an embedded
+ * Jetty container and does not require the servlet to be running first.
+ *
+ * @author jules
+ *
+ */
+public class VideoServletETagTest {
+
+	private Server server;
+	private String testUrl;
+
+	private final CloseableHttpClient httpClient = HttpClients.createDefault();
+
+	@Before
+	public void setUp() throws Exception {
+		server = new Server();
+		ServerConnector connector = new ServerConnector(server);
+		connector.setPort(0);
+		server.addConnector(connector);
+
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.addServlet(VideoServlet.class, "/video");
+		server.setHandler(context);
+
+		server.start();
+		testUrl = "http://localhost:" + connector.getLocalPort() + "/video";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		httpClient.close();
+		server.stop();
+	}
+
+	@Test
+	public void testConditionalGet() throws Exception {
+		addVideo("Video-1");
+
+		// The first GET returns the list and its ETag
+		HttpResponse first = httpClient.execute(new HttpGet(testUrl));
+		assertEquals(200, first.getStatusLine().getStatusCode());
+		assertEquals("Video-1 : http://coursera.org/some/video\n",
+				IOUtils.toString(first.getEntity().getContent()));
+		String etag = first.getFirstHeader("ETag").getValue();
+		assertNotNull(etag);
+
+		// Asking again with the same ETag returns an empty 304
+		HttpGet conditional = new HttpGet(testUrl);
+		conditional.setHeader("If-None-Match", etag);
+		HttpResponse notModified = httpClient.execute(conditional);
+		assertEquals(304, notModified.getStatusLine().getStatusCode());
+		assertNull(notModified.getEntity());
+		assertEquals(etag, notModified.getFirstHeader("ETag").getValue());
+
+		// Adding a video changes the ETag, so the same conditional GET
+		// returns the full list again
+		addVideo("Video-2");
+		conditional = new HttpGet(testUrl);
+		conditional.setHeader("If-None-Match", etag);
+		HttpResponse modified = httpClient.execute(conditional);
+		assertEquals(200, modified.getStatusLine().getStatusCode());
+		assertEquals("Video-1 : http://coursera.org/some/video\n"
+				+ "Video-2 : http://coursera.org/some/video\n",
+				IOUtils.toString(modified.getEntity().getContent()));
+		assertFalse(etag.equals(modified.getFirstHeader("ETag").getValue()));
+	}
+
+	private void addVideo(String title) throws Exception {
+		HttpPost post = new HttpPost(testUrl);
+		List<NameValuePair> params = new ArrayList<>();
+		params.add(new BasicNameValuePair("name", title));
+		params.add(new BasicNameValuePair("url", "http://coursera.org/some/video"));
+		params.add(new BasicNameValuePair("duration", "" + 60 * 1000));
+		post.setEntity(new UrlEncodedFormEntity(params, Consts.UTF_8));
+		HttpResponse response = httpClient.execute(post);
+		assertEquals(200, response.getStatusLine().getStatusCode());
+		IOUtils.toString(response.getEntity().getContent());
+	}
+
+}
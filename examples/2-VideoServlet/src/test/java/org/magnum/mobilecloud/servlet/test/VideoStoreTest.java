@@ -0,0 +1,160 @@
+package org.magnum.mobilecloud.servlet.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.servlet.Video;
+import org.magnum.mobilecloud.video.servlet.VideoStore;
+
+/**
+ *
+ * This test checks that the VideoStore stays consistent when many threads
+ * add videos while other threads read snapshots. VideoStoreBenchmark (in
+ * the servlet source set of the benchmarks project) compares its ingest
+ * throughput with the lists that the servlets used before it.
+ *
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ *
+ * @author jules
+ *
+ */
+public class VideoStoreTest {
+
+	private static final int WRITERS = 8;
+	private static final int VIDEOS_PER_WRITER = 20000;
+
+	/**
+	 * Several writers add videos while readers repeatedly take snapshots.
+	 * Every snapshot must be a consistent prefix of the store: no missing
+	 * (null) videos, sizes that never go backwards, and each writer's videos
+	 * in the order that the writer added them.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAddAndSnapshot() throws Exception {
+		// A small chunk size so that the writers cross many chunk boundaries
+		final VideoStore store = new VideoStore(64);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int w = 0; w < WRITERS; w++) {
+			final int writer = w;
+			writers.add(new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					for (int i = 0; i < VIDEOS_PER_WRITER; i++) {
+						store.add(new Video(writer + ":" + i, "http://coursera.org/some/video", i + 1));
+					}
+				}
+			});
+		}
+
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < 2; r++) {
+			readers.add(new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					try {
+						int lastSize = 0;
+						while (writing.get()) {
+							List<Video> snapshot = store.snapshot();
+							assertTrue(snapshot.size() >= lastSize);
+							lastSize = snapshot.size();
+							checkOrdered(snapshot);
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			});
+		}
+
+		for (Thread t : writers) {
+			t.start();
+		}
+		for (Thread t : readers) {
+			t.start();
+		}
+		start.countDown();
+		for (Thread t : writers) {
+			t.join();
+		}
+		writing.set(false);
+		for (Thread t : readers) {
+			t.join();
+		}
+
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+
+		List<Video> all = store.snapshot();
+		assertEquals(WRITERS * VIDEOS_PER_WRITER, all.size());
+		assertEquals(WRITERS * VIDEOS_PER_WRITER, store.size());
+		checkOrdered(all);
+
+		Set<String> names = new HashSet<String>();
+		for (Video v : all) {
+			names.add(v.getName());
+		}
+		assertEquals(WRITERS * VIDEOS_PER_WRITER, names.size());
+	}
+
+	/**
+	 * A snapshot does not change when more videos are added afterwards.
+	 */
+	@Test
+	public void testSnapshotIsStable() {
+		VideoStore store = new VideoStore(2);
+		store.add(new Video("a", "http://coursera.org/a", 1));
+		store.add(new Video("b", "http://coursera.org/b", 2));
+		store.add(new Video("c", "http://coursera.org/c", 3));
+
+		List<Video> snapshot = store.snapshot();
+		store.add(new Video("d", "http://coursera.org/d", 4));
+
+		assertEquals(3, snapshot.size());
+		assertEquals("c", snapshot.get(2).getName());
+		assertEquals(4, store.snapshot().size());
+	}
+
+	// Each writer names its videos "<writer>:<sequence>", so within a
+	// snapshot every writer's videos must appear as 0, 1, 2, ... with
+	// no gaps
+	private static void checkOrdered(List<Video> snapshot) {
+		int[] next = new int[WRITERS];
+		for (Video v : snapshot) {
+			assertNotNull(v);
+			String[] parts = v.getName().split(":");
+			int writer = Integer.parseInt(parts[0]);
+			int sequence = Integer.parseInt(parts[1]);
+			assertEquals(next[writer], sequence);
+			next[writer]++;
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.magnum.mobilecloud.video.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+/**
+ * A Retrofit Client that remembers the body and ETag of every GET response
+ * that carries an ETag. The next GET for the same URL is sent with an
+ * If-None-Match header. If the service answers 304 Not Modified, the
+ * remembered body is handed back to Retrofit as if the service had sent it
+ * again, so callers of methods like VideoSvcApi.getVideoList() do not need
+ * to know about ETags at all.
+ *
+ * Wrap the Client that you would normally use:
+ *
+ * new RestAdapter.Builder()
+ *     .setEndpoint(url)
+ *     .setClient(new ETagCachingClient(new UrlConnectionClient()))
+ *     .build()
+ *     .create(VideoSvcApi.class);
+ *
+ * @author jules
+ *
+ */
+public class ETagCachingClient implements Client {
+
+	public static final String ETAG_HEADER = "ETag";
+	public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+	private static final int NOT_MODIFIED = 304;
+
+	private static class CachedResponse {
+		private final String etag;
+		private final Response response;
+		private final byte[] body;
+
+		private CachedResponse(String etag, Response response, byte[] body) {
+			this.etag = etag;
+			this.response = response;
+			this.body = body;
+		}
+	}
+
+	private final Client delegate;
+
+	private final ConcurrentMap<String, CachedResponse> cache = new ConcurrentHashMap<String, CachedResponse>();
+
+	public ETagCachingClient(Client delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Response execute(Request request) throws IOException {
+		if (!"GET".equals(request.getMethod())) {
+			return delegate.execute(request);
+		}
+
+		CachedResponse cached = cache.get(request.getUrl());
+		if (cached != null) {
+			List<Header> headers = new ArrayList<Header>(request.getHeaders());
+			headers.add(new Header(IF_NONE_MATCH_HEADER, cached.etag));
+			request = new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+		}
+
+		Response response = delegate.execute(request);
+
+		if (response.getStatus() == NOT_MODIFIED && cached != null) {
+			return copyOf(cached);
+		}
+
+		String etag = header(response, ETAG_HEADER);
+		if (response.getStatus() == 200 && etag != null && response.getBody() != null) {
+			// Read the body so that we can keep a copy, and then hand
+			// Retrofit a response that reads from the copy
+			byte[] body = read(response.getBody());
+			CachedResponse fresh = new CachedResponse(etag, response, body);
+			cache.put(request.getUrl(), fresh);
+			return copyOf(fresh);
+		}
+
+		if (response.getStatus() == 200) {
+			// The service stopped sending an ETag for this URL
+			cache.remove(request.getUrl());
+		}
+		return response;
+	}
+
+	private static Response copyOf(CachedResponse cached) {
+		Response r = cached.response;
+		TypedInput body = new TypedByteArray(r.getBody().mimeType(), cached.body);
+		return new Response(r.getUrl(), r.getStatus(), r.getReason(), r.getHeaders(), body);
+	}
+
+	private static String header(Response response, String name) {
+		for (Header h : response.getHeaders()) {
+			if (name.equalsIgnoreCase(h.getName())) {
+				return h.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static byte[] read(TypedInput body) throws IOException {
+		InputStream in = body.in();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ import org.magnum.mobilecloud.video.controller.Video;
 import retrofit.http.Body;
 import retrofit.http.GET;
 import retrofit.http.POST;
+import retrofit.http.Query;
 
 /**
  * This interface defines an API for a VideoSvc. The
@@ -17,6 +18,14 @@ import retrofit.http.POST;
  * for an example of how Retrofit is used to turn this interface
  * into a client.
  * 
+ * The service sends an ETag with the list of videos. Clients that poll
+ * the list can build their RestAdapter with an ETagCachingClient so that
+ * unchanged lists are not downloaded (or serialized by the service) again.
+ * 
+ * Clients that do not want the whole list at once can ask for one page
+ * at a time with getVideoPage(). Each VideoPage carries an opaque cursor
+ * that is passed back as the "after" parameter to get the next page.
+ * 
  * @author jules
  *
  */
@@ -25,10 +34,30 @@ public interface VideoSvcApi {
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
+	// The path to add many videos in one request
+	public static final String VIDEO_BATCH_PATH = VIDEO_SVC_PATH + "/batch";
+
+	// The media type for a stream of videos, one JSON object per line
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+	// The parameters for asking for one page of videos
+	public static final String LIMIT_PARAMETER = "limit";
+	public static final String AFTER_PARAMETER = "after";
+
+	// The most videos that the service will put on one page
+	public static final int MAX_PAGE_SIZE = 1000;
+
 	@GET(VIDEO_SVC_PATH)
 	public List<Video> getVideoList();
 	
+	// Pass a null cursor to get the first page
+	@GET(VIDEO_SVC_PATH)
+	public VideoPage getVideoPage(@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
 	@POST(VIDEO_SVC_PATH)
 	public boolean addVideo(@Body Video v);
 	
+	@POST(VIDEO_BATCH_PATH)
+	public int addVideos(@Body List<Video> videos);
+	
 }
@@ -1,14 +1,28 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * This simple VideoSvc allows clients to send HTTP POST requests with
@@ -36,6 +50,23 @@ public class VideoSvc implements VideoSvcApi {
 	// videos that are sent to it by clients
 	private List<Video> videos = new CopyOnWriteArrayList<Video>();
 
+	// When dedupe mode is on, every video in the list is also put in this
+	// concurrent hash set. Video's equals() and hashCode() use the name,
+	// url, and duration, so finding out whether a video is already in the
+	// list is a constant time lookup rather than a scan with contains().
+	private final Set<Video> index = Collections.newSetFromMap(new ConcurrentHashMap<Video, Boolean>());
+
+	private volatile boolean dedupe = false;
+
+	// A version number for the list of videos that goes up every time
+	// a video is added. Together with an id for this run of the
+	// controller, it is sent to clients as the ETag of the list.
+	private final String catalogId = Long.toHexString(System.currentTimeMillis());
+	private final AtomicLong catalogVersion = new AtomicLong();
+
+	// Used to read streams of newline-delimited JSON videos
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
 	// object before adding it to the list. The @RequestBody
@@ -55,18 +86,133 @@ public class VideoSvc implements VideoSvcApi {
 	// in the Video object, please see this Spring guide:
 	// http://docs.spring.io/spring/docs/3.2.x/spring-framework-reference/html/validation.html#validation-beanvalidation
 	//
+	// In dedupe mode, adding a video that is already in the list does
+	// nothing and still returns true. Clients that time out and retry
+	// an add can't fill the list with copies of the same video.
 	@RequestMapping(value=VIDEO_SVC_PATH, method=RequestMethod.POST)
 	public @ResponseBody boolean addVideo(@RequestBody Video v){
-		return videos.add(v);
+		// Only the thread that wins the add to the index goes on to
+		// add the video to the list, even if the same video is sent
+		// by two clients at the same time
+		if (dedupe && !index.add(v)) {
+			return true;
+		}
+		boolean added = videos.add(v);
+		// Bump the version after the video is in the list, so that
+		// a client can never be told that it has the latest version
+		// of a list that is missing the video
+		catalogVersion.incrementAndGet();
+		return added;
+	}
+	
+	// Receives POST requests to /video/batch with a JSON array of
+	// videos and adds all of them at once. Adding the whole batch with
+	// addAll() copies the CopyOnWriteArrayList once, rather than once
+	// per video, and saves the client a round trip per video.
+	//
+	// Returns the number of videos that were added. In dedupe mode,
+	// videos that are already in the list (or that appear more than
+	// once in the batch) are skipped and not counted.
+	@RequestMapping(value=VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes="application/json")
+	public @ResponseBody int addVideos(@RequestBody List<Video> batch){
+		if (dedupe) {
+			List<Video> fresh = new ArrayList<Video>(batch.size());
+			for (Video v : batch) {
+				if (index.add(v)) {
+					fresh.add(v);
+				}
+			}
+			batch = fresh;
+		}
+		videos.addAll(batch);
+		catalogVersion.incrementAndGet();
+		return batch.size();
+	}
+
+	// Receives POST requests to /video/batch with newline-delimited JSON
+	// (one video per line) so that clients can stream very large batches
+	// without building one huge JSON array.
+	@RequestMapping(value=VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes=NDJSON_MEDIA_TYPE)
+	public @ResponseBody int addVideos(InputStream ndjson) throws IOException {
+		List<Video> batch = new ArrayList<Video>();
+		MappingIterator<Video> it = objectMapper.reader(Video.class).readValues(ndjson);
+		while (it.hasNextValue()) {
+			batch.add(it.nextValue());
+		}
+		return addVideos(batch);
 	}
 	
 	// Receives GET requests to /video and returns the current
 	// list of videos in memory. Spring automatically converts
 	// the list of videos to JSON because of the @ResponseBody
 	// annotation.
+	//
+	// If the client sends an If-None-Match header with the ETag of
+	// the current version of the list, checkNotModified() sets the
+	// response status to 304 Not Modified and we return null, which
+	// tells Spring not to convert or send a body at all.
 	@RequestMapping(value=VIDEO_SVC_PATH, method=RequestMethod.GET)
-	public @ResponseBody List<Video> getVideoList(){
+	public @ResponseBody List<Video> getVideoList(WebRequest request){
+		// Read the version before the list. If a video is added in
+		// between, the client gets a newer list with an older ETag
+		// and simply downloads the list again on its next poll.
+		String etag = catalogETag();
+		if (request.checkNotModified(etag)) {
+			return null;
+		}
+		return getVideoList();
+	}
+
+	public List<Video> getVideoList(){
 		return videos;
 	}
 
+	// Receives GET requests to /video that have a "limit" parameter and
+	// returns just one page of the list. Spring picks this method rather
+	// than getVideoList() because its mapping is more specific.
+	//
+	// Videos are only ever added to the end of the list, so a video's
+	// position in the list never changes and makes a stable cursor: the
+	// next page starts right after the position in the cursor, even if
+	// more videos were added in the meantime. Only the videos on the page
+	// are copied, however long the list gets.
+	@RequestMapping(value=VIDEO_SVC_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage getVideoPage(
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		int start = (int) Math.min(VideoCursor.decode(after) + 1, Integer.MAX_VALUE);
+
+		// Read the size once so that the page is cut from a consistent
+		// snapshot of the list
+		int size = videos.size();
+		int end = (int) Math.min((long) start + pageSize, size);
+
+		List<Video> page = new ArrayList<Video>(Math.max(end - start, 0));
+		for (int i = start; i < end; i++) {
+			page.add(videos.get(i));
+		}
+		String next = (end < size) ? VideoCursor.encode(end - 1) : null;
+		return new VideoPage(page, next);
+	}
+
+	/**
+	 * Turns dedupe mode on or off. Spring sets it from the "video.dedupe"
+	 * property when the controller is created, and it is off by default.
+	 * It should be set before any videos are added, because only videos
+	 * that are added while it is on go into the index.
+	 * 
+	 * @param dedupe
+	 */
+	@Value("${video.dedupe:false}")
+	public void setDedupe(boolean dedupe){
+		this.dedupe = dedupe;
+	}
+
+	public String catalogETag(){
+		return "\"" + catalogId + "-" + catalogVersion.get() + "\"";
+	}
+
 }
@@ -0,0 +1,96 @@
+package org.magnum.mobilecloud.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.client.ETagCachingClient;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+
+import retrofit.RestAdapter;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+/**
+ * 
+ * This test puts an ETagCachingClient in front of a fake Client that plays
+ * the part of the VideoSvc. It checks that the second poll of the list is
+ * sent with the ETag from the first, and that a 304 Not Modified response
+ * still gives the caller the full list.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class ETagCachingClientTest {
+
+	// A fake service that sends one version of the list and then
+	// answers 304 to any request that has the right ETag
+	private static class FakeVideoSvc implements Client {
+		private final List<String> ifNoneMatch = new ArrayList<String>();
+		private String etag = "\"v1\"";
+		private String json = "[{\"name\":\"Video-1\",\"url\":\"http://coursera.org/some/video\",\"duration\":1000}]";
+
+		@Override
+		public Response execute(Request request) throws IOException {
+			String sent = null;
+			for (Header h : request.getHeaders()) {
+				if (h.getName().equals(ETagCachingClient.IF_NONE_MATCH_HEADER)) {
+					sent = h.getValue();
+				}
+			}
+			ifNoneMatch.add(sent);
+
+			List<Header> headers = Arrays.asList(new Header(ETagCachingClient.ETAG_HEADER, etag));
+			if (etag.equals(sent)) {
+				return new Response(request.getUrl(), 304, "Not Modified", headers, null);
+			}
+			return new Response(request.getUrl(), 200, "OK", headers,
+					new TypedByteArray("application/json", json.getBytes("UTF-8")));
+		}
+	}
+
+	private FakeVideoSvc service = new FakeVideoSvc();
+
+	private VideoSvcApi videoService = new RestAdapter.Builder()
+			.setEndpoint("http://localhost:8080")
+			.setClient(new ETagCachingClient(service))
+			.build()
+			.create(VideoSvcApi.class);
+
+	@Test
+	public void testUnchangedListIsNotDownloadedAgain() throws Exception {
+		Video video = new Video("Video-1", "http://coursera.org/some/video", 1000);
+
+		// First poll: no ETag yet, so the full list is sent
+		assertEquals(Collections.singletonList(video), videoService.getVideoList());
+		assertNull(service.ifNoneMatch.get(0));
+
+		// Second poll: the ETag is sent and the service answers 304,
+		// but the caller still gets the list
+		assertEquals(Collections.singletonList(video), videoService.getVideoList());
+		assertEquals("\"v1\"", service.ifNoneMatch.get(1));
+
+		// The list changes on the service, so the next poll gets it
+		service.etag = "\"v2\"";
+		service.json = "[]";
+		assertTrue(videoService.getVideoList().isEmpty());
+		assertEquals("\"v1\"", service.ifNoneMatch.get(2));
+		assertTrue(videoService.getVideoList().isEmpty());
+		assertEquals("\"v2\"", service.ifNoneMatch.get(3));
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * This test sends mock HTTP requests to the /video/batch path of a VideoSvc,
+ * once with a JSON array of videos and once with newline-delimited JSON,
+ * and checks that every video in the batch is added.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class VideoSvcBatchTest {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private VideoSvc videoService = new VideoSvc();
+
+	private MockMvc mockMvc;
+
+	private List<Video> batch = Arrays.asList(
+			new Video("Video-1", "http://coursera.org/some/video-1", 1000),
+			new Video("Video-2", "http://coursera.org/some/video-2", 2000),
+			new Video("Video-3", "http://coursera.org/some/video-3", 3000));
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService).build();
+	}
+
+	@Test
+	public void testAddJsonArray() throws Exception {
+		mockMvc.perform(post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(batch)))
+				.andExpect(status().isOk())
+				.andExpect(content().string("3"));
+
+		assertEquals(batch, videoService.getVideoList());
+	}
+
+	@Test
+	public void testAddNdjsonStream() throws Exception {
+		StringBuilder ndjson = new StringBuilder();
+		for (Video v : batch) {
+			ndjson.append(objectMapper.writeValueAsString(v)).append('\n');
+		}
+
+		mockMvc.perform(post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.valueOf(VideoSvcApi.NDJSON_MEDIA_TYPE))
+				.content(ndjson.toString()))
+				.andExpect(status().isOk())
+				.andExpect(content().string("3"));
+
+		assertEquals(batch, videoService.getVideoList());
+	}
+
+	@Test
+	public void testBatchChangesETag() throws Exception {
+		String before = videoService.catalogETag();
+		videoService.addVideos(batch);
+		assertTrue(!before.equals(videoService.catalogETag()));
+	}
+
+}
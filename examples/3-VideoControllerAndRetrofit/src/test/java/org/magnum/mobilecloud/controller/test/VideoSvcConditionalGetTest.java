@@ -0,0 +1,72 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.client.ETagCachingClient;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * 
+ * This test sends mock HTTP requests to a VideoSvc to check that the list
+ * of videos is sent with an ETag and that a conditional GET for a list
+ * that has not changed gets an empty 304 Not Modified response.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class VideoSvcConditionalGetTest {
+
+	private VideoSvc videoService = new VideoSvc();
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService).build();
+	}
+
+	@Test
+	public void testConditionalGet() throws Exception {
+		videoService.addVideo(new Video("Video-1", "http://coursera.org/some/video", 1000));
+		String etag = videoService.catalogETag();
+
+		// A plain GET returns the list and its ETag
+		mockMvc.perform(get(VideoSvcApi.VIDEO_SVC_PATH))
+				.andExpect(status().isOk())
+				.andExpect(header().string(ETagCachingClient.ETAG_HEADER, etag))
+				.andExpect(content().string(containsString("Video-1")));
+
+		// The same ETag gets a 304 with no body
+		mockMvc.perform(get(VideoSvcApi.VIDEO_SVC_PATH)
+				.header(ETagCachingClient.IF_NONE_MATCH_HEADER, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		// Adding a video changes the ETag and the list is sent again
+		videoService.addVideo(new Video("Video-2", "http://coursera.org/some/video", 1000));
+		String newEtag = videoService.catalogETag();
+		assertFalse(etag.equals(newEtag));
+		String body = mockMvc.perform(get(VideoSvcApi.VIDEO_SVC_PATH)
+				.header(ETagCachingClient.IF_NONE_MATCH_HEADER, etag))
+				.andExpect(status().isOk())
+				.andExpect(header().string(ETagCachingClient.ETAG_HEADER, newEtag))
+				.andReturn().getResponse().getContentAsString();
+		assertTrue(body.contains("Video-1") && body.contains("Video-2"));
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+
+/**
+ * 
+ * This test turns on dedupe mode in a VideoSvc and checks that sending the
+ * same video more than once (e.g., a client retrying after a timeout) only
+ * adds it to the list once, including when the copies arrive at the same
+ * time or inside a batch.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class VideoSvcDedupeTest {
+
+	private VideoSvc videoService = new VideoSvc();
+
+	private Video video = new Video("Video-1", "http://coursera.org/some/video-1", 1000);
+
+	@Before
+	public void setUp() {
+		videoService.setDedupe(true);
+	}
+
+	@Test
+	public void testRetriedAddIsIdempotent() {
+		String etag = videoService.catalogETag();
+
+		assertTrue(videoService.addVideo(video));
+		String afterFirstAdd = videoService.catalogETag();
+		assertTrue(!etag.equals(afterFirstAdd));
+
+		// A separate (but equal) copy, as a client retry would send
+		assertTrue(videoService.addVideo(new Video("Video-1", "http://coursera.org/some/video-1", 1000)));
+
+		assertEquals(1, videoService.getVideoList().size());
+		assertEquals(afterFirstAdd, videoService.catalogETag());
+	}
+
+	@Test
+	public void testDifferentDurationIsNotADuplicate() {
+		videoService.addVideo(video);
+		videoService.addVideo(new Video("Video-1", "http://coursera.org/some/video-1", 1001));
+
+		assertEquals(2, videoService.getVideoList().size());
+	}
+
+	@Test
+	public void testBatchSkipsDuplicates() {
+		videoService.addVideo(video);
+
+		Video other = new Video("Video-2", "http://coursera.org/some/video-2", 2000);
+		int added = videoService.addVideos(Arrays.asList(video, other, other));
+
+		assertEquals(1, added);
+		assertEquals(Arrays.asList(video, other), videoService.getVideoList());
+	}
+
+	@Test
+	public void testConcurrentRetriesAddOnce() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int c = 0; c < 8; c++) {
+			clients.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						videoService.addVideo(new Video("Video-" + i, "http://coursera.org/some/video", i));
+					}
+				}
+			});
+		}
+		for (Thread t : clients) {
+			t.start();
+		}
+		start.countDown();
+		for (Thread t : clients) {
+			t.join();
+		}
+
+		assertEquals(1000, videoService.getVideoList().size());
+	}
+
+	@Test
+	public void testDuplicatesAllowedWhenOff() {
+		videoService.setDedupe(false);
+		videoService.addVideo(video);
+		videoService.addVideo(video);
+
+		assertEquals(2, videoService.getVideoList().size());
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.client.VideoPage;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * This test walks through the list of videos in a VideoSvc one page at a
+ * time, following the cursor from each page, and checks that every video
+ * is seen exactly once and in order.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class VideoSvcPaginationTest {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private VideoSvc videoService = new VideoSvc();
+
+	private MockMvc mockMvc;
+
+	private List<Video> added = new ArrayList<Video>();
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService).build();
+		for (int i = 0; i < 25; i++) {
+			added.add(new Video("Video-" + i, "http://coursera.org/some/video-" + i, i + 1));
+		}
+		videoService.addVideos(added);
+	}
+
+	@Test
+	public void testWalkAllPages() throws Exception {
+		List<Video> seen = new ArrayList<Video>();
+		String after = null;
+		int pages = 0;
+		do {
+			VideoPage page = getPage(10, after);
+			seen.addAll(page.getVideos());
+			after = page.getNext();
+			pages++;
+		} while (after != null);
+
+		assertEquals(3, pages);
+		assertEquals(added, seen);
+	}
+
+	@Test
+	public void testCursorSurvivesNewVideos() throws Exception {
+		VideoPage first = getPage(20, null);
+		assertNotNull(first.getNext());
+
+		// Videos added after the first page show up on later pages
+		Video late = new Video("Late", "http://coursera.org/some/late", 1);
+		videoService.addVideo(late);
+
+		VideoPage second = getPage(20, first.getNext());
+		assertEquals(6, second.getVideos().size());
+		assertEquals(added.get(20), second.getVideos().get(0));
+		assertEquals(late, second.getVideos().get(5));
+		assertNull(second.getNext());
+	}
+
+	@Test
+	public void testLimitIsCapped() throws Exception {
+		VideoPage page = getPage(VideoSvcApi.MAX_PAGE_SIZE * 10, null);
+		assertEquals(added, page.getVideos());
+		assertNull(page.getNext());
+	}
+
+	@Test
+	public void testInvalidCursor() throws Exception {
+		mockMvc.perform(get(VideoSvcApi.VIDEO_SVC_PATH)
+				.param(VideoSvcApi.LIMIT_PARAMETER, "10")
+				.param(VideoSvcApi.AFTER_PARAMETER, "not a cursor!"))
+				.andExpect(status().isBadRequest());
+	}
+
+	private VideoPage getPage(int limit, String after) throws Exception {
+		String json = mockMvc.perform(get(VideoSvcApi.VIDEO_SVC_PATH)
+				.param(VideoSvcApi.LIMIT_PARAMETER, "" + limit)
+				.param(VideoSvcApi.AFTER_PARAMETER, after == null ? "" : after))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		return objectMapper.readValue(json, VideoPage.class);
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.magnum.mobilecloud.video.controller;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Builds and reads the opaque "after" cursors that the VideoSvc hands out
+ * with each page of videos.
+ * 
+ * A cursor wraps the position (or id) of the last video on a page. It is
+ * encoded so that clients treat it as a token to send back rather than a
+ * number to do arithmetic on, which leaves the service free to change
+ * what the cursor means later.
+ * 
+ * @author jules
+ *
+ */
+public class VideoCursor {
+
+	private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+	/**
+	 * Thrown when a client sends a cursor that the service did not create.
+	 * Spring turns it into a 400 Bad Request response.
+	 */
+	@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid cursor")
+	public static class InvalidCursorException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public InvalidCursorException(String cursor) {
+			super("Invalid cursor: " + cursor);
+		}
+	}
+
+	public static String encode(long key) {
+		return ENCODING.encode(Long.toString(key).getBytes(Charsets.UTF_8));
+	}
+
+	/**
+	 * Returns the key in the cursor, or -1 if there is no cursor (i.e.,
+	 * the client wants the first page).
+	 * 
+	 * @param cursor
+	 * @return
+	 */
+	public static long decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return -1;
+		}
+		try {
+			long key = Long.parseLong(new String(ENCODING.decode(cursor), Charsets.UTF_8));
+			if (key < 0) {
+				throw new InvalidCursorException(cursor);
+			}
+			return key;
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException(cursor);
+		}
+	}
+
+	// Keeps the number of videos on a page between 1 and
+	// VideoSvcApi.MAX_PAGE_SIZE, whatever the client asks for
+	public static int pageSize(int limit) {
+		return Math.max(1, Math.min(limit, VideoSvcApi.MAX_PAGE_SIZE));
+	}
+
+}
@@ -1,7 +1,12 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +17,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * This simple VideoSvc allows clients to send HTTP POST requests with
  * videos that are stored in memory using a list. Clients can send HTTP GET
@@ -47,6 +55,9 @@ public class VideoSvc implements VideoSvcApi {
 	@Autowired
 	private VideoRepository videos;
 
+	// Used to read streams of newline-delimited JSON videos
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
 	// object before adding it to the list. The @RequestBody
@@ -67,6 +78,31 @@ public class VideoSvc implements VideoSvcApi {
 		return videos.addVideo(v);
 	}
 	
+	// Receives POST requests to /video/batch with a JSON array of
+	// videos and hands the whole batch to the VideoRepository at once,
+	// which saves the client a round trip per video.
+	//
+	// Returns the number of videos that were added.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes="application/json")
+	public @ResponseBody int addVideos(@RequestBody List<Video> batch){
+		return videos.addVideos(batch);
+	}
+
+	// Receives POST requests to /video/batch with newline-delimited JSON
+	// (one video per line) so that clients can stream very large batches
+	// without building one huge JSON array.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes=VideoSvcApi.NDJSON_MEDIA_TYPE)
+	public @ResponseBody int addVideos(InputStream ndjson) throws IOException {
+		List<Video> batch = new ArrayList<Video>();
+		MappingIterator<Video> it = objectMapper.reader(Video.class).readValues(ndjson);
+		while (it.hasNextValue()) {
+			batch.add(it.nextValue());
+		}
+		return addVideos(batch);
+	}
+	
 	// Receives GET requests to /video and returns the current
 	// list of videos in memory. Spring automatically converts
 	// the list of videos to JSON because of the @ResponseBody
@@ -88,4 +124,57 @@ public class VideoSvc implements VideoSvcApi {
 		return videos.findByTitle(title);
 	}
 
+	// Receives GET requests to /video that have a "limit" parameter and
+	// returns just one page of the videos. Spring picks this method rather
+	// than getVideoList() because its mapping is more specific.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage getVideoPage(
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		return page(null, limit, after);
+	}
+
+	// Receives GET requests to /video/find that have a "limit" parameter
+	// and returns one page of the videos with a matching title
+	@RequestMapping(value=VideoSvcApi.VIDEO_TITLE_SEARCH_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage findByTitle(
+			@RequestParam(TITLE_PARAMETER) String title,
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		return page(title, limit, after);
+	}
+
+	// The repository keeps the videos in the order that they were added
+	// and never moves them, so a video's position in that list makes a
+	// stable cursor: the next page starts right after the position in the
+	// cursor, even if more videos were added in the meantime.
+	//
+	// Only the videos on the page are copied. When searching by title, we
+	// look for one more match than fits on the page, so that we only hand
+	// out a cursor when there really is another page.
+	private VideoPage page(String title, int limit, String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		int start = (int) Math.min(VideoCursor.decode(after) + 1, Integer.MAX_VALUE);
+
+		// Read the size once so that the page is cut from a consistent
+		// snapshot of the list
+		List<Video> inOrder = videos.getVideosInOrder();
+		int size = inOrder.size();
+
+		List<Video> page = new ArrayList<Video>();
+		int last = -1;
+		for (int i = start; i < size; i++) {
+			Video v = inOrder.get(i);
+			if (title != null && !title.equals(v.getName())) {
+				continue;
+			}
+			if (page.size() == pageSize) {
+				return new VideoPage(page, VideoCursor.encode(last));
+			}
+			page.add(v);
+			last = i;
+		}
+		return new VideoPage(page, null);
+	}
+
 }
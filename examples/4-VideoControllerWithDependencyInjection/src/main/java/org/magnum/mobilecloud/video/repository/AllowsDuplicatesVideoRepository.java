@@ -34,11 +34,24 @@ public class AllowsDuplicatesVideoRepository implements VideoRepository {
 		return videoList.add(v);
 	}
 
+	// Adding the whole collection at once copies the
+	// CopyOnWriteArrayList once rather than once per video
+	@Override
+	public int addVideos(Collection<Video> v) {
+		videoList.addAll(v);
+		return v.size();
+	}
+
 	@Override
 	public Collection<Video> getVideos() {
 		return videoList;
 	}
 
+	@Override
+	public List<Video> getVideosInOrder() {
+		return videoList;
+	}
+
 	// Search the list of videos for ones with
 	// matching titles.
 	@Override
@@ -0,0 +1,108 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.magnum.mobilecloud.video.controller.Video;
+
+/**
+ * A list of videos that can only be appended to, which the
+ * NoDuplicatesVideoRepository uses to remember the order that its videos
+ * were added in.
+ *
+ * The videos are kept in fixed-size chunks. Adding a video writes it into
+ * the last chunk and then publishes the new size, so an add never copies
+ * the videos that are already stored (unlike a CopyOnWriteArrayList, which
+ * copies the whole array on every add). Writers take a short lock to claim
+ * a slot. Readers never lock: they read the published size and then only
+ * look at the slots below it, which are never changed again.
+ *
+ * This is the same structure as the VideoStore in 2-VideoServlet.
+ *
+ * @author jules
+ *
+ */
+public class AppendOnlyVideoList {
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Object writeLock = new Object();
+
+	// The chunks are only ever appended to. A new chunks array is
+	// published before the size that needs it.
+	private volatile Video[][] chunks = new Video[][] { new Video[CHUNK_SIZE] };
+
+	// The number of videos that readers are allowed to see
+	private volatile int size;
+
+	public void add(Video v) {
+		synchronized (writeLock) {
+			int index = size;
+			append(index, v);
+			// Publishing the size makes the new video visible to readers
+			size = index + 1;
+		}
+	}
+
+	// The videos are all published at once, so a reader sees either none
+	// of them or all of them
+	public void addAll(Collection<Video> videos) {
+		synchronized (writeLock) {
+			int index = size;
+			for (Video v : videos) {
+				append(index++, v);
+			}
+			size = index;
+		}
+	}
+
+	// Only called with the write lock held
+	private void append(int index, Video v) {
+		int chunk = index / CHUNK_SIZE;
+		Video[][] current = chunks;
+		if (chunk == current.length) {
+			// Only the (small) array of chunk references is copied,
+			// never the videos themselves
+			current = Arrays.copyOf(current, current.length * 2);
+			chunks = current;
+		}
+		if (current[chunk] == null) {
+			current[chunk] = new Video[CHUNK_SIZE];
+		}
+		current[chunk][index % CHUNK_SIZE] = v;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the videos that have been added
+	 * so far. Videos that are added afterwards do not show up in it.
+	 *
+	 * @return
+	 */
+	public List<Video> snapshot() {
+		// Read the size first: the chunks that it needs were published
+		// before it was
+		final int snapshotSize = size;
+		final Video[][] snapshotChunks = chunks;
+		return new AbstractList<Video>() {
+			@Override
+			public Video get(int index) {
+				if (index < 0 || index >= snapshotSize) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + snapshotSize);
+				}
+				return snapshotChunks[index / CHUNK_SIZE][index % CHUNK_SIZE];
+			}
+
+			@Override
+			public int size() {
+				return snapshotSize;
+			}
+		};
+	}
+
+}
@@ -1,8 +1,10 @@
 package org.magnum.mobilecloud.video.repository;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -28,10 +30,35 @@ public class NoDuplicatesVideoRepository implements VideoRepository {
 	//
 	private Set<Video> videoSet = Collections.newSetFromMap(
 	        new ConcurrentHashMap<Video, Boolean>());
+
+	// Sets have no order, so the videos that made it into the set are
+	// also appended to a list. This gives every video a position that
+	// never changes, which clients use to page through the videos. The
+	// list never copies the videos that it already has, so an add stays
+	// as cheap as the add to the set.
+	private AppendOnlyVideoList videoList = new AppendOnlyVideoList();
 	
 	@Override
 	public boolean addVideo(Video v) {
-		return videoSet.add(v);
+		boolean added = videoSet.add(v);
+		if (added) {
+			videoList.add(v);
+		}
+		return added;
+	}
+
+	// Duplicates in the collection (or of videos that are already
+	// stored) are not counted
+	@Override
+	public int addVideos(Collection<Video> v) {
+		List<Video> added = new ArrayList<Video>();
+		for (Video video : v) {
+			if (videoSet.add(video)) {
+				added.add(video);
+			}
+		}
+		videoList.addAll(added);
+		return added.size();
 	}
 
 	@Override
@@ -39,6 +66,11 @@ public class NoDuplicatesVideoRepository implements VideoRepository {
 		return videoSet;
 	}
 
+	@Override
+	public List<Video> getVideosInOrder() {
+		return videoList.snapshot();
+	}
+
 	// Search the list of videos for ones with
 	// matching titles.
 	@Override
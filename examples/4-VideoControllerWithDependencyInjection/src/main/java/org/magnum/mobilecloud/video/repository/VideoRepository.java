@@ -1,6 +1,7 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.magnum.mobilecloud.video.controller.Video;
 
@@ -16,9 +17,17 @@ public interface VideoRepository {
 	// Add a video
 	public boolean addVideo(Video v);
 	
+	// Add several videos at once and return how many were added
+	public int addVideos(Collection<Video> v);
+	
 	// Get the videos that have been added so far
 	public Collection<Video> getVideos();
 	
+	// Get the videos that have been added so far, in the order that
+	// they were added. Videos are only ever appended, so the position
+	// of a video in this list never changes.
+	public List<Video> getVideosInOrder();
+	
 	// Find all videos with a matching title (e.g., Video.name)
 	public Collection<Video> findByTitle(String title);
 	
@@ -0,0 +1,65 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+
+/**
+ *
+ * This test checks that the NoDuplicatesVideoRepository keeps its videos
+ * in the order that they were added, across many of the chunks that its
+ * AppendOnlyVideoList stores them in, and that a list handed out by
+ * getVideosInOrder() doesn't change when more videos are added.
+ *
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ *
+ * @author jules
+ *
+ */
+public class NoDuplicatesVideoRepositoryTest {
+
+	private static final int VIDEOS = 5000;
+
+	private NoDuplicatesVideoRepository videos = new NoDuplicatesVideoRepository();
+
+	@Test
+	public void testVideosStayInOrder() {
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < VIDEOS; i++) {
+			Video v = TestData.randomVideo();
+			assertTrue(videos.addVideo(v));
+			added.add(v);
+		}
+		assertFalse(videos.addVideo(added.get(0)));
+
+		List<Video> batch = Arrays.asList(TestData.randomVideo(), added.get(1), TestData.randomVideo());
+		assertEquals(2, videos.addVideos(batch));
+		added.add(batch.get(0));
+		added.add(batch.get(2));
+
+		assertEquals(added, videos.getVideosInOrder());
+	}
+
+	@Test
+	public void testInOrderListIsASnapshot() {
+		Video first = TestData.randomVideo();
+		videos.addVideo(first);
+		List<Video> snapshot = videos.getVideosInOrder();
+
+		videos.addVideo(TestData.randomVideo());
+
+		assertEquals(Arrays.asList(first), snapshot);
+		assertEquals(2, videos.getVideosInOrder().size());
+	}
+
+}
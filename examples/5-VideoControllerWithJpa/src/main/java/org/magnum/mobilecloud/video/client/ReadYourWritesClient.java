@@ -0,0 +1,79 @@
+package org.magnum.mobilecloud.video.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+
+/**
+ * A Retrofit Client that makes sure that a client can always read what it
+ * has written, when the service sends some of its reads to a database
+ * replica that may lag behind (see ReplicaRoutingDataSource).
+ *
+ * Every response to a write carries the time of the write in the
+ * WRITTEN_AT_HEADER header. This client remembers the latest one and sends
+ * it with every request, and the service reads from the primary database
+ * until the replica has caught up with that time.
+ *
+ * Wrap the Client that you would normally use (it can be combined with an
+ * ETagCachingClient):
+ *
+ * new RestAdapter.Builder()
+ *     .setEndpoint(url)
+ *     .setClient(new ReadYourWritesClient(new UrlConnectionClient()))
+ *     .build()
+ *     .create(VideoSvcApi.class);
+ *
+ * @author jules
+ *
+ */
+public class ReadYourWritesClient implements Client {
+
+	public static final String WRITTEN_AT_HEADER = "X-Video-Written-At";
+
+	private final Client delegate;
+
+	private final AtomicLong lastWrite = new AtomicLong();
+
+	public ReadYourWritesClient(Client delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Response execute(Request request) throws IOException {
+		long last = lastWrite.get();
+		if (last > 0) {
+			List<Header> headers = new ArrayList<Header>(request.getHeaders());
+			headers.add(new Header(WRITTEN_AT_HEADER, Long.toString(last)));
+			request = new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+		}
+
+		Response response = delegate.execute(request);
+
+		for (Header h : response.getHeaders()) {
+			if (WRITTEN_AT_HEADER.equalsIgnoreCase(h.getName())) {
+				remember(h.getValue());
+			}
+		}
+		return response;
+	}
+
+	private void remember(String value) {
+		long at;
+		try {
+			at = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return;
+		}
+		long last;
+		do {
+			last = lastWrite.get();
+		} while (at > last && !lastWrite.compareAndSet(last, at));
+	}
+
+}
@@ -1,8 +1,10 @@
 package org.magnum.mobilecloud.video.client;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoSummary;
 
 import retrofit.http.Body;
 import retrofit.http.GET;
@@ -15,6 +17,28 @@ import retrofit.http.Query;
  * interactions. The interface is annotated with Retrofit
  * annotations so that clients can automatically convert the
  * 
+ * The service sends an ETag with the list of videos. Clients that poll
+ * the list can build their RestAdapter with an ETagCachingClient so that
+ * unchanged lists are not downloaded (or loaded from the database by the
+ * service) again.
+ * 
+ * Clients that do not want every video at once can ask for one page
+ * at a time with getVideoPage() or the paged findByTitle(). Each VideoPage
+ * carries an opaque cursor that is passed back as the "after" parameter
+ * to get the next page.
+ * 
+ * Clients that only show each video's title and duration (e.g., in a
+ * list screen) should use getVideoSummaries(), which leaves out the rest
+ * of each video. It supports ETags just like getVideoList().
+ * 
+ * searchTitles() finds videos by the words in their titles, rather than
+ * by the exact title like findByTitle(), so that clients don't have to
+ * download the whole list to filter it themselves. It is always paged.
+ * 
+ * Every endpoint that sends or receives JSON also speaks Smile, a binary
+ * form of JSON that is smaller and much cheaper to parse (see
+ * SMILE_MEDIA_TYPE). Clients opt in by building their RestAdapter with a
+ * SmileConverter, which asks for Smile and reads it.
  * 
  * @author jules
  *
@@ -26,16 +50,60 @@ public interface VideoSvcApi {
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
+	// The path to add many videos in one request
+	public static final String VIDEO_BATCH_PATH = VIDEO_SVC_PATH + "/batch";
+
+	// The media type for a stream of videos, one JSON object per line
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+	// The media type for Smile, the binary form of JSON, which can be
+	// asked for in place of JSON on any of the endpoints
+	public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
+	// The path to get the id, title and duration of every video
+	public static final String VIDEO_SUMMARY_PATH = VIDEO_SVC_PATH + "/summary";
+
 	// The path to search videos by title
 	public static final String VIDEO_TITLE_SEARCH_PATH = VIDEO_SVC_PATH + "/find";
 
+	// The path to search videos by the words in their titles, and the
+	// parameter with the words to search for
+	public static final String VIDEO_SEARCH_PATH = VIDEO_SVC_PATH + "/search";
+	public static final String QUERY_PARAMETER = "q";
+
+	// The parameters for asking for one page of videos
+	public static final String LIMIT_PARAMETER = "limit";
+	public static final String AFTER_PARAMETER = "after";
+
+	// The most videos that the service will put on one page
+	public static final int MAX_PAGE_SIZE = 1000;
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
 	
+	// Pass a null cursor to get the first page
+	@GET(VIDEO_SVC_PATH)
+	public VideoPage getVideoPage(@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
+	@GET(VIDEO_SUMMARY_PATH)
+	public Collection<VideoSummary> getVideoSummaries();
+	
 	@POST(VIDEO_SVC_PATH)
 	public boolean addVideo(@Body Video v);
 	
+	@POST(VIDEO_BATCH_PATH)
+	public int addVideos(@Body List<Video> videos);
+	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
 	
+	@GET(VIDEO_TITLE_SEARCH_PATH)
+	public VideoPage findByTitle(@Query(TITLE_PARAMETER) String title,
+			@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
+	// Pass a null cursor to get the first page
+	@GET(VIDEO_SEARCH_PATH)
+	public VideoPage searchTitles(@Query(QUERY_PARAMETER) String query,
+			@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
 }
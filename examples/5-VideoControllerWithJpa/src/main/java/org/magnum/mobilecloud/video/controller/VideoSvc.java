@@ -1,18 +1,49 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.replica.ReadYourWrites;
 import org.magnum.mobilecloud.video.repository.Video;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryCustom.VideoCallback;
+import org.magnum.mobilecloud.video.repository.VideoSummary;
+import org.magnum.mobilecloud.video.repository.WriteBehindVideoQueue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 
 /**
@@ -50,6 +81,73 @@ public class VideoSvc implements VideoSvcApi {
 	@Autowired
 	private VideoRepository videos;
 
+	// Used to read streams of newline-delimited JSON videos
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	// Used to write the videos one at a time when the list is streamed.
+	// The JsonGenerator buffers the output, so we don't want Jackson to
+	// flush the response after every single video.
+	private static final ObjectWriter videoWriter = objectMapper
+			.writerWithType(Video.class)
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	// The same, for clients that ask for the list in Smile (see
+	// VideoSvcApi.SMILE_MEDIA_TYPE)
+	private static final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+	private static final ObjectWriter smileVideoWriter = smileMapper
+			.writerWithType(Video.class)
+			.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	private static final String ACCEPT_HEADER = "Accept";
+	private static final String VARY_HEADER = "Vary";
+	private static final MediaType SMILE = MediaType.valueOf(VideoSvcApi.SMILE_MEDIA_TYPE);
+
+	// When this is true (set "video.list.streaming=true" in
+	// application.properties), GET /video writes the videos to the
+	// response as they are read from the database, instead of loading
+	// them all into a list and then converting the list to JSON. The
+	// JSON that the client receives is exactly the same.
+	@Value("${video.list.streaming:false}")
+	private boolean streamVideoList;
+
+	// When this is true (set "video.dedupe=true" in application.properties),
+	// adding a video that is equal to one that is already saved (same name,
+	// url, and duration) does nothing, so clients can safely retry an add
+	// that timed out. See VideoRepositoryImpl for the unique index that
+	// backs this up.
+	@Value("${video.dedupe:false}")
+	private boolean dedupe;
+
+	// When this is true (set "video.writebehind=true" in
+	// application.properties), addVideo() hands the video to the
+	// WriteBehindVideoQueue, which saves the videos from many requests in
+	// one transaction, and waits until its video has been committed.
+	@Value("${video.writebehind:false}")
+	private boolean writeBehind;
+
+	// How long addVideo() waits for the WriteBehindVideoQueue to commit its
+	// video before it gives up and answers 503 Service Unavailable. The
+	// video may still be saved after that, so the client should retry the
+	// add (which is safe in dedupe mode).
+	@Value("${video.writebehind.save.timeout:30000}")
+	private long writeBehindTimeoutMillis;
+
+	@Autowired
+	private WriteBehindVideoQueue writeBehindQueue;
+
+	// A version number for the videos in the repository that goes up every
+	// time a video is added through this controller. Together with an id for
+	// this run of the controller, it is sent to clients as the ETag of the
+	// list, so that a client polling an unchanged list does not make us
+	// load and convert every video again.
+	//
+	// The version only knows about videos added through addVideo() and
+	// addVideos(). If other code saves Videos to the repository, it must
+	// not rely on clients seeing them until the next add.
+	private final String catalogId = Long.toHexString(System.currentTimeMillis());
+	private final AtomicLong catalogVersion = new AtomicLong();
+
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
 	// object before adding it to the list. The @RequestBody
@@ -65,20 +163,232 @@ public class VideoSvc implements VideoSvcApi {
 	// client and service paths for the VideoSvc are always
 	// in synch.
 	//
+	// In dedupe mode, a video that is already saved is not saved again and
+	// the add still returns true, just as it did the first time.
+	//
+	// In write-behind mode, the add still only returns once the video has
+	// been committed, but the commit is shared with the other adds that
+	// arrived at about the same time. If too many videos are already
+	// waiting, the client gets a 503 Service Unavailable and should try
+	// again later.
+	//
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.POST)
 	public @ResponseBody boolean addVideo(@RequestBody Video v){
-		 videos.save(v);
+		 if (dedupe) {
+			 if (isSaved(v)) {
+				 return true;
+			 }
+			 try {
+				 save(v);
+			 } catch (DataIntegrityViolationException e) {
+				 // Another request saved the same video after we looked
+				 // for it, and the unique index stopped us from saving a
+				 // second copy. Either way, the video is saved once.
+				 return true;
+			 }
+		 } else {
+			 save(v);
+		 }
+		 // Bump the version after the video is saved, so that a client
+		 // can never be told that it has the latest version of a list
+		 // that is missing the video
+		 catalogVersion.incrementAndGet();
 		 return true;
 	}
 	
+	private void save(Video v){
+		if (!writeBehind) {
+			videos.save(v);
+			return;
+		}
+		try {
+			writeBehindQueue.add(v).get(writeBehindTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new WriteBehindVideoQueue.WriteBehindRejectedException("Timed out waiting for the video to be saved");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WriteBehindVideoQueue.WriteBehindRejectedException("Interrupted while waiting for the video to be saved");
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+		// The video was committed on the queue's thread, so tell
+		// ReadYourWrites about it here, where the response is (see
+		// ReplicaRoutingDataSource)
+		ReadYourWrites.written(System.currentTimeMillis());
+	}
+
+	// Receives POST requests to /video/batch with a JSON array of
+	// videos, or the same array in Smile from clients that use the
+	// SmileConverter. The whole batch is saved in one transaction and the
+	// inserts are sent to the database in JDBC batches (see
+	// VideoRepositoryImpl), rather than one transaction per video.
+	//
+	// Returns the number of videos that were saved. In dedupe mode, videos
+	// that are already saved (including earlier videos in the same batch)
+	// are skipped and not counted.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes={"application/json", VideoSvcApi.SMILE_MEDIA_TYPE})
+	public @ResponseBody int addVideos(@RequestBody List<Video> batch){
+		int saved = save(batch.iterator());
+		catalogVersion.incrementAndGet();
+		return saved;
+	}
+
+	// Receives POST requests to /video/batch with newline-delimited JSON
+	// (one video per line). The videos are parsed one at a time while they
+	// are being saved, so the whole batch never has to be in memory.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST,
+			consumes=VideoSvcApi.NDJSON_MEDIA_TYPE)
+	public @ResponseBody int addVideos(InputStream ndjson) throws IOException {
+		MappingIterator<Video> batch = objectMapper.reader(Video.class).readValues(ndjson);
+		int saved = save(batch);
+		catalogVersion.incrementAndGet();
+		return saved;
+	}
+	
+	// In dedupe mode, the repository skips the videos that are already
+	// saved, looking them up a group at a time inside the batch's
+	// transaction, and the later copies of videos that are in the batch
+	// twice. If another request saves one of the videos at the same time,
+	// the unique index makes the batch fail and roll back, and a retry of
+	// the batch skips that video.
+	private int save(Iterator<Video> batch){
+		return dedupe ? videos.saveNewInBatches(batch) : videos.saveInBatches(batch);
+	}
+
+	private boolean isSaved(Video v){
+		return !videos.findByNameAndUrlAndDuration(v.getName(), v.getUrl(), v.getDuration()).isEmpty();
+	}
+	
 	// Receives GET requests to /video and returns the current
 	// list of videos in memory. Spring automatically converts
 	// the list of videos to JSON because of the @ResponseBody
 	// annotation.
+	//
+	// If the client sends an If-None-Match header with the ETag of
+	// the current version of the list, checkNotModified() sets the
+	// response status to 304 Not Modified and we return null without
+	// ever querying the database.
+	//
+	// In streaming mode, we write the list to the response ourselves and
+	// also return null so that Spring doesn't write anything else.
+	//
+	// The list is sent as JSON or as Smile depending on the Accept header,
+	// so each has its own ETag, and the Vary header tells caches between
+	// us and the client to keep the two apart.
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET)
-	public @ResponseBody Collection<Video> getVideoList(){
+	public @ResponseBody Collection<Video> getVideoList(WebRequest request,
+			HttpServletResponse response) throws IOException {
+		response.setHeader(VARY_HEADER, ACCEPT_HEADER);
+		boolean smile = acceptsSmile(request);
+		// Read the version before querying. If a video is added in
+		// between, the client gets a newer list with an older ETag
+		// and simply downloads the list again on its next poll.
+		String etag = catalogETag(smile);
+		if (request.checkNotModified(etag)) {
+			return null;
+		}
+		if (streamVideoList) {
+			response.setContentType(smile ? VideoSvcApi.SMILE_MEDIA_TYPE : "application/json;charset=UTF-8");
+			writeVideoList(response.getOutputStream(), smile);
+			return null;
+		}
+		return getVideoList();
+	}
+
+	// Writes the same JSON array as getVideoList(), but one video at a
+	// time as the repository scrolls through the table. Only the
+	// JsonGenerator's buffer and the few videos that the repository has not
+	// yet let go of are ever in memory, so a catalog of a million videos
+	// needs no more heap than a catalog of ten.
+	public int writeVideoList(OutputStream out) throws IOException {
+		return writeVideoList(out, false);
+	}
+
+	// Writes the list in Smile rather than JSON if smile is true
+	public int writeVideoList(OutputStream out, boolean smile) throws IOException {
+		ObjectMapper mapper = smile ? smileMapper : objectMapper;
+		final ObjectWriter writer = smile ? smileVideoWriter : videoWriter;
+		final JsonGenerator json = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+		// Leave closing the response to the servlet container
+		json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		json.writeStartArray();
+		int written = videos.forEachVideo(new VideoCallback() {
+			@Override
+			public void handle(Video v) throws IOException {
+				writer.writeValue(json, v);
+			}
+		});
+		json.writeEndArray();
+		json.close();
+		return written;
+	}
+
+	public Collection<Video> getVideoList(){
 		return Lists.newArrayList(videos.findAll());
 	}
+
+	// Works out whether Spring will answer this request with Smile rather
+	// than JSON, the same way that Spring does: the accepted types are
+	// sorted by specificity and quality, and the first one that one of the
+	// converters can write wins. The JSON converter comes before the Smile
+	// one (see SmileConverterRegistrar), so a wildcard gets JSON.
+	private static boolean acceptsSmile(WebRequest request){
+		String accept = request.getHeader(ACCEPT_HEADER);
+		if (accept == null) {
+			return false;
+		}
+		List<MediaType> accepted;
+		try {
+			accepted = MediaType.parseMediaTypes(accept);
+		} catch (InvalidMediaTypeException e) {
+			return false;
+		}
+		MediaType.sortBySpecificityAndQuality(accepted);
+		for (MediaType type : accepted) {
+			if (type.getQualityValue() == 0) {
+				// Explicitly not acceptable
+				continue;
+			}
+			if (type.includes(MediaType.APPLICATION_JSON)) {
+				return false;
+			}
+			if (type.includes(SMILE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Receives GET requests to /video/summary and returns the id, title
+	// and duration of every video. The list changes whenever the full
+	// list does, so it is sent with the same ETags (and Vary header) and
+	// answered with 304 Not Modified in the same way.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SUMMARY_PATH, method=RequestMethod.GET)
+	public @ResponseBody Collection<VideoSummary> getVideoSummaries(WebRequest request,
+			HttpServletResponse response){
+		response.setHeader(VARY_HEADER, ACCEPT_HEADER);
+		if (request.checkNotModified(catalogETag(acceptsSmile(request)))) {
+			return null;
+		}
+		return getVideoSummaries();
+	}
+
+	public Collection<VideoSummary> getVideoSummaries(){
+		return videos.findAllSummaries();
+	}
+
+	// The ETag of the JSON list
+	public String catalogETag(){
+		return catalogETag(false);
+	}
+
+	// The Smile list has different bytes from the JSON one, so it needs a
+	// different ETag, or a client could be told that the JSON it has is
+	// the Smile that it asked for
+	public String catalogETag(boolean smile){
+		return "\"" + catalogId + "-" + catalogVersion.get() + (smile ? "-smile" : "") + "\"";
+	}
 	
 	// Receives GET requests to /video/find and returns all Videos
 	// that have a title (e.g., Video.name) matching the "title" request
@@ -92,4 +402,69 @@ public class VideoSvc implements VideoSvcApi {
 		return videos.findByName(title);
 	}
 
+	// Receives GET requests to /video that have a "limit" parameter and
+	// returns just one page of the videos. Spring picks this method rather
+	// than getVideoList() because its mapping is more specific.
+	//
+	// The cursor holds the id of the last video on the previous page and
+	// the query asks for the videos with larger ids, so only one page of
+	// rows is ever loaded, however many videos there are.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage getVideoPage(
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		return page(videos.findByIdGreaterThanOrderByIdAsc(
+				VideoCursor.decode(after), new PageRequest(0, pageSize + 1)), pageSize);
+	}
+
+	// Receives GET requests to /video/find that have a "limit" parameter
+	// and returns one page of the videos with a matching title
+	@RequestMapping(value=VideoSvcApi.VIDEO_TITLE_SEARCH_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage findByTitle(
+			@RequestParam(TITLE_PARAMETER) String title,
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		return page(videos.findByNameAndIdGreaterThanOrderByIdAsc(
+				title, VideoCursor.decode(after), new PageRequest(0, pageSize + 1)), pageSize);
+	}
+
+	// Receives GET requests to /video/search and returns one page of the
+	// videos whose titles contain all of the words in the "q" parameter,
+	// either as whole words, at the start of words, or inside them. Whole
+	// word matches come first (see VideoRepositoryCustom.searchTitles()).
+	//
+	// The matches are ranked rather than in id order, so the cursor holds
+	// the position of the first match on the next page instead of an id.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SEARCH_PATH, method=RequestMethod.GET)
+	public @ResponseBody VideoPage searchTitles(
+			@RequestParam(QUERY_PARAMETER) String query,
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		// decode() returns -1 when there is no cursor (the first page)
+		long position = Math.max(0, VideoCursor.decode(after));
+		if (position > Integer.MAX_VALUE - pageSize - 1) {
+			throw new VideoCursor.InvalidCursorException(after);
+		}
+		int offset = (int) position;
+		List<Video> fetched = videos.searchTitles(query, offset, pageSize + 1);
+		if (fetched.size() <= pageSize) {
+			return new VideoPage(fetched, null);
+		}
+		return new VideoPage(new ArrayList<Video>(fetched.subList(0, pageSize)),
+				VideoCursor.encode(offset + pageSize));
+	}
+
+	// We ask the database for one more video than fits on the page. If it
+	// comes back, there is another page and we hand out a cursor for it.
+	private VideoPage page(List<Video> fetched, int pageSize){
+		if (fetched.size() <= pageSize) {
+			return new VideoPage(fetched, null);
+		}
+		List<Video> page = new ArrayList<Video>(fetched.subList(0, pageSize));
+		return new VideoPage(page, VideoCursor.encode(page.get(pageSize - 1).getId()));
+	}
+
 }
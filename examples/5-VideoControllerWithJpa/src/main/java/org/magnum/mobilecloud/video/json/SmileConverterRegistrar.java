@@ -0,0 +1,40 @@
+package org.magnum.mobilecloud.video.json;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/**
+ * Adds a SmileHttpMessageConverter to the converters that Spring uses to
+ * read request bodies and write response bodies, without replacing the
+ * ones that Application gets from @EnableWebMvc.
+ * 
+ * The converter is added last. When a client accepts anything (or doesn't
+ * send an Accept header), Spring picks the first converter that can write
+ * the response, so those clients still get JSON, and only clients that
+ * ask for Smile get it.
+ * 
+ * @author jules
+ *
+ */
+@Component
+public class SmileConverterRegistrar implements BeanPostProcessor {
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		// The adapter builds its argument resolvers and return value
+		// handlers from its converters when it is initialized, so the
+		// converter has to be added before then
+		if (bean instanceof RequestMappingHandlerAdapter) {
+			((RequestMappingHandlerAdapter) bean).getMessageConverters().add(new SmileHttpMessageConverter());
+		}
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+}
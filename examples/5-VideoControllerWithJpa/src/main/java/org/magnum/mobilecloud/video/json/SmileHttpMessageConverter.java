@@ -0,0 +1,33 @@
+package org.magnum.mobilecloud.video.json;
+
+import java.util.Arrays;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Converts request and response bodies to and from Smile, the binary form
+ * of JSON (see VideoSvcApi.SMILE_MEDIA_TYPE), in the same way that Spring
+ * converts them to and from JSON.
+ * 
+ * It is only used for requests that send Smile or ask for it in their
+ * Accept header (see SmileConverterRegistrar), so every other client still
+ * gets JSON.
+ * 
+ * @author jules
+ *
+ */
+public class SmileHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+	public static final MediaType SMILE = MediaType.valueOf(VideoSvcApi.SMILE_MEDIA_TYPE);
+
+	public SmileHttpMessageConverter() {
+		setObjectMapper(new ObjectMapper(new SmileFactory()));
+		setSupportedMediaTypes(Arrays.asList(SMILE));
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.magnum.mobilecloud.video.pool;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Replaces the DataSource that Spring Boot would set up on its own with a
+ * bounded, instrumented pool from ConnectionPools.
+ *
+ * When reads are sent to a replica, ReplicaConfiguration sets up the
+ * DataSource instead, using ConnectionPools for both of its databases.
+ *
+ * @author jules
+ *
+ */
+@Configuration
+@ConditionalOnExpression("!${video.replica.enabled:false}")
+public class ConnectionPoolConfiguration {
+
+	@Autowired
+	private ConnectionPools pools;
+
+	@Bean
+	public DataSource dataSource() {
+		return pools.createPrimary();
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.magnum.mobilecloud.video.pool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the application's database connection pools, so that every pool
+ * has the same bounds (see application.properties) and publishes the same
+ * metrics (see InstrumentedDataSource):
+ *
+ * video.pool.min      connections opened at startup and kept open when idle
+ * video.pool.max      connections open at once, at most
+ * video.pool.timeout  milliseconds that getConnection() waits for a free
+ *                     connection before it throws a PoolExhaustedException
+ *
+ * A request that can't get a connection fails after the timeout, rather
+ * than queueing up behind every other request while the database is
+ * overloaded. The waiting threads are served in the order they arrived.
+ *
+ * @author jules
+ *
+ */
+@Component
+public class ConnectionPools {
+
+	@Value("${spring.datasource.url:jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1}")
+	private String primaryUrl;
+
+	@Value("${spring.datasource.username:sa}")
+	private String primaryUsername;
+
+	@Value("${spring.datasource.password:}")
+	private String primaryPassword;
+
+	@Value("${spring.datasource.driverClassName:org.h2.Driver}")
+	private String primaryDriver;
+
+	@Value("${video.pool.min:2}")
+	private int min;
+
+	@Value("${video.pool.max:10}")
+	private int max;
+
+	@Value("${video.pool.timeout:1000}")
+	private int timeout;
+
+	@Autowired
+	private CounterService counters;
+
+	@Autowired
+	private GaugeService gauges;
+
+	private final List<DataSource> pools = new CopyOnWriteArrayList<DataSource>();
+
+	/**
+	 * Creates a pool of connections to the database set up with the
+	 * spring.datasource.* properties, which is named "primary" in the
+	 * metrics.
+	 *
+	 * @return
+	 */
+	public InstrumentedDataSource createPrimary() {
+		return create("primary", primaryDriver, primaryUrl, primaryUsername, primaryPassword);
+	}
+
+	public InstrumentedDataSource create(String name, String driver, String url,
+			String username, String password) {
+		DataSource pool = new DataSource();
+		pool.setDriverClassName(driver);
+		pool.setUrl(url);
+		pool.setUsername(username);
+		pool.setPassword(password);
+		pool.setInitialSize(min);
+		pool.setMinIdle(min);
+		pool.setMaxIdle(max);
+		pool.setMaxActive(max);
+		pool.setMaxWait(timeout);
+		pool.setFairQueue(true);
+		pools.add(pool);
+		return new InstrumentedDataSource(name, pool, counters, gauges);
+	}
+
+	@PreDestroy
+	public void close() {
+		for (DataSource pool : pools) {
+			pool.close();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package org.magnum.mobilecloud.video.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Wraps a Tomcat connection pool and publishes how busy it is, and how
+ * long it takes to get a connection from it, on /metrics (<name> is the
+ * name that the pool was given by ConnectionPools):
+ *
+ * gauge.datasource.<name>.active           connections in use
+ * gauge.datasource.<name>.idle             open connections that aren't in use
+ * gauge.datasource.<name>.pending          threads waiting for a connection
+ * gauge.datasource.<name>.acquire.time     milliseconds the last getConnection() took
+ * counter.datasource.<name>.acquire.under.<n>ms
+ *                                          getConnection() calls that took less than
+ *                                          n ms (and more than the next smaller n)
+ * counter.datasource.<name>.acquire.over.<n>ms
+ *                                          calls that took longer than the largest n
+ * counter.datasource.<name>.acquire.timeouts
+ *                                          calls that gave up because the pool stayed
+ *                                          full for video.pool.timeout ms
+ *
+ * The counters make up a histogram of the acquisition times. While the
+ * pool has free connections, nearly every call lands in the first bucket.
+ * Once the pool is exhausted, the calls move to the larger buckets, and
+ * then to the timeouts.
+ *
+ * The gauges are updated whenever a connection is taken or given back.
+ *
+ * @author jules
+ *
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+	// The upper bounds of the histogram's buckets, in milliseconds
+	static final long[] BUCKETS = { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+	private final DataSource pool;
+
+	private final String prefix;
+
+	private final CounterService counters;
+
+	private final GaugeService gauges;
+
+	public InstrumentedDataSource(String name, DataSource pool,
+			CounterService counters, GaugeService gauges) {
+		super(pool);
+		this.pool = pool;
+		this.prefix = "datasource." + name + ".";
+		this.counters = counters;
+		this.gauges = gauges;
+	}
+
+	public DataSource getPool() {
+		return pool;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return instrument(null, null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return instrument(username, password);
+	}
+
+	private Connection instrument(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		Connection connection;
+		try {
+			connection = (username == null) ? pool.getConnection()
+					: pool.getConnection(username, password);
+		} catch (PoolExhaustedException e) {
+			counters.increment(prefix + "acquire.timeouts");
+			sample();
+			throw e;
+		}
+		record((System.nanoTime() - start) / 1000000);
+		sample();
+		return (Connection) Proxy.newProxyInstance(
+				InstrumentedDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				new CloseHandler(connection));
+	}
+
+	private void record(long millis) {
+		gauges.submit(prefix + "acquire.time", millis);
+		counters.increment(prefix + "acquire." + bucket(millis));
+	}
+
+	static String bucket(long millis) {
+		for (long bound : BUCKETS) {
+			if (millis < bound) {
+				return "under." + bound + "ms";
+			}
+		}
+		return "over." + BUCKETS[BUCKETS.length - 1] + "ms";
+	}
+
+	private void sample() {
+		gauges.submit(prefix + "active", pool.getActive());
+		gauges.submit(prefix + "idle", pool.getIdle());
+		gauges.submit(prefix + "pending", pool.getWaitCount());
+	}
+
+	// Updates the gauges once the connection has gone back to the pool
+	private class CloseHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private boolean closed;
+
+		CloseHandler(Connection target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			} finally {
+				if (method.getName().equals("close") && !closed) {
+					closed = true;
+					sample();
+				}
+			}
+		}
+	}
+
+}
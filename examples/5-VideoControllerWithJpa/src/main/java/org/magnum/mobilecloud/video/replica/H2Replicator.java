@@ -0,0 +1,160 @@
+package org.magnum.mobilecloud.video.replica;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * A very simple replicator that copies the videos from one H2 database to
+ * another, so that ReplicaRoutingDataSource can be tried out (and tested)
+ * locally without setting up real database replication.
+ *
+ * When it starts, it copies the schema of the primary (as written out by
+ * H2's SCRIPT command) to the replica. Then, every interval milliseconds,
+ * it copies the videos (and their title search index entries) that aren't
+ * on the replica yet. The videos are only ever added to, so it doesn't
+ * look for changed or removed rows.
+ *
+ * Each pass notes the time before it starts reading the primary. Every
+ * write that was committed before then is seen by the pass, so when the
+ * pass is done, that time is written to the replica's replica_heartbeat
+ * table.
+ *
+ * Video ids are handed out in blocks (see Video), so they are not
+ * committed in id order, and the replicator keeps the set of ids that it
+ * has already copied rather than just the highest one.
+ *
+ * @author jules
+ *
+ */
+public class H2Replicator {
+
+	private static final Log log = LogFactory.getLog(H2Replicator.class);
+
+	private static final int CHUNK = 500;
+
+	private final JdbcTemplate primary;
+
+	private final JdbcTemplate replica;
+
+	private final long interval;
+
+	private final Set<Long> copied = new HashSet<Long>();
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param primary
+	 * @param replica
+	 * @param interval how often to copy the new videos, in milliseconds, or
+	 *        0 to only copy them when replicate() is called
+	 */
+	public H2Replicator(DataSource primary, DataSource replica, long interval) {
+		this.primary = new JdbcTemplate(primary);
+		this.replica = new JdbcTemplate(replica);
+		this.interval = interval;
+	}
+
+	public void start() {
+		copySchema();
+		replicate();
+		if (interval > 0) {
+			executor = Executors.newSingleThreadScheduledExecutor();
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						replicate();
+					} catch (RuntimeException e) {
+						log.warn("Replication failed, will try again", e);
+					}
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void copySchema() {
+		for (String statement : primary.queryForList("script nodata nopasswords drop", String.class)) {
+			// Leave out the users, settings and comments
+			String s = statement.trim().toUpperCase();
+			if ((s.startsWith("CREATE ") && !s.startsWith("CREATE USER"))
+					|| s.startsWith("ALTER TABLE") || s.startsWith("DROP ")) {
+				replica.execute(statement);
+			}
+		}
+		replica.execute("create table if not exists replica_heartbeat "
+				+ "(id int primary key, replicated_at bigint not null)");
+		// The tables were just created again, so an old heartbeat would
+		// claim that they have videos that they don't
+		replica.update("delete from replica_heartbeat");
+		synchronized (this) {
+			copied.clear();
+			copied.addAll(replica.queryForList("select id from video", Long.class));
+		}
+	}
+
+	/**
+	 * Copies the videos that are not on the replica yet and then moves the
+	 * replica's heartbeat forward.
+	 */
+	public synchronized void replicate() {
+		long startedAt = System.currentTimeMillis();
+
+		List<Long> missing = new ArrayList<Long>();
+		for (Long id : primary.queryForList("select id from video", Long.class)) {
+			if (!copied.contains(id)) {
+				missing.add(id);
+			}
+		}
+
+		for (List<Long> chunk : Lists.partition(missing, CHUNK)) {
+			String ids = Joiner.on(',').join(chunk);
+			copy("select id, name, url, duration from video where id in (" + ids + ")",
+					"merge into video (id, name, url, duration) key (id) values (?, ?, ?, ?)", 4);
+			copy("select video_id, suffix, word_start from video_title_term where video_id in (" + ids + ")",
+					"merge into video_title_term (video_id, suffix, word_start) "
+							+ "key (video_id, suffix, word_start) values (?, ?, ?)", 3);
+			copied.addAll(chunk);
+		}
+
+		replica.update("merge into replica_heartbeat (id, replicated_at) key (id) values (0, ?)", startedAt);
+	}
+
+	private void copy(String select, String merge, final int columns) {
+		final List<Object[]> rows = new ArrayList<Object[]>();
+		primary.query(select, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				Object[] row = new Object[columns];
+				for (int i = 0; i < columns; i++) {
+					row[i] = rs.getObject(i + 1);
+				}
+				rows.add(row);
+			}
+		});
+		replica.batchUpdate(merge, rows);
+	}
+
+}
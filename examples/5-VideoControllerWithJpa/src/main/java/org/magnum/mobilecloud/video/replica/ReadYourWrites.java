@@ -0,0 +1,75 @@
+package org.magnum.mobilecloud.video.replica;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.magnum.mobilecloud.video.client.ReadYourWritesClient;
+
+/**
+ * Remembers, for the request that the current thread is handling, the
+ * time of the client's last write, so that ReplicaRoutingDataSource only
+ * sends the client's reads to the replica once the replica has caught up
+ * with that write.
+ *
+ * The time comes from two places:
+ *
+ * 1. The client sends back the time of its last write in the
+ *    ReadYourWritesClient.WRITTEN_AT_HEADER header, which
+ *    ReadYourWritesFilter hands to begin().
+ * 2. Every transaction that commits on the primary calls written(), which
+ *    moves the time forward for the rest of the request and sends it to
+ *    the client in the same header.
+ *
+ * Outside of a request (e.g., in a test or a background job), the thread
+ * keeps the time of its own writes until forget() is called.
+ *
+ * @author jules
+ *
+ */
+public class ReadYourWrites {
+
+	private static final ThreadLocal<Long> lastWrite = new ThreadLocal<Long>();
+
+	private static final ThreadLocal<HttpServletResponse> response = new ThreadLocal<HttpServletResponse>();
+
+	public static void begin(long clientLastWrite, HttpServletResponse r) {
+		lastWrite.set(clientLastWrite);
+		response.set(r);
+	}
+
+	public static void end() {
+		forget();
+	}
+
+	public static void forget() {
+		lastWrite.remove();
+		response.remove();
+	}
+
+	/**
+	 * Returns the time of the last write that the current client must be
+	 * able to read, or 0 if it hasn't written anything.
+	 *
+	 * @return
+	 */
+	public static long lastWrite() {
+		Long at = lastWrite.get();
+		return (at != null) ? at : 0;
+	}
+
+	/**
+	 * Records that a write has just been committed on the primary. The
+	 * time is taken after the commit, so it is never earlier than the
+	 * commit itself.
+	 *
+	 * @param at
+	 */
+	public static void written(long at) {
+		long latest = Math.max(at, lastWrite());
+		lastWrite.set(latest);
+		HttpServletResponse r = response.get();
+		if (r != null && !r.isCommitted()) {
+			r.setHeader(ReadYourWritesClient.WRITTEN_AT_HEADER, Long.toString(latest));
+		}
+	}
+
+}
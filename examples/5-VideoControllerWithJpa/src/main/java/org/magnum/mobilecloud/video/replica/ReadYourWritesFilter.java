@@ -0,0 +1,50 @@
+package org.magnum.mobilecloud.video.replica;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.magnum.mobilecloud.video.client.ReadYourWritesClient;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Reads the time of the client's last write from the
+ * ReadYourWritesClient.WRITTEN_AT_HEADER request header and keeps it in
+ * ReadYourWrites while the request is handled (see ReadYourWrites).
+ *
+ * A header that isn't a number is ignored, so the request is treated like
+ * one from a client that hasn't written anything.
+ *
+ * @author jules
+ *
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request,
+			HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		ReadYourWrites.begin(clientLastWrite(request), response);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			ReadYourWrites.end();
+		}
+	}
+
+	private static long clientLastWrite(HttpServletRequest request) {
+		String header = request.getHeader(ReadYourWritesClient.WRITTEN_AT_HEADER);
+		if (header == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(header.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+}
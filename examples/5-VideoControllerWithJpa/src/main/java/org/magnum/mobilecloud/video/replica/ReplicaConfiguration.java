@@ -0,0 +1,107 @@
+package org.magnum.mobilecloud.video.replica;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.pool.ConnectionPools;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Sends the read-only transactions to a replica of the database when
+ * video.replica.enabled is true (see application.properties).
+ *
+ * The primary database is still set up with the spring.datasource.*
+ * properties, and the replica with the video.replica.* properties. Both
+ * get a pool from ConnectionPools, named "primary" and "replica" in the
+ * metrics. The DataSource that JPA and everything else gets is a
+ * ReplicaRoutingDataSource that picks between them.
+ *
+ * Unless video.replica.replicator.enabled is false, an H2Replicator
+ * copies the new videos from the primary to the replica every
+ * video.replica.replicator.interval milliseconds. Turn it off when the
+ * replica is kept up to date by the database itself.
+ *
+ * @author jules
+ *
+ */
+@Configuration
+@ConditionalOnExpression("${video.replica.enabled:false}")
+public class ReplicaConfiguration {
+
+	@Autowired
+	private ConnectionPools pools;
+
+	@Value("${video.replica.url}")
+	private String replicaUrl;
+
+	@Value("${video.replica.username:sa}")
+	private String replicaUsername;
+
+	@Value("${video.replica.password:}")
+	private String replicaPassword;
+
+	@Value("${video.replica.driverClassName:org.h2.Driver}")
+	private String replicaDriver;
+
+	@Value("${video.replica.heartbeat.cache:1000}")
+	private long heartbeatCacheMillis;
+
+	@Value("${video.replica.replicator.interval:1000}")
+	private long replicatorInterval;
+
+	@Bean
+	public DataSource primaryDataSource() {
+		return pools.createPrimary();
+	}
+
+	@Bean
+	public DataSource replicaDataSource() {
+		return pools.create("replica", replicaDriver, replicaUrl, replicaUsername, replicaPassword);
+	}
+
+	@Bean
+	public ReplicaRoutingDataSource replicaRoutingDataSource() {
+		return new ReplicaRoutingDataSource(primaryDataSource(), replicaDataSource(), heartbeatCacheMillis);
+	}
+
+	// The router has to see whether the transaction is read-only, and a
+	// transaction is only marked read-only after it has started. The lazy
+	// proxy holds off taking the real connection until the first statement.
+	// Giving it the defaults up front keeps it from taking a connection
+	// from the primary at startup just to look them up.
+	@Bean
+	@Primary
+	public DataSource dataSource() {
+		LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+		proxy.setTargetDataSource(replicaRoutingDataSource());
+		proxy.setDefaultAutoCommit(true);
+		proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		return proxy;
+	}
+
+	@Bean
+	public ReadYourWritesFilter readYourWritesFilter() {
+		return new ReadYourWritesFilter();
+	}
+
+	// Hibernate creates the tables when the EntityManagerFactory starts, so
+	// the replicator has to wait for it before it copies them
+	@Bean(initMethod = "start", destroyMethod = "stop")
+	@ConditionalOnExpression("${video.replica.replicator.enabled:true}")
+	@DependsOn("entityManagerFactory")
+	public H2Replicator h2Replicator(
+			@Qualifier("primaryDataSource") DataSource primary,
+			@Qualifier("replicaDataSource") DataSource replica) {
+		return new H2Replicator(primary, replica, replicatorInterval);
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.magnum.mobilecloud.video.replica;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections for read-only transactions (e.g., the
+ * VideoRepository's findAll() and findByName(), which Spring Data runs in
+ * @Transactional(readOnly = true) transactions) to a replica database,
+ * and everything else to the primary.
+ *
+ * The decision is made when a connection is taken, so this must be
+ * wrapped in a LazyConnectionDataSourceProxy (see ReplicaConfiguration).
+ * Otherwise the transaction would take its connection before Spring has
+ * marked it as read-only.
+ *
+ * The replica may be behind the primary, so a read only goes to it if the
+ * replica has every write that the client has made (see ReadYourWrites).
+ * The replica's replica_heartbeat table holds a time such that every
+ * write that was committed on the primary before it has been copied to
+ * the replica. H2Replicator keeps it up to date. With real replication, a
+ * job on the primary would write the time there instead, and replication
+ * would copy it along with everything else.
+ *
+ * Until the replica has a heartbeat, every read goes to the primary.
+ *
+ * @author jules
+ *
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	public enum Target { PRIMARY, REPLICA }
+
+	private final JdbcTemplate replica;
+
+	// How long to keep using the last heartbeat that was read from the
+	// replica. The heartbeat only ever moves forward, so an old one just
+	// sends a few more reads to the primary than necessary.
+	private final long heartbeatCacheMillis;
+
+	private volatile long replicatedAt;
+
+	private volatile long heartbeatReadAt;
+
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long heartbeatCacheMillis) {
+		Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(Target.PRIMARY, primary);
+		targets.put(Target.REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		this.replica = new JdbcTemplate(replica);
+		this.heartbeatCacheMillis = heartbeatCacheMillis;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return (replicatedAt() > ReadYourWrites.lastWrite()) ? Target.REPLICA : Target.PRIMARY;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					ReadYourWrites.written(System.currentTimeMillis());
+				}
+			});
+		}
+		return Target.PRIMARY;
+	}
+
+	/**
+	 * Returns the replica's heartbeat, or 0 if it doesn't have one yet.
+	 *
+	 * @return
+	 */
+	public long replicatedAt() {
+		long now = System.currentTimeMillis();
+		if (now - heartbeatReadAt > heartbeatCacheMillis) {
+			try {
+				Long at = replica.queryForObject(
+						"select max(replicated_at) from replica_heartbeat", Long.class);
+				replicatedAt = Math.max(replicatedAt, (at != null) ? at : 0);
+			} catch (DataAccessException e) {
+				// The replica isn't ready yet, so keep reading from the primary
+			}
+			heartbeatReadAt = now;
+		}
+		return replicatedAt;
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+import com.google.common.base.Objects;
+
+/**
+ * One entry in the index that VideoRepository.searchTitles() uses to find
+ * videos by the words in their titles.
+ *
+ * A title is split into lower case words, and the index holds every
+ * suffix of every word (e.g., "video", "ideo" and "deo" for "video"). A
+ * search term matches a video if it is the start of one of the video's
+ * suffixes, which the database can look up with an index on the suffix
+ * column instead of scanning every title:
+ *
+ * - it is a token match if the suffix is a whole word and equals the term
+ * - it is a prefix match if the suffix is a whole word that starts with it
+ * - otherwise it is a substring match
+ *
+ * Suffixes shorter than MIN_SUFFIX_LENGTH are left out (except for whole
+ * words), because they would make the index much bigger and a search for
+ * one or two letters in the middle of words matches nearly everything
+ * anyway. Terms of that length still find token and prefix matches.
+ *
+ * @author jules
+ *
+ */
+@Embeddable
+public class TitleTerm {
+
+	public static final int MIN_SUFFIX_LENGTH = 3;
+
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+	@Column(name = "suffix", nullable = false)
+	private String suffix;
+
+	// True if the suffix is the whole word
+	@Column(name = "word_start", nullable = false)
+	private boolean wordStart;
+
+	public TitleTerm() {
+	}
+
+	public TitleTerm(String suffix, boolean wordStart) {
+		this.suffix = suffix;
+		this.wordStart = wordStart;
+	}
+
+	/**
+	 * Splits text (a title or a search) into lower case words.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static List<String> words(String text) {
+		List<String> words = new ArrayList<String>();
+		if (text != null) {
+			for (String w : SEPARATORS.split(text.toLowerCase(Locale.ENGLISH))) {
+				if (!w.isEmpty()) {
+					words.add(w);
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Builds the index entries for a title.
+	 *
+	 * @param title
+	 * @return
+	 */
+	public static Set<TitleTerm> of(String title) {
+		Set<TitleTerm> terms = new HashSet<TitleTerm>();
+		for (String w : words(title)) {
+			terms.add(new TitleTerm(w, true));
+			for (int i = 1; i <= w.length() - MIN_SUFFIX_LENGTH; i++) {
+				terms.add(new TitleTerm(w.substring(i), false));
+			}
+		}
+		return terms;
+	}
+
+	public String getSuffix() {
+		return suffix;
+	}
+
+	public boolean isWordStart() {
+		return wordStart;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(suffix, wordStart);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof TitleTerm) {
+			TitleTerm other = (TitleTerm) obj;
+			return Objects.equal(suffix, other.suffix)
+					&& wordStart == other.wordStart;
+		} else {
+			return false;
+		}
+	}
+
+}
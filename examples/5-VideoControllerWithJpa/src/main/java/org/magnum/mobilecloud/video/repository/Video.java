@@ -1,9 +1,21 @@
 package org.magnum.mobilecloud.video.repository;
 
+import java.util.Set;
+
+import javax.persistence.Cacheable;
+import javax.persistence.CollectionTable;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import com.google.common.base.Objects;
 
@@ -14,22 +26,61 @@ import com.google.common.base.Objects;
  * 
  */
 @Entity
+// Searching by title pages through the matches in id order (see
+// VideoRepository), which this index answers without a sort
+@Table(indexes = @Index(name = "video_name_id", columnList = "name,id"))
+// Keep the videos that have been loaded in Hibernate's second-level cache
+// (see ehcache.xml), so that loading one again by id doesn't go to the
+// database. READ_WRITE keeps the cache in step with saves made through JPA.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Video {
 
+	// How many ids Hibernate takes from the video_id_seq sequence at a
+	// time. Keep this the same as hibernate.jdbc.batch_size (see
+	// application.properties) so that saving a full batch of videos needs
+	// at most one trip to the sequence.
+	public static final int ID_ALLOCATION_SIZE = 50;
+
+	// The ids come from a sequence rather than an identity column. Hibernate
+	// has to insert a row to learn an identity value, which means that it
+	// can't put the inserts in JDBC batches. With a sequence, it reserves a
+	// whole block of ids with one call and hands them out from memory (the
+	// "pooled" optimizer, which hibernate.id.new_generator_mappings turns
+	// on), so the ids are known before the inserts are sent.
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@SequenceGenerator(name = "video_id", sequenceName = "video_id_seq", allocationSize = ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "video_id")
 	private long id;
 
 	private String name;
 	private String url;
 	private long duration;
 
+	// The index entries for the words in the name, which
+	// VideoRepository.searchTitles() searches (see TitleTerm). Hibernate
+	// saves them along with the video, so every way of saving a video keeps
+	// the index up to date. They are only loaded if something asks for
+	// them, which nothing outside of the database does.
+	//
+	// They are rebuilt whenever the name is set, so they always match the
+	// name, even in a Video that Jackson made or one that has been
+	// detached. Saving such a Video merges these terms over the saved ones,
+	// which keeps a renamed video findable under its new title and never
+	// drops the terms of one that kept its name. They have no getter, so
+	// Jackson never sends them.
+	@ElementCollection
+	@CollectionTable(name = "video_title_term",
+			joinColumns = @JoinColumn(name = "video_id"),
+			indexes = @Index(name = "video_title_term_suffix", columnList = "suffix,video_id"))
+	private Set<TitleTerm> titleTerms = TitleTerm.of(null);
+
 	public Video() {
 	}
 
 	public Video(String name, String url, long duration) {
 		super();
-		this.name = name;
+		setName(name);
 		this.url = url;
 		this.duration = duration;
 	}
@@ -40,6 +91,9 @@ public class Video {
 
 	public void setName(String name) {
 		this.name = name;
+		// A new set rather than changing the old one, which may be a lazy
+		// collection of a detached Video that can't be loaded any more
+		titleTerms = TitleTerm.of(name);
 	}
 
 	public String getUrl() {
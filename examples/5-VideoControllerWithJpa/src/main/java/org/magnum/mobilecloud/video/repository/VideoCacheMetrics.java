@@ -0,0 +1,69 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.VanillaPublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the hit and miss counts of Hibernate's second-level cache and query
+ * cache to the metrics that Spring Boot publishes on /metrics, so that we
+ * can see how well the caches configured in ehcache.xml are working:
+ * 
+ * hibernate.cache.entity.hits      videos found in the second-level cache
+ * hibernate.cache.entity.misses    videos that had to be loaded from the database
+ * hibernate.cache.entity.puts      videos put in the second-level cache
+ * hibernate.cache.query.hits       searches answered from the query cache
+ * hibernate.cache.query.misses     searches that had to go to the database
+ * hibernate.cache.query.puts       search results put in the query cache
+ * hibernate.cache.video.size       videos in the second-level cache right now
+ * 
+ * Spring Boot only publishes one PublicMetrics, so this extends the one
+ * that it would otherwise use and keeps all of the standard metrics too.
+ * 
+ * The counts are only kept if hibernate.generate_statistics is turned on
+ * (see application.properties).
+ * 
+ * @author jules
+ *
+ */
+@Component
+public class VideoCacheMetrics extends VanillaPublicMetrics {
+
+	private final SessionFactory sessionFactory;
+
+	@Autowired
+	public VideoCacheMetrics(MetricReader reader, EntityManagerFactory entityManagerFactory) {
+		super(reader);
+		this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		Collection<Metric<?>> metrics = new ArrayList<Metric<?>>(super.metrics());
+		Statistics stats = sessionFactory.getStatistics();
+		metrics.add(new Metric<Long>("hibernate.cache.entity.hits", stats.getSecondLevelCacheHitCount()));
+		metrics.add(new Metric<Long>("hibernate.cache.entity.misses", stats.getSecondLevelCacheMissCount()));
+		metrics.add(new Metric<Long>("hibernate.cache.entity.puts", stats.getSecondLevelCachePutCount()));
+		metrics.add(new Metric<Long>("hibernate.cache.query.hits", stats.getQueryCacheHitCount()));
+		metrics.add(new Metric<Long>("hibernate.cache.query.misses", stats.getQueryCacheMissCount()));
+		metrics.add(new Metric<Long>("hibernate.cache.query.puts", stats.getQueryCachePutCount()));
+
+		// There are no statistics for the region if the cache is turned off
+		SecondLevelCacheStatistics videos = stats.getSecondLevelCacheStatistics(Video.class.getName());
+		if (videos != null) {
+			metrics.add(new Metric<Long>("hibernate.cache.video.size", videos.getElementCountInMemory()));
+		}
+		return metrics;
+	}
+
+}
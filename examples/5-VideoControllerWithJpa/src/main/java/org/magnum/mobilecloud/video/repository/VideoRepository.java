@@ -1,7 +1,13 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -9,13 +15,48 @@ import org.springframework.stereotype.Repository;
  * An interface for a repository that can store Video
  * objects and allow them to be searched by title.
  * 
+ * Large batches of videos can be saved with saveInBatches(), and titles
+ * can be searched by word, prefix or substring with searchTitles(). Both
+ * come from VideoRepositoryCustom.
+ * 
  * @author jules
  *
  */
 @Repository
-public interface VideoRepository extends CrudRepository<Video, Long>{
+public interface VideoRepository extends CrudRepository<Video, Long>, VideoRepositoryCustom{
 
 	// Find all videos with a matching title (e.g., Video.name)
+	//
+	// The results are kept in Hibernate's query cache, which remembers the
+	// ids of the matching videos for each title. The videos themselves
+	// then come from the second-level cache. Hibernate throws away every
+	// cached result for the Video table as soon as a Video is saved, so a
+	// search never misses a video that was just added.
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByName(String title);
+
+	// Find the videos that are equal to a video with these values (see
+	// Video.equals()). In dedupe mode, the unique index that
+	// VideoRepositoryImpl creates on these columns answers this with a
+	// single index lookup and there is never more than one match.
+	public Collection<Video> findByNameAndUrlAndDuration(String name, String url, long duration);
+	
+	// Keyset ("seek") queries for paging through the videos in id order.
+	// Each page starts right after the id of the last video on the page
+	// before, so the database jumps straight to the page using the index
+	// rather than counting past every earlier row like an OFFSET would.
+	// Only the first page of the Pageable is ever asked for; it just
+	// limits how many rows come back.
+	public List<Video> findByIdGreaterThanOrderByIdAsc(long id, Pageable page);
+
+	public List<Video> findByNameAndIdGreaterThanOrderByIdAsc(String title, long id, Pageable page);
+
+	// The id, title and duration of every video, in id order, for list
+	// screens that don't need the whole Video. The constructor expression
+	// makes the query select just those columns and build a VideoSummary
+	// from each row, rather than loading a Video entity for each one.
+	@Query("select new org.magnum.mobilecloud.video.repository.VideoSummary(v.id, v.name, v.duration)"
+			+ " from Video v order by v.id")
+	public List<VideoSummary> findAllSummaries();
 	
 }
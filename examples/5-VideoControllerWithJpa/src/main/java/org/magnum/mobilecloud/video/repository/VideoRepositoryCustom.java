@@ -0,0 +1,82 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Operations on the VideoRepository that Spring Data cannot generate
+ * from a method name. They are implemented by VideoRepositoryImpl, which
+ * Spring Data finds automatically because of its name, and are mixed into
+ * the VideoRepository that gets injected into our controller.
+ * 
+ * @author jules
+ *
+ */
+public interface VideoRepositoryCustom {
+
+	/**
+	 * Saves every video from the iterator in a single transaction, flushing
+	 * the inserts to the database in groups rather than one at a time.
+	 * 
+	 * The iterator is consumed lazily, so a caller that is reading videos
+	 * from a stream never has to hold the whole batch in memory.
+	 * 
+	 * @param videos
+	 * @return the number of videos that were saved
+	 */
+	public int saveInBatches(Iterator<Video> videos);
+
+	/**
+	 * Works like saveInBatches(), but skips the videos that are already
+	 * saved and the later copies of a video that is in the batch more than
+	 * once. Each group of videos is checked against the database with a
+	 * single query before its inserts are flushed, so a group costs one
+	 * lookup and one JDBC batch, rather than a lookup per video.
+	 * 
+	 * @param videos
+	 * @return the number of videos that were saved
+	 */
+	public int saveNewInBatches(Iterator<Video> videos);
+
+	/**
+	 * Receives the videos from forEachVideo(), one at a time.
+	 */
+	public interface VideoCallback {
+		public void handle(Video v) throws IOException;
+	}
+
+	/**
+	 * Hands every video to the callback, in id order, while scrolling
+	 * through the query results with a database cursor. Videos are
+	 * dropped from the persistence context after they have been handled,
+	 * so only a few of them are in memory at any time, however many rows
+	 * the table has.
+	 * 
+	 * The callback runs inside a read-only transaction that stays open
+	 * until the last video has been handled.
+	 * 
+	 * @param callback
+	 * @return the number of videos that were handled
+	 * @throws IOException if the callback throws it
+	 */
+	public int forEachVideo(VideoCallback callback) throws IOException;
+
+	/**
+	 * Finds the videos whose titles contain every one of the words in the
+	 * search (see TitleTerm.words()), best matches first, using the index
+	 * of title words that is saved with each video (see TitleTerm).
+	 * 
+	 * For each word of the search, a video scores 3 if a word in its title
+	 * is the same word, 2 if a word in its title starts with it, and 1 if
+	 * it only appears inside a word. Videos with the same total score come
+	 * back in id order.
+	 * 
+	 * @param search
+	 * @param offset the number of matches to skip
+	 * @param limit the most matches to return
+	 * @return
+	 */
+	public List<Video> searchTitles(String search, int offset, int limit);
+
+}
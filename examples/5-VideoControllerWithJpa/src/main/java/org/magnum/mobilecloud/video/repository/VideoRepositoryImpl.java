@@ -0,0 +1,269 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.sql.DataSource;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The implementation of VideoRepositoryCustom. Spring Data looks for a class
+ * named after the repository interface with an "Impl" suffix and sends the
+ * calls for the custom methods to it.
+ * 
+ * Saving a large batch one video at a time with save() would start a new
+ * transaction (and a new commit) for every video. Instead, the whole batch
+ * is saved in one transaction. Every batchSize videos, the pending inserts
+ * are flushed to the database, which lets Hibernate send them as a JDBC
+ * batch, and the persistence context is cleared so that it does not keep
+ * growing with every video in the batch.
+ * 
+ * Reading every video works the same way in reverse: the results are
+ * scrolled through with a forward-only cursor and the persistence context
+ * is cleared every batchSize videos.
+ * 
+ * In dedupe mode ("video.dedupe=true" in application.properties), a unique
+ * index is added on the columns that Video.equals() compares, so that the
+ * database itself refuses a second copy of a video, even if two copies are
+ * being saved at the same time. The index isn't declared on the Video
+ * entity because it must only exist when dedupe mode is on.
+ * 
+ * Saving a batch in dedupe mode looks up each group of batchSize videos
+ * with one query before persisting the group. Looking each video up on
+ * its own would make Hibernate flush the pending inserts before every
+ * lookup, so the inserts would go one at a time instead of in batches.
+ * 
+ * Searching titles ranks the matches in the database, with one grouped
+ * lookup on the video_title_term index for each word of the search (see
+ * TitleTerm), and then loads just the videos on the requested page.
+ * 
+ * @author jules
+ *
+ */
+public class VideoRepositoryImpl implements VideoRepositoryCustom {
+
+	// Words beyond this many are ignored, so that a search can't build an
+	// arbitrarily large query
+	private static final int MAX_SEARCH_WORDS = 8;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// Flush as often as Hibernate is configured to batch statements (see
+	// application.properties) so that each flush fills exactly one batch
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int batchSize = 50;
+
+	@Value("${video.dedupe:false}")
+	private boolean dedupe;
+
+	@Autowired
+	private DataSource dataSource;
+
+	// The schema has already been created by the time that Spring gets
+	// here, because injecting the EntityManager needed the
+	// EntityManagerFactory. If the table already has duplicates (i.e.,
+	// dedupe mode was off when they were added), creating the index fails
+	// and so does startup.
+	@PostConstruct
+	public void createIdentityIndex() {
+		if (dedupe) {
+			new JdbcTemplate(dataSource).execute(
+					"create unique index if not exists video_identity on video (name, url, duration)");
+		}
+	}
+
+	@Override
+	@Transactional
+	public int saveInBatches(Iterator<Video> videos) {
+		int saved = 0;
+		while (videos.hasNext()) {
+			entityManager.persist(videos.next());
+			saved++;
+			if (saved % batchSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return saved;
+	}
+
+	@Override
+	@Transactional
+	public int saveNewInBatches(Iterator<Video> videos) {
+		int saved = 0;
+		List<Video> group = new ArrayList<Video>(batchSize);
+		while (videos.hasNext()) {
+			group.add(videos.next());
+			if (group.size() == batchSize || !videos.hasNext()) {
+				saved += saveNew(group);
+				group.clear();
+			}
+		}
+		return saved;
+	}
+
+	// The earlier groups have already been flushed, so the lookup sees them
+	// and nothing is pending that it would have to flush first
+	private int saveNew(List<Video> group) {
+		// Video.equals() compares name, url and duration, so the set keeps
+		// the first copy of each video in the group
+		Set<Video> fresh = new LinkedHashSet<Video>(group);
+		Set<Video> saved = findSaved(fresh);
+		int persisted = 0;
+		for (Video v : fresh) {
+			if (!saved.contains(v)) {
+				entityManager.persist(v);
+				persisted++;
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return persisted;
+	}
+
+	// Finds which of the videos are already saved with one query. The
+	// names narrow the rows down using the video_identity index, which
+	// starts with the name, and the url and duration are compared by
+	// Video.equals() rather than in a long OR of conditions in the query.
+	// Only the three columns are read, so no entities are loaded.
+	private Set<Video> findSaved(Collection<Video> videos) {
+		Set<String> names = new HashSet<String>();
+		boolean unnamed = false;
+		for (Video v : videos) {
+			if (v.getName() == null) {
+				unnamed = true;
+			} else {
+				names.add(v.getName());
+			}
+		}
+		Set<Video> saved = new HashSet<Video>();
+		if (names.isEmpty() && !unnamed) {
+			return saved;
+		}
+		TypedQuery<Object[]> query = entityManager.createQuery(
+				"select v.name, v.url, v.duration from Video v where "
+						+ (names.isEmpty() ? "" : "v.name in :names")
+						+ (names.isEmpty() || !unnamed ? "" : " or ")
+						+ (unnamed ? "v.name is null" : ""), Object[].class);
+		if (!names.isEmpty()) {
+			query.setParameter("names", names);
+		}
+		for (Object[] row : query.getResultList()) {
+			saved.add(new Video((String) row[0], (String) row[1], ((Number) row[2]).longValue()));
+		}
+		return saved;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public int forEachVideo(VideoCallback callback) throws IOException {
+		// JPA has no way to scroll through results, so we use the
+		// Hibernate Session underneath the EntityManager
+		Session session = entityManager.unwrap(Session.class);
+		ScrollableResults results = session.createQuery("from Video v order by v.id")
+				.setReadOnly(true)
+				.setFetchSize(batchSize)
+				.setCacheMode(CacheMode.IGNORE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		int handled = 0;
+		try {
+			while (results.next()) {
+				callback.handle((Video) results.get(0));
+				handled++;
+				if (handled % batchSize == 0) {
+					session.clear();
+				}
+			}
+		} finally {
+			results.close();
+		}
+		return handled;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<Video> searchTitles(String search, int offset, int limit) {
+		Set<String> words = new LinkedHashSet<String>(TitleTerm.words(search));
+		if (words.isEmpty()) {
+			return new ArrayList<Video>();
+		}
+		List<String> terms = new ArrayList<String>(words);
+		if (terms.size() > MAX_SEARCH_WORDS) {
+			terms = terms.subList(0, MAX_SEARCH_WORDS);
+		}
+
+		// Each part of the union finds the videos that match one word, with
+		// the best score that any of their title's words gets for it. A
+		// video that matches every word shows up once in every part. The
+		// words only contain letters and digits (see TitleTerm.words()), so
+		// there is nothing in them that LIKE would treat specially.
+		StringBuilder sql = new StringBuilder("select video_id from (");
+		for (int i = 0; i < terms.size(); i++) {
+			if (i > 0) {
+				sql.append(" union all ");
+			}
+			sql.append("select video_id, max(case when word_start and suffix = ?").append(2 * i + 1)
+					.append(" then 3 when word_start then 2 else 1 end) score")
+					.append(" from video_title_term where suffix like ?").append(2 * i + 2)
+					.append(" group by video_id");
+		}
+		sql.append(") m group by video_id having count(*) = ").append(terms.size())
+				.append(" order by sum(score) desc, video_id")
+				.append(" limit ").append(limit).append(" offset ").append(offset);
+
+		Query query = entityManager.createNativeQuery(sql.toString());
+		for (int i = 0; i < terms.size(); i++) {
+			query.setParameter(2 * i + 1, terms.get(i));
+			query.setParameter(2 * i + 2, terms.get(i) + "%");
+		}
+		List<Long> ids = new ArrayList<Long>();
+		for (Object id : query.getResultList()) {
+			ids.add(((Number) id).longValue());
+		}
+		if (ids.isEmpty()) {
+			return new ArrayList<Video>();
+		}
+
+		// Load the page of videos and put them back in ranked order
+		Map<Long, Video> loaded = new HashMap<Long, Video>();
+		for (Video v : entityManager
+				.createQuery("select v from Video v where v.id in :ids", Video.class)
+				.setParameter("ids", ids)
+				.getResultList()) {
+			loaded.put(v.getId(), v);
+		}
+		List<Video> ranked = new ArrayList<Video>(ids.size());
+		for (Long id : ids) {
+			Video v = loaded.get(id);
+			if (v != null) {
+				ranked.add(v);
+			}
+		}
+		return ranked;
+	}
+
+}
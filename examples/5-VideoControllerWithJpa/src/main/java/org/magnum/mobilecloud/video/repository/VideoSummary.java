@@ -0,0 +1,54 @@
+package org.magnum.mobilecloud.video.repository;
+
+/**
+ * The parts of a Video that a list screen shows: its id, title and
+ * duration, but not its url.
+ *
+ * VideoRepository builds these straight from the query results (see
+ * findAllSummaries()), so no Video entities are created or managed by
+ * Hibernate, only the three columns are read, and less JSON is sent to
+ * the client.
+ *
+ * @author jules
+ *
+ */
+public class VideoSummary {
+
+	private long id;
+	private String name;
+	private long duration;
+
+	public VideoSummary() {
+	}
+
+	public VideoSummary(long id, String name, long duration) {
+		this.id = id;
+		this.name = name;
+		this.duration = duration;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+}
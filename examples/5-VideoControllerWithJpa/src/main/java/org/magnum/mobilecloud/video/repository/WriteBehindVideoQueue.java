@@ -0,0 +1,293 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Saves videos in the background, many to a transaction, so that a burst
+ * of adds isn't held back by the time it takes to commit each one on its
+ * own (see VideoSvc.addVideo() and "video.writebehind" in
+ * application.properties).
+ *
+ * add() puts the video on a bounded queue and returns a future. A single
+ * flusher thread takes the videos off the queue and saves them with
+ * VideoRepository.saveInBatches(). It saves a batch as soon as it has
+ * batchSize videos, or when windowMillis have passed since it took the
+ * first one, whichever comes first.
+ *
+ * The future only succeeds once the transaction that saved the video has
+ * committed, so a video whose future succeeded is in the database even if
+ * the application dies right after. A video whose future hasn't finished
+ * may or may not have been saved. A video whose future failed was not.
+ *
+ * If a batch fails, its videos are saved again one at a time, so that one
+ * bad video (e.g., a duplicate in dedupe mode) only fails its own future.
+ * Anything else that goes wrong while a batch is saved, even an Error,
+ * fails that batch's futures and the flusher carries on with the next one.
+ * Every video that add() accepts has its future finished one way or
+ * another, so no caller is left waiting forever.
+ *
+ * When the queue is full, add() waits up to offerTimeoutMillis for room
+ * and then throws a WriteBehindRejectedException, which Spring turns into
+ * a 503 Service Unavailable response. Clients are told to slow down rather
+ * than the queue growing until the heap runs out.
+ *
+ * @author jules
+ *
+ */
+@Component
+public class WriteBehindVideoQueue {
+
+	private static final Log log = LogFactory.getLog(WriteBehindVideoQueue.class);
+
+	/**
+	 * Thrown by add() when the queue stays full, or has been shut down.
+	 * Spring turns it into a 503 Service Unavailable response.
+	 */
+	@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Too many videos waiting to be saved")
+	public static class WriteBehindRejectedException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public WriteBehindRejectedException(String message) {
+			super(message);
+		}
+	}
+
+	// A video that is waiting to be saved and the future for its caller
+	private static class Pending {
+		final Video video;
+		final SettableFuture<Video> saved = SettableFuture.create();
+
+		Pending(Video video) {
+			this.video = video;
+		}
+	}
+
+	private static final Function<Pending, Video> TO_VIDEO = new Function<Pending, Video>() {
+		@Override
+		public Video apply(Pending p) {
+			return p.video;
+		}
+	};
+
+	private final VideoRepository videos;
+
+	private final BlockingQueue<Pending> queue;
+
+	private final int batchSize;
+
+	private final long windowMillis;
+
+	private final long offerTimeoutMillis;
+
+	private Thread flusher;
+
+	private volatile boolean accepting = true;
+
+	private volatile boolean crashed;
+
+	@Autowired
+	public WriteBehindVideoQueue(VideoRepository videos,
+			@Value("${video.writebehind.capacity:10000}") int capacity,
+			@Value("${video.writebehind.batch:50}") int batchSize,
+			@Value("${video.writebehind.window:5}") long windowMillis,
+			@Value("${video.writebehind.offer.timeout:100}") long offerTimeoutMillis) {
+		this.videos = videos;
+		this.queue = new ArrayBlockingQueue<Pending>(capacity);
+		this.batchSize = batchSize;
+		this.windowMillis = windowMillis;
+		this.offerTimeoutMillis = offerTimeoutMillis;
+	}
+
+	/**
+	 * Queues the video to be saved.
+	 *
+	 * @param video
+	 * @return a future that succeeds, with the saved video, once the video
+	 *         has been committed to the database, or fails with the reason
+	 *         that it couldn't be saved
+	 * @throws WriteBehindRejectedException if there is no room in the queue
+	 */
+	public ListenableFuture<Video> add(Video video) {
+		if (!accepting) {
+			throw new WriteBehindRejectedException("The write-behind queue has been shut down");
+		}
+		startFlusher();
+		Pending p = new Pending(video);
+		boolean queued;
+		try {
+			queued = queue.offer(p, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			queued = false;
+		}
+		if (!queued) {
+			throw new WriteBehindRejectedException("The write-behind queue is full");
+		}
+		// If shutdown() started while we were queueing, the flusher and
+		// failQueued() may both be done already. Take the video back; if
+		// it's gone, one of them has it and will finish its future.
+		if (!accepting && queue.remove(p)) {
+			throw new WriteBehindRejectedException("The write-behind queue has been shut down");
+		}
+		return p.saved;
+	}
+
+	/**
+	 * The number of videos that are waiting to be saved.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Stops taking new videos and waits until every queued video has been
+	 * saved. Called by Spring when the application stops.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		accepting = false;
+		Thread f = flusherThread();
+		if (f != null) {
+			f.join();
+		}
+		// An add() that raced with the shutdown may have queued a video
+		// after the flusher had already stopped
+		failQueued();
+	}
+
+	/**
+	 * Stops right away, as if the application had died: the videos that
+	 * are still queued are not saved, and their futures fail. A batch that
+	 * is already being saved is allowed to finish, and its futures say
+	 * whether it was committed.
+	 */
+	public void shutdownNow() throws InterruptedException {
+		accepting = false;
+		crashed = true;
+		Thread f = flusherThread();
+		if (f != null) {
+			f.interrupt();
+			f.join();
+		}
+		failQueued();
+	}
+
+	private void failQueued() {
+		List<Pending> lost = new ArrayList<Pending>();
+		queue.drainTo(lost);
+		fail(lost, new WriteBehindRejectedException("The write-behind queue was shut down before the video was saved"));
+	}
+
+	private synchronized Thread flusherThread() {
+		return flusher;
+	}
+
+	private synchronized void startFlusher() {
+		// A flusher that died (which flush() tries hard to prevent) is
+		// replaced, so that the queue never stops moving
+		if (flusher == null || !flusher.isAlive()) {
+			flusher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, "video-write-behind");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+	}
+
+	private void flush() {
+		while (!crashed && (accepting || !queue.isEmpty())) {
+			List<Pending> batch = new ArrayList<Pending>(batchSize);
+			try {
+				Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+				while (batch.size() < batchSize) {
+					queue.drainTo(batch, batchSize - batch.size());
+					long left = deadline - System.nanoTime();
+					if (batch.size() >= batchSize || left <= 0) {
+						break;
+					}
+					Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				save(batch);
+			} catch (InterruptedException e) {
+				// shutdownNow(): the videos taken so far were never saved
+				fail(batch, new WriteBehindRejectedException(
+						"The write-behind queue was shut down before the video was saved"));
+				return;
+			} catch (Throwable t) {
+				// Fail whatever is left of the batch (the futures that are
+				// already finished stay as they are) and keep going
+				log.error("Saving a batch of " + batch.size() + " videos failed", t);
+				fail(batch, t);
+			}
+		}
+	}
+
+	private void save(List<Pending> batch) {
+		try {
+			videos.saveInBatches(Iterators.transform(batch.iterator(), TO_VIDEO));
+			for (Pending p : batch) {
+				p.saved.set(p.video);
+			}
+			return;
+		} catch (RuntimeException e) {
+			if (batch.size() == 1) {
+				batch.get(0).saved.setException(e);
+				return;
+			}
+			log.warn("Saving a batch of " + batch.size() + " videos failed, saving them one at a time", e);
+		}
+
+		for (Pending p : batch) {
+			// The failed transaction may have given the video an id that
+			// was never committed. Clear it so that it is inserted as a
+			// new video rather than merged.
+			p.video.setId(0);
+			try {
+				p.saved.set(videos.save(p.video));
+			} catch (RuntimeException e) {
+				p.saved.setException(e);
+			}
+		}
+	}
+
+	private static void fail(List<Pending> pending, Throwable t) {
+		for (Pending p : pending) {
+			p.saved.setException(t);
+		}
+	}
+
+}
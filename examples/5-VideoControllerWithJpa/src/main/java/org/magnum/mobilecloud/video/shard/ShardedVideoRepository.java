@@ -0,0 +1,319 @@
+package org.magnum.mobilecloud.video.shard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A VideoRepository-like CrudRepository that spreads the videos over
+ * several separate databases ("shards"), so that no single database has
+ * to hold, or answer every query for, all of them.
+ *
+ * Each video lives on the shard picked by hashing its id, so a lookup,
+ * save or delete by id goes to exactly one shard. findAll() and
+ * findByName() can't know which shards have the matching videos, so they
+ * ask every shard at the same time on the executor and merge the answers
+ * in id order.
+ *
+ * Ids have to be known before a video is saved, so they are handed out
+ * here, in blocks of Video.ID_ALLOCATION_SIZE taken from the
+ * video_id_seq sequence on the first shard.
+ *
+ * The shards are used with plain JDBC rather than JPA, which would need an
+ * EntityManagerFactory per shard. Only the columns of the video table are
+ * kept, so the title search index (see TitleTerm) is not, and the queries
+ * are written for H2.
+ *
+ * @author jules
+ *
+ */
+public class ShardedVideoRepository implements CrudRepository<Video, Long> {
+
+	private static final HashFunction HASH = Hashing.murmur3_32();
+
+	private static final RowMapper<Video> VIDEO = new RowMapper<Video>() {
+		@Override
+		public Video mapRow(ResultSet rs, int row) throws SQLException {
+			Video v = new Video(rs.getString("name"), rs.getString("url"), rs.getLong("duration"));
+			v.setId(rs.getLong("id"));
+			return v;
+		}
+	};
+
+	private static final Comparator<Video> BY_ID = new Comparator<Video>() {
+		@Override
+		public int compare(Video a, Video b) {
+			return Long.compare(a.getId(), b.getId());
+		}
+	};
+
+	private static final String COLUMNS = "id, name, url, duration";
+
+	private final List<JdbcTemplate> shards = new ArrayList<JdbcTemplate>();
+
+	private final ExecutorService executor;
+
+	private long nextId;
+
+	private long lastId = -1;
+
+	/**
+	 * Creates the video table on every shard if it isn't there yet.
+	 *
+	 * @param shards the databases, in a fixed order. A video's shard
+	 *        depends on the number of shards and on where each one is in
+	 *        the list, so they can't be added or reordered once videos
+	 *        have been saved.
+	 * @param executor runs the queries that go to every shard
+	 */
+	public ShardedVideoRepository(List<DataSource> shards, ExecutorService executor) {
+		for (DataSource shard : shards) {
+			JdbcTemplate jdbc = new JdbcTemplate(shard);
+			jdbc.execute("create table if not exists video "
+					+ "(id bigint primary key, name varchar(255), url varchar(255), duration bigint not null)");
+			jdbc.execute("create index if not exists video_name_id on video (name, id)");
+			this.shards.add(jdbc);
+		}
+		this.shards.get(0).execute("create sequence if not exists video_id_seq increment by "
+				+ Video.ID_ALLOCATION_SIZE);
+		this.executor = executor;
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * The shard that holds (or will hold) the video with this id.
+	 *
+	 * @param id
+	 * @return
+	 */
+	public int shardOf(long id) {
+		return Hashing.consistentHash(HASH.hashLong(id), shards.size());
+	}
+
+	@Override
+	public <S extends Video> S save(S video) {
+		assignId(video);
+		shards.get(shardOf(video.getId())).update(
+				"merge into video (" + COLUMNS + ") key (id) values (?, ?, ?, ?)", values(video));
+		return video;
+	}
+
+	@Override
+	public <S extends Video> Iterable<S> save(Iterable<S> videos) {
+		final List<List<Object[]>> rows = perShard();
+		List<S> saved = new ArrayList<S>();
+		for (S video : videos) {
+			assignId(video);
+			rows.get(shardOf(video.getId())).add(values(video));
+			saved.add(video);
+		}
+		onEveryShard(new ShardTask<int[]>() {
+			@Override
+			public int[] run(JdbcTemplate jdbc, int shard) {
+				if (rows.get(shard).isEmpty()) {
+					return new int[0];
+				}
+				return jdbc.batchUpdate("merge into video (" + COLUMNS + ") key (id) values (?, ?, ?, ?)",
+						rows.get(shard));
+			}
+		});
+		return saved;
+	}
+
+	@Override
+	public Video findOne(Long id) {
+		List<Video> found = shards.get(shardOf(id)).query(
+				"select " + COLUMNS + " from video where id = ?", VIDEO, id);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	@Override
+	public boolean exists(Long id) {
+		return findOne(id) != null;
+	}
+
+	@Override
+	public Iterable<Video> findAll() {
+		return merge(onEveryShard(new ShardTask<List<Video>>() {
+			@Override
+			public List<Video> run(JdbcTemplate jdbc, int shard) {
+				return jdbc.query("select " + COLUMNS + " from video", VIDEO);
+			}
+		}));
+	}
+
+	@Override
+	public Iterable<Video> findAll(Iterable<Long> ids) {
+		final List<List<Long>> idsByShard = perShard();
+		for (Long id : ids) {
+			idsByShard.get(shardOf(id)).add(id);
+		}
+		return merge(onEveryShard(new ShardTask<List<Video>>() {
+			@Override
+			public List<Video> run(JdbcTemplate jdbc, int shard) {
+				List<Video> found = new ArrayList<Video>();
+				for (List<Long> chunk : Lists.partition(idsByShard.get(shard), 500)) {
+					found.addAll(jdbc.query("select " + COLUMNS + " from video where id in ("
+							+ Joiner.on(',').join(chunk) + ")", VIDEO));
+				}
+				return found;
+			}
+		}));
+	}
+
+	/**
+	 * Finds the videos with this title (e.g., Video.name) on every shard,
+	 * in id order.
+	 *
+	 * @param title
+	 * @return
+	 */
+	public List<Video> findByName(final String title) {
+		return merge(onEveryShard(new ShardTask<List<Video>>() {
+			@Override
+			public List<Video> run(JdbcTemplate jdbc, int shard) {
+				return jdbc.query("select " + COLUMNS + " from video where name = ?", VIDEO, title);
+			}
+		}));
+	}
+
+	@Override
+	public long count() {
+		long count = 0;
+		for (Long c : onEveryShard(new ShardTask<Long>() {
+			@Override
+			public Long run(JdbcTemplate jdbc, int shard) {
+				return jdbc.queryForObject("select count(*) from video", Long.class);
+			}
+		})) {
+			count += c;
+		}
+		return count;
+	}
+
+	@Override
+	public void delete(Long id) {
+		shards.get(shardOf(id)).update("delete from video where id = ?", id);
+	}
+
+	@Override
+	public void delete(Video video) {
+		delete(video.getId());
+	}
+
+	@Override
+	public void delete(Iterable<? extends Video> videos) {
+		for (Video v : videos) {
+			delete(v.getId());
+		}
+	}
+
+	@Override
+	public void deleteAll() {
+		onEveryShard(new ShardTask<Integer>() {
+			@Override
+			public Integer run(JdbcTemplate jdbc, int shard) {
+				return jdbc.update("delete from video");
+			}
+		});
+	}
+
+	// A video that has never been saved has an id of 0, like it does
+	// with JPA
+	private synchronized void assignId(Video video) {
+		if (video.getId() != 0) {
+			return;
+		}
+		if (nextId > lastId) {
+			nextId = shards.get(0).queryForObject("select next value for video_id_seq", Long.class);
+			lastId = nextId + Video.ID_ALLOCATION_SIZE - 1;
+		}
+		video.setId(nextId++);
+	}
+
+	private static Object[] values(Video v) {
+		return new Object[] { v.getId(), v.getName(), v.getUrl(), v.getDuration() };
+	}
+
+	private <T> List<List<T>> perShard() {
+		List<List<T>> lists = new ArrayList<List<T>>();
+		for (int i = 0; i < shards.size(); i++) {
+			lists.add(new ArrayList<T>());
+		}
+		return lists;
+	}
+
+	private static List<Video> merge(List<List<Video>> results) {
+		List<Video> all = new ArrayList<Video>();
+		for (List<Video> r : results) {
+			all.addAll(r);
+		}
+		Collections.sort(all, BY_ID);
+		return all;
+	}
+
+	private interface ShardTask<T> {
+		T run(JdbcTemplate jdbc, int shard);
+	}
+
+	// Runs the task against every shard at once and returns the results
+	// in shard order. With a single shard there is nothing to wait for in
+	// parallel, so the task just runs on the calling thread.
+	private <T> List<T> onEveryShard(final ShardTask<T> task) {
+		List<T> results = new ArrayList<T>();
+		if (shards.size() == 1) {
+			results.add(task.run(shards.get(0), 0));
+			return results;
+		}
+
+		List<Callable<T>> calls = new ArrayList<Callable<T>>();
+		for (int i = 0; i < shards.size(); i++) {
+			final int shard = i;
+			calls.add(new Callable<T>() {
+				@Override
+				public T call() {
+					return task.run(shards.get(shard), shard);
+				}
+			});
+		}
+
+		try {
+			for (Future<T> f : executor.invokeAll(calls)) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessResourceFailureException("Interrupted while waiting for the shards", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new DataAccessResourceFailureException("A shard failed", e.getCause());
+		}
+		return results;
+	}
+
+}
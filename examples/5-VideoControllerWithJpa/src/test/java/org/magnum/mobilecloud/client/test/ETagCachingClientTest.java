@@ -0,0 +1,98 @@
+package org.magnum.mobilecloud.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.client.ETagCachingClient;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+/**
+ * 
+ * This test puts an ETagCachingClient in front of a fake Client that plays
+ * the part of the VideoSvc, which sends the list as JSON or as Smile with
+ * a different ETag for each. It checks that a request that accepts Smile
+ * is never answered from the JSON that was cached for the same URL, and
+ * the other way around.
+ * 
+ * @author jules
+ *
+ */
+public class ETagCachingClientTest {
+
+	private static final String URL = "http://localhost:8080" + VideoSvcApi.VIDEO_SVC_PATH;
+
+	// A fake service that answers 304 to any request whose ETag matches the
+	// representation that it accepts
+	private static class FakeVideoSvc implements Client {
+		private final List<String> ifNoneMatch = new ArrayList<String>();
+
+		@Override
+		public Response execute(Request request) throws IOException {
+			String sent = header(request, ETagCachingClient.IF_NONE_MATCH_HEADER);
+			ifNoneMatch.add(sent);
+
+			boolean smile = VideoSvcApi.SMILE_MEDIA_TYPE.equals(header(request, ETagCachingClient.ACCEPT_HEADER));
+			String etag = smile ? "\"v1-smile\"" : "\"v1\"";
+			List<Header> headers = Arrays.asList(new Header(ETagCachingClient.ETAG_HEADER, etag),
+					new Header("Vary", ETagCachingClient.ACCEPT_HEADER));
+			if (etag.equals(sent)) {
+				return new Response(request.getUrl(), 304, "Not Modified", headers, null);
+			}
+			return new Response(request.getUrl(), 200, "OK", headers,
+					new TypedByteArray(smile ? VideoSvcApi.SMILE_MEDIA_TYPE : "application/json",
+							(smile ? "smile" : "json").getBytes("UTF-8")));
+		}
+	}
+
+	private FakeVideoSvc service = new FakeVideoSvc();
+
+	private ETagCachingClient client = new ETagCachingClient(service);
+
+	@Test
+	public void testJsonAndSmileAreCachedSeparately() throws Exception {
+		assertEquals("json", get(null));
+		assertNull(service.ifNoneMatch.get(0));
+
+		// Same URL, but the cached JSON isn't what this request accepts
+		assertEquals("smile", get(VideoSvcApi.SMILE_MEDIA_TYPE));
+		assertNull(service.ifNoneMatch.get(1));
+
+		// Each one is revalidated with its own ETag
+		assertEquals("smile", get(VideoSvcApi.SMILE_MEDIA_TYPE));
+		assertEquals("\"v1-smile\"", service.ifNoneMatch.get(2));
+		assertEquals("json", get(null));
+		assertEquals("\"v1\"", service.ifNoneMatch.get(3));
+	}
+
+	private String get(String accept) throws IOException {
+		List<Header> headers = accept == null ? Collections.<Header> emptyList()
+				: Arrays.asList(new Header(ETagCachingClient.ACCEPT_HEADER, accept));
+		Response response = client.execute(new Request("GET", URL, headers, null));
+		assertEquals(200, response.getStatus());
+		return IOUtils.toString(response.getBody().in(), "UTF-8");
+	}
+
+	private static String header(Request request, String name) {
+		for (Header h : request.getHeaders()) {
+			if (h.getName().equalsIgnoreCase(name)) {
+				return h.getValue();
+			}
+		}
+		return null;
+	}
+
+}
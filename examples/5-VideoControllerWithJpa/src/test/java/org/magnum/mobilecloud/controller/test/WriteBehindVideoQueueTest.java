@@ -0,0 +1,179 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.WriteBehindVideoQueue;
+import org.magnum.mobilecloud.video.repository.WriteBehindVideoQueue.WriteBehindRejectedException;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ *
+ * This test runs the WriteBehindVideoQueue against a mock VideoRepository
+ * to check how it behaves when the queue fills up, when a batch can't be
+ * saved, and when it is shut down.
+ *
+ * @author jules
+ *
+ */
+public class WriteBehindVideoQueueTest {
+
+	@Mock
+	private VideoRepository videos;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		when(videos.save(any(Video.class))).then(returnsFirstArg());
+	}
+
+	@Test
+	public void testFullQueueRejects() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		when(videos.saveInBatches(any(Iterator.class))).then(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				// The database is stuck, so the queue backs up
+				release.await();
+				return 1;
+			}
+		});
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 2, 1, 0, 10);
+
+		List<Future<Video>> accepted = new ArrayList<Future<Video>>();
+		boolean rejected = false;
+		// One video in the stuck batch and two in the queue fit, the rest don't
+		for (int i = 0; i < 10 && !rejected; i++) {
+			try {
+				accepted.add(queue.add(TestData.randomVideo()));
+			} catch (WriteBehindRejectedException e) {
+				rejected = true;
+			}
+		}
+		assertTrue(rejected);
+		assertTrue(accepted.size() <= 3);
+
+		release.countDown();
+		for (Future<Video> f : accepted) {
+			f.get(10, TimeUnit.SECONDS);
+		}
+		queue.shutdown();
+	}
+
+	@Test
+	public void testFailedBatchIsRetriedOneAtATime() throws Exception {
+		Video good1 = TestData.randomVideo();
+		Video bad = TestData.randomVideo();
+		Video good2 = TestData.randomVideo();
+		when(videos.saveInBatches(any(Iterator.class)))
+				.thenThrow(new DataIntegrityViolationException("duplicate"));
+		doThrow(new DataIntegrityViolationException("duplicate")).when(videos).save(bad);
+
+		// The batch only goes once all three videos are in it
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 10, 3, 10000, 100);
+		Future<Video> f1 = queue.add(good1);
+		Future<Video> f2 = queue.add(bad);
+		Future<Video> f3 = queue.add(good2);
+
+		assertEquals(good1, f1.get(10, TimeUnit.SECONDS));
+		assertEquals(good2, f3.get(10, TimeUnit.SECONDS));
+		try {
+			f2.get(10, TimeUnit.SECONDS);
+			fail("The duplicate should not have been acknowledged");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+		}
+		queue.shutdown();
+	}
+
+	@Test
+	public void testFailedCommitIsNotAcknowledged() throws Exception {
+		when(videos.saveInBatches(any(Iterator.class)))
+				.thenThrow(new DataAccessResourceFailureException("database down"));
+		when(videos.save(any(Video.class)))
+				.thenThrow(new DataAccessResourceFailureException("database down"));
+
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 10, 2, 10000, 100);
+		List<Future<Video>> futures = new ArrayList<Future<Video>>();
+		futures.add(queue.add(TestData.randomVideo()));
+		futures.add(queue.add(TestData.randomVideo()));
+
+		for (Future<Video> f : futures) {
+			try {
+				f.get(10, TimeUnit.SECONDS);
+				fail("A video that was never committed was acknowledged");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof DataAccessResourceFailureException);
+			}
+		}
+		queue.shutdown();
+	}
+
+	@Test
+	public void testErrorFailsBatchAndFlusherCarriesOn() throws Exception {
+		when(videos.saveInBatches(any(Iterator.class)))
+				.thenThrow(new OutOfMemoryError("simulated"))
+				.thenReturn(1);
+
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 10, 1, 0, 100);
+		Future<Video> lost = queue.add(TestData.randomVideo());
+		try {
+			lost.get(10, TimeUnit.SECONDS);
+			fail("A video whose batch threw an Error was acknowledged");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof OutOfMemoryError);
+		}
+
+		// The flusher is still running, so the next video is saved
+		Video next = TestData.randomVideo();
+		assertEquals(next, queue.add(next).get(10, TimeUnit.SECONDS));
+		queue.shutdown();
+	}
+
+	@Test
+	public void testShutdownSavesQueuedVideos() throws Exception {
+		when(videos.saveInBatches(any(Iterator.class))).thenReturn(1);
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 100, 10, 50, 100);
+
+		List<Future<Video>> futures = new ArrayList<Future<Video>>();
+		for (int i = 0; i < 25; i++) {
+			futures.add(queue.add(TestData.randomVideo()));
+		}
+		queue.shutdown();
+
+		for (Future<Video> f : futures) {
+			assertTrue(f.isDone());
+			f.get();
+		}
+		try {
+			queue.add(TestData.randomVideo());
+			fail("A stopped queue should not take more videos");
+		} catch (WriteBehindRejectedException e) {
+			// expected
+		}
+	}
+
+}
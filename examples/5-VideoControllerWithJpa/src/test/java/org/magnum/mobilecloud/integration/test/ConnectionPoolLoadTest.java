@@ -0,0 +1,243 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.pool.InstrumentedDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test puts more and more load on the connection pool to show where
+ * it runs out of connections, and checks that the metrics published by
+ * InstrumentedDataSource show it happening.
+ *
+ * The "pool" profile (src/test/resources/application-pool.properties)
+ * gives the pool 4 connections and a 200ms timeout. Up to 4 clients, a
+ * client never waits for a connection. Past that, the clients queue up
+ * behind each other and the wait grows with every extra client, until it
+ * passes the timeout and getConnection() starts to fail.
+ *
+ * testLoadRamp() prints a table of the waits that it sees for each number
+ * of clients.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("pool")
+public class ConnectionPoolLoadTest {
+
+	// How long each client holds on to a connection
+	private static final long HOLD_MILLIS = 20;
+
+	private static final int ROUNDS = 10;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private MetricReader metrics;
+
+	@Value("${video.pool.max}")
+	private int max;
+
+	@Value("${video.pool.timeout}")
+	private long timeout;
+
+	private InstrumentedDataSource pool;
+
+	@Before
+	public void setUp() {
+		pool = (InstrumentedDataSource) dataSource;
+	}
+
+	@Test
+	public void testFullPoolDoesNotWait() throws Exception {
+		final CountDownLatch allHolding = new CountDownLatch(max);
+		final CountDownLatch release = new CountDownLatch(1);
+		long timeouts = count("counter.datasource.primary.acquire.timeouts");
+
+		ExecutorService clients = Executors.newFixedThreadPool(max);
+		List<Future<Long>> waits = new ArrayList<Future<Long>>();
+		for (int i = 0; i < max; i++) {
+			waits.add(clients.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					long start = System.nanoTime();
+					Connection c = pool.getConnection();
+					long waited = System.nanoTime() - start;
+					try {
+						allHolding.countDown();
+						release.await();
+					} finally {
+						c.close();
+					}
+					return TimeUnit.NANOSECONDS.toMillis(waited);
+				}
+			}));
+		}
+
+		assertTrue(allHolding.await(10, TimeUnit.SECONDS));
+		assertEquals(max, pool.getPool().getActive());
+		release.countDown();
+
+		for (Future<Long> wait : waits) {
+			assertTrue(wait.get() < timeout);
+		}
+		clients.shutdown();
+		assertEquals(timeouts, count("counter.datasource.primary.acquire.timeouts"));
+	}
+
+	@Test
+	public void testOneClientTooManyTimesOut() throws Exception {
+		List<Connection> held = new ArrayList<Connection>();
+		long timeouts = count("counter.datasource.primary.acquire.timeouts");
+		try {
+			for (int i = 0; i < max; i++) {
+				held.add(pool.getConnection());
+			}
+			assertEquals(max, count("gauge.datasource.primary.active"));
+			assertEquals(0, count("gauge.datasource.primary.idle"));
+
+			long start = System.nanoTime();
+			try {
+				pool.getConnection().close();
+				fail("The pool should have been exhausted");
+			} catch (PoolExhaustedException e) {
+				// The client waited out the whole timeout first
+				assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= timeout - 10);
+			}
+			assertEquals(timeouts + 1, count("counter.datasource.primary.acquire.timeouts"));
+		} finally {
+			for (Connection c : held) {
+				c.close();
+			}
+		}
+		assertEquals(0, count("gauge.datasource.primary.active"));
+		assertEquals(max, count("gauge.datasource.primary.idle"));
+	}
+
+	@Test
+	public void testLoadRamp() throws Exception {
+		System.out.println("clients  mean wait (ms)  max wait (ms)  timeouts");
+		for (int clients = 1; clients <= 3 * max; clients++) {
+			Load load = run(clients);
+			System.out.println(String.format("%7d  %14.1f  %13d  %8d",
+					clients, load.meanWait(), load.maxWait, load.timeouts));
+
+			assertEquals(0, load.timeouts);
+			if (clients <= max) {
+				// Each client has a connection of its own
+				assertTrue(load.meanWait() < HOLD_MILLIS / 4.0);
+			} else if (clients >= 2 * max) {
+				// Every client has to wait for another one to give its
+				// connection back
+				assertTrue(load.meanWait() > HOLD_MILLIS / 2.0);
+			}
+		}
+	}
+
+	private Load run(int clients) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		List<Future<Load>> results = new ArrayList<Future<Load>>();
+		for (int i = 0; i < clients; i++) {
+			results.add(executor.submit(new Callable<Load>() {
+				@Override
+				public Load call() throws Exception {
+					Load load = new Load();
+					start.await();
+					for (int r = 0; r < ROUNDS; r++) {
+						long begin = System.nanoTime();
+						Connection c;
+						try {
+							c = pool.getConnection();
+						} catch (PoolExhaustedException e) {
+							load.timeouts++;
+							continue;
+						}
+						try {
+							load.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+							c.createStatement().executeQuery("select count(*) from video").close();
+							Thread.sleep(HOLD_MILLIS);
+						} finally {
+							c.close();
+						}
+					}
+					return load;
+				}
+			}));
+		}
+		start.countDown();
+
+		Load total = new Load();
+		for (Future<Load> result : results) {
+			total.add(result.get());
+		}
+		executor.shutdown();
+		return total;
+	}
+
+	private long count(String name) {
+		Metric<?> metric = metrics.findOne(name);
+		return (metric != null) ? metric.getValue().longValue() : 0;
+	}
+
+	private static class Load {
+
+		long acquired;
+		long totalWait;
+		long maxWait;
+		long timeouts;
+
+		void add(long wait) {
+			acquired++;
+			totalWait += wait;
+			maxWait = Math.max(maxWait, wait);
+		}
+
+		void add(Load other) {
+			acquired += other.acquired;
+			totalWait += other.totalWait;
+			maxWait = Math.max(maxWait, other.maxWait);
+			timeouts += other.timeouts;
+		}
+
+		double meanWait() {
+			return (acquired > 0) ? (double) totalWait / acquired : 0;
+		}
+	}
+
+}
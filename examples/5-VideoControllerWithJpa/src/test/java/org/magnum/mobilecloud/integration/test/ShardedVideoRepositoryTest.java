@@ -0,0 +1,143 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.shard.ShardedVideoRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * This test spreads videos over four in-memory H2 databases with a
+ * ShardedVideoRepository and checks that each video is stored on exactly
+ * the shard that its id hashes to, and that the queries that go to every
+ * shard find the videos wherever they are.
+ *
+ * @author jules
+ *
+ */
+public class ShardedVideoRepositoryTest {
+
+	private static final int SHARDS = 4;
+
+	private List<JdbcTemplate> shards;
+
+	private ExecutorService executor;
+
+	private ShardedVideoRepository videos;
+
+	@Before
+	public void setUp() {
+		String run = UUID.randomUUID().toString();
+		List<DataSource> dataSources = new ArrayList<DataSource>();
+		shards = new ArrayList<JdbcTemplate>();
+		for (int i = 0; i < SHARDS; i++) {
+			DataSource ds = new DriverManagerDataSource(
+					"jdbc:h2:mem:shard-" + run + "-" + i + ";DB_CLOSE_DELAY=-1", "sa", "");
+			dataSources.add(ds);
+			shards.add(new JdbcTemplate(ds));
+		}
+		executor = Executors.newFixedThreadPool(SHARDS);
+		videos = new ShardedVideoRepository(dataSources, executor);
+	}
+
+	@After
+	public void tearDown() {
+		for (JdbcTemplate shard : shards) {
+			shard.execute("shutdown");
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void testVideoIsStoredOnItsShard() {
+		Video video = videos.save(TestData.randomVideo());
+		assertTrue(video.getId() > 0);
+
+		int home = videos.shardOf(video.getId());
+		for (int i = 0; i < SHARDS; i++) {
+			long rows = shards.get(i).queryForObject(
+					"select count(*) from video where id = ?", Long.class, video.getId());
+			assertEquals((i == home) ? 1 : 0, rows);
+		}
+
+		assertEquals(video, videos.findOne(video.getId()));
+		assertTrue(videos.exists(video.getId()));
+	}
+
+	@Test
+	public void testScatterGather() {
+		List<Video> saved = Lists.newArrayList(videos.save(randomVideos(200)));
+
+		// Every shard gets a share of the videos
+		for (JdbcTemplate shard : shards) {
+			assertTrue(shard.queryForObject("select count(*) from video", Long.class) > 0);
+		}
+		assertEquals(200, videos.count());
+
+		List<Video> all = Lists.newArrayList(videos.findAll());
+		assertEquals(saved, all);
+		for (int i = 1; i < all.size(); i++) {
+			assertTrue(all.get(i - 1).getId() < all.get(i).getId());
+		}
+
+		List<Long> some = Arrays.asList(saved.get(3).getId(), saved.get(42).getId(), saved.get(150).getId());
+		assertEquals(Arrays.asList(saved.get(3), saved.get(42), saved.get(150)),
+				Lists.newArrayList(videos.findAll(some)));
+	}
+
+	@Test
+	public void testFindByNameAcrossShards() {
+		String title = "Video-" + UUID.randomUUID();
+		List<Video> sameTitle = new ArrayList<Video>();
+		for (int i = 0; i < 20; i++) {
+			sameTitle.add(new Video(title, "http://coursera.org/some/video-" + i, i));
+		}
+		videos.save(sameTitle);
+		videos.save(randomVideos(50));
+
+		List<Video> found = videos.findByName(title);
+		assertEquals(sameTitle, found);
+	}
+
+	@Test
+	public void testDelete() {
+		List<Video> saved = Lists.newArrayList(videos.save(randomVideos(10)));
+
+		videos.delete(saved.get(0));
+		assertNull(videos.findOne(saved.get(0).getId()));
+		assertFalse(videos.exists(saved.get(0).getId()));
+		assertEquals(9, videos.count());
+
+		videos.deleteAll();
+		assertEquals(0, videos.count());
+	}
+
+	private static List<Video> randomVideos(int n) {
+		List<Video> list = new ArrayList<Video>();
+		for (int i = 0; i < n; i++) {
+			list.add(TestData.randomVideo());
+		}
+		return list;
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoCacheMetrics;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ * 
+ * This test checks that the second-level cache and the query cache set up
+ * in application.properties and ehcache.xml are used: repeated searches and
+ * lookups by id are answered from the caches, a save makes the cached
+ * search results go away so that a search finds the new video, and the
+ * hit and miss counts show up in the metrics.
+ * 
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoCacheTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private VideoCacheMetrics metrics;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics stats;
+
+	@Before
+	public void setUp() {
+		stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Test
+	public void testRepeatedSearchUsesQueryCache() {
+		String title = "Video-" + UUID.randomUUID();
+		videoService.addVideo(new Video(title, "http://coursera.org/some/video-1", 1));
+
+		videoService.findByTitle(title);
+		long hits = stats.getQueryCacheHitCount();
+		long statements = stats.getPrepareStatementCount();
+
+		Collection<Video> found = videoService.findByTitle(title);
+
+		assertEquals(1, found.size());
+		assertEquals(hits + 1, stats.getQueryCacheHitCount());
+		// The ids came from the query cache and the video from the
+		// second-level cache, so nothing was sent to the database
+		assertEquals(statements, stats.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testSaveInvalidatesCachedSearch() {
+		String title = "Video-" + UUID.randomUUID();
+		videoService.addVideo(new Video(title, "http://coursera.org/some/video-1", 1));
+		assertEquals(1, videoService.findByTitle(title).size());
+
+		videoService.addVideo(new Video(title, "http://coursera.org/some/video-2", 2));
+		long misses = stats.getQueryCacheMissCount();
+
+		assertEquals(2, videoService.findByTitle(title).size());
+		assertEquals(misses + 1, stats.getQueryCacheMissCount());
+	}
+
+	@Test
+	public void testFindOneUsesSecondLevelCache() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		// Make sure that the video is in the cache, whether or not
+		// Hibernate put it there when it was saved
+		videos.findOne(video.getId());
+		// A READ_WRITE cache entry can only be read by transactions that
+		// start after the one that put it there, and Hibernate's
+		// timestamps only change once a millisecond
+		Thread.sleep(10);
+		long hits = stats.getSecondLevelCacheHitCount();
+		long statements = stats.getPrepareStatementCount();
+
+		Video loaded = videos.findOne(video.getId());
+
+		assertEquals(video, loaded);
+		assertEquals(hits + 1, stats.getSecondLevelCacheHitCount());
+		assertEquals(statements, stats.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testMetricsIncludeCacheCounts() {
+		String title = "Video-" + UUID.randomUUID();
+		videoService.addVideo(new Video(title, "http://coursera.org/some/video-1", 1));
+		videoService.findByTitle(title);
+		videoService.findByTitle(title);
+
+		Map<String, Number> values = new HashMap<String, Number>();
+		for (Metric<?> m : metrics.metrics()) {
+			values.put(m.getName(), m.getValue());
+		}
+
+		assertTrue(values.get("hibernate.cache.query.hits").longValue() > 0);
+		assertTrue(values.get("hibernate.cache.query.misses").longValue() > 0);
+		assertTrue(values.get("hibernate.cache.video.size").longValue() > 0);
+		// The standard metrics are still there
+		assertTrue(values.containsKey("mem"));
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test checks that saving a list of videos with
+ * VideoRepository.save(Iterable) sends the inserts to the database in JDBC
+ * batches, which only works because the video ids come from a pooled
+ * sequence rather than an identity column.
+ *
+ * Hibernate's statistics count each statement that is prepared. A batch
+ * is prepared once however many videos are in it, and the sequence is
+ * only read once per Video.ID_ALLOCATION_SIZE videos.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoIdGenerationTest {
+
+	private static final int VIDEOS = 4 * Video.ID_ALLOCATION_SIZE;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	public void testBulkSaveIsBatched() {
+		Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		List<Video> batch = new ArrayList<Video>();
+		for (int i = 0; i < VIDEOS; i++) {
+			batch.add(TestData.randomVideo());
+		}
+
+		long statements = stats.getPrepareStatementCount();
+		Iterable<Video> saved = videos.save(batch);
+		long prepared = stats.getPrepareStatementCount() - statements;
+
+		// One statement per video would be VIDEOS statements, and twice
+		// that with an identity column. Allow for a sequence read and a
+		// batch of inserts per block of ids, plus one spare block because
+		// the sequence may be partway through a block already.
+		assertTrue("prepared " + prepared + " statements", prepared <= 2 * (VIDEOS / Video.ID_ALLOCATION_SIZE + 1));
+
+		Set<Long> ids = new HashSet<Long>();
+		for (Video v : saved) {
+			assertTrue(v.getId() > 0);
+			ids.add(v.getId());
+		}
+		assertEquals(VIDEOS, ids.size());
+	}
+
+}
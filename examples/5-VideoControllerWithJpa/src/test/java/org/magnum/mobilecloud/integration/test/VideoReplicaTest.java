@@ -0,0 +1,136 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.ReadYourWritesClient;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.replica.H2Replicator;
+import org.magnum.mobilecloud.video.replica.ReadYourWrites;
+import org.magnum.mobilecloud.video.replica.ReadYourWritesFilter;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ *
+ * This test checks that reads go to the replica once it has caught up
+ * with the client's writes, and to the primary until then.
+ *
+ * The "replica" profile (src/test/resources/application-replica.properties)
+ * gives the primary and the replica separate databases and only copies
+ * videos to the replica when the test calls H2Replicator.replicate(). A
+ * read that can't find a video that was just saved must have gone to the
+ * replica.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("replica")
+public class VideoReplicaTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private H2Replicator replicator;
+
+	@Autowired
+	private ReadYourWritesFilter readYourWritesFilter;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		ReadYourWrites.forget();
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService)
+				.addFilters(readYourWritesFilter).build();
+	}
+
+	@After
+	public void tearDown() {
+		ReadYourWrites.forget();
+	}
+
+	@Test
+	public void testReplicaIsBehindUntilReplicated() {
+		Video video = TestData.randomVideo();
+		videoService.addVideo(video);
+
+		// Act like a different client, one that hasn't written anything
+		ReadYourWrites.forget();
+		assertTrue(videoService.findByTitle(video.getName()).isEmpty());
+
+		replicator.replicate();
+
+		assertEquals(1, videoService.findByTitle(video.getName()).size());
+	}
+
+	@Test
+	public void testClientReadsItsOwnWrites() {
+		Video video = TestData.randomVideo();
+		videoService.addVideo(video);
+
+		// The replica doesn't have the video yet, so this read has to go
+		// to the primary
+		assertEquals(1, videoService.findByTitle(video.getName()).size());
+	}
+
+	@Test
+	public void testWrittenAtHeaderRoundTrip() throws Exception {
+		Video video = TestData.randomVideo();
+
+		MvcResult added = mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(video)))
+				.andExpect(status().isOk())
+				.andReturn();
+		String writtenAt = added.getResponse().getHeader(ReadYourWritesClient.WRITTEN_AT_HEADER);
+		assertTrue(Long.parseLong(writtenAt) > 0);
+
+		// Without the header, the request may be answered by the stale
+		// replica
+		mockMvc.perform(
+				get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+				.param(VideoSvcApi.TITLE_PARAMETER, video.getName()))
+				.andExpect(status().isOk())
+				.andExpect(content().string("[]"));
+
+		// With it, the request goes to the primary until the replica has
+		// caught up
+		MvcResult found = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+				.param(VideoSvcApi.TITLE_PARAMETER, video.getName())
+				.header(ReadYourWritesClient.WRITTEN_AT_HEADER, writtenAt))
+				.andExpect(status().isOk())
+				.andReturn();
+		assertTrue(found.getResponse().getContentAsString().contains(video.getName()));
+	}
+
+}
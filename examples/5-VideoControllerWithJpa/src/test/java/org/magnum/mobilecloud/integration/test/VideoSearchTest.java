@@ -0,0 +1,164 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.client.VideoPage;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test checks VideoSvc.searchTitles(): that it finds videos by whole
+ * words, the starts of words and the middles of words in their titles,
+ * ranks them in that order, only returns videos that match every word of
+ * the search, pages through the matches with cursors, and keeps finding
+ * videos by their titles after they have been saved again.
+ *
+ * Every test searches for a random word of its own, so that the videos
+ * that the other tests save don't get in the way.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoSearchTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	private String word;
+
+	@Before
+	public void setUp() {
+		word = "w" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+	}
+
+	@Test
+	public void testMatchesAreRanked() {
+		Video substring = add("Sunset x" + word + "y");
+		Video prefix = add("Beach " + word + "extra");
+		Video token = add("City-" + word);
+
+		List<Video> found = videoService.searchTitles(word, 10, null).getVideos();
+
+		assertEquals(Arrays.asList(token, prefix, substring), found);
+	}
+
+	@Test
+	public void testEveryWordMustMatch() {
+		Video both = add("Surfing " + word);
+		add("Skiing " + word);
+		add("Surfing Lessons");
+
+		List<Video> found = videoService.searchTitles("SURF " + word.toUpperCase(), 10, null).getVideos();
+
+		assertEquals(Arrays.asList(both), found);
+	}
+
+	@Test
+	public void testShortTermsMatchWordStarts() {
+		Video video = add(word + " Go");
+
+		assertEquals(Arrays.asList(video), videoService.searchTitles(word + " g", 10, null).getVideos());
+	}
+
+	@Test
+	public void testSearchPages() {
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < 5; i++) {
+			added.add(add("Lecture " + i + " " + word));
+		}
+
+		List<Video> found = new ArrayList<Video>();
+		String after = null;
+		int pages = 0;
+		do {
+			VideoPage page = videoService.searchTitles(word, 2, after);
+			assertTrue(page.getVideos().size() <= 2);
+			found.addAll(page.getVideos());
+			after = page.getNext();
+			pages++;
+		} while (after != null);
+
+		// Equal scores come back in the order that the videos were added
+		assertEquals(added, found);
+		assertEquals(3, pages);
+	}
+
+	// Saving a new copy of a video (e.g., one that Jackson made) with the
+	// same title keeps it in the index
+	@Test
+	public void testUpdatedVideosAreStillFound() {
+		Video v = add("Keynote " + word);
+
+		Video update = new Video(v.getName(), "http://coursera.org/some/video-" + UUID.randomUUID(), 120000);
+		update.setId(v.getId());
+		videos.save(update);
+
+		assertEquals(Arrays.asList(update), videoService.searchTitles(word, 10, null).getVideos());
+	}
+
+	// A renamed video is found by its new title, and no longer by its old
+	// one, whether it is a new copy or the Video that was loaded
+	@Test
+	public void testRenamedVideosAreFoundByTheirNewTitle() {
+		String newWord = word + "new";
+		Video v = add("Keynote " + word);
+
+		Video renamed = new Video("Keynote " + newWord, v.getUrl(), v.getDuration());
+		renamed.setId(v.getId());
+		videos.save(renamed);
+
+		assertTrue(videoService.searchTitles(word, 10, null).getVideos().isEmpty());
+		assertEquals(Arrays.asList(renamed), videoService.searchTitles(newWord, 10, null).getVideos());
+
+		Video loaded = videos.findOne(v.getId());
+		loaded.setName("Closing " + word);
+		videos.save(loaded);
+
+		assertTrue(videoService.searchTitles(newWord, 10, null).getVideos().isEmpty());
+		assertEquals(Arrays.asList(loaded), videoService.searchTitles(word, 10, null).getVideos());
+	}
+
+	@Test
+	public void testNothingToSearchFor() {
+		VideoPage page = videoService.searchTitles(" - ", 10, null);
+
+		assertNotNull(page.getVideos());
+		assertTrue(page.getVideos().isEmpty());
+		assertNull(page.getNext());
+	}
+
+	private Video add(String title) {
+		Video v = new Video(title, "http://coursera.org/some/video-" + UUID.randomUUID(), 60000);
+		videoService.addVideo(v);
+		return v;
+	}
+
+}
@@ -0,0 +1,207 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * 
+ * This test runs the VideoSvc in dedupe mode and checks that a video that
+ * is sent more than once (e.g., by a client that retries after a timeout)
+ * is only saved once, whether the copies arrive one after another, at the
+ * same time, or inside a batch.
+ * 
+ * The "dedupe" profile (src/test/resources/application-dedupe.properties)
+ * turns on dedupe mode and gives the test a database of its own.
+ * 
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("dedupe")
+public class VideoSvcDedupeTest {
+
+	// spring.jpa.properties.hibernate.jdbc.batch_size in application.properties
+	private static final int BATCH_SIZE = 50;
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService).build();
+	}
+
+	@Test
+	public void testRetriedAddIsIdempotent() throws Exception {
+		Video video = TestData.randomVideo();
+		String etag = null;
+
+		for (int i = 0; i < 3; i++) {
+			mockMvc.perform(
+					post(VideoSvcApi.VIDEO_SVC_PATH)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(TestData.toJson(video)))
+					.andExpect(status().isOk())
+					.andExpect(content().string("true"));
+			if (etag == null) {
+				etag = videoService.catalogETag();
+			}
+		}
+
+		assertEquals(1, saved(video));
+		// Only the first add changed the list
+		assertEquals(etag, videoService.catalogETag());
+	}
+
+	@Test
+	public void testBatchSkipsDuplicates() throws Exception {
+		Video saved = TestData.randomVideo();
+		videoService.addVideo(saved);
+
+		Video fresh = TestData.randomVideo();
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(Arrays.asList(saved, fresh, fresh))))
+				.andExpect(status().isOk())
+				.andExpect(content().string("1"));
+
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.valueOf(VideoSvcApi.NDJSON_MEDIA_TYPE))
+				.content(TestData.toJson(saved) + "\n" + TestData.toJson(fresh) + "\n"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("0"));
+
+		assertEquals(1, saved(saved));
+		assertEquals(1, saved(fresh));
+	}
+
+	// A large batch is looked up a group at a time, with one query for
+	// each group of batch_size videos rather than one per video, so that
+	// the inserts still go to the database in JDBC batches
+	@Test
+	public void testBatchLooksUpEachGroupOnce() throws Exception {
+		Video saved = TestData.randomVideo();
+		videoService.addVideo(saved);
+
+		List<Video> batch = new ArrayList<Video>();
+		batch.add(saved);
+		for (int i = 0; i < 2 * BATCH_SIZE; i++) {
+			Video v = TestData.randomVideo();
+			batch.add(v);
+			batch.add(new Video(v.getName(), v.getUrl(), v.getDuration()));
+		}
+
+		Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long queries = stats.getQueryExecutionCount();
+		assertEquals(2 * BATCH_SIZE, videoService.addVideos(batch));
+		long lookups = stats.getQueryExecutionCount() - queries;
+
+		// The copies on either side of a group boundary are caught by the
+		// next group's lookup, and the others by the group itself
+		int groups = (batch.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+		assertEquals(groups, lookups);
+
+		for (Video v : batch) {
+			assertEquals(1, saved(v));
+		}
+	}
+
+	// Several clients retrying the same adds at the same time can all get
+	// past the lookup before any of them has saved the video. The unique
+	// index catches the ones that lose the race.
+	@Test
+	public void testConcurrentRetriesSaveOnce() throws Exception {
+		final List<Video> sent = new ArrayList<Video>();
+		for (int i = 0; i < 50; i++) {
+			sent.add(TestData.randomVideo());
+		}
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int c = 0; c < 8; c++) {
+			results.add(clients.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					boolean allAdded = true;
+					for (Video v : sent) {
+						Video copy = new Video(v.getName(), v.getUrl(), v.getDuration());
+						allAdded &= videoService.addVideo(copy);
+					}
+					return allAdded;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		clients.shutdown();
+
+		for (Video v : sent) {
+			assertEquals(1, saved(v));
+		}
+	}
+
+	// Saving straight to the repository skips the lookup in the VideoSvc,
+	// but the database still refuses a second copy
+	@Test(expected = DataIntegrityViolationException.class)
+	public void testUniqueIndexRejectsCopies() {
+		Video video = TestData.randomVideo();
+		videos.save(video);
+		videos.save(new Video(video.getName(), video.getUrl(), video.getDuration()));
+	}
+
+	private int saved(Video v) {
+		return videos.findByNameAndUrlAndDuration(v.getName(), v.getUrl(), v.getDuration()).size();
+	}
+
+}
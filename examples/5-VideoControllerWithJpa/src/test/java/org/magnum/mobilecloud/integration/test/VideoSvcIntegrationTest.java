@@ -1,16 +1,32 @@
 package org.magnum.mobilecloud.integration.test;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.magnum.mobilecloud.video.Application;
 import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.ETagCachingClient;
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.controller.VideoSvc;
 import org.magnum.mobilecloud.video.repository.Video;
@@ -25,6 +41,9 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * 
  * This test shows how to fully setup and configuration a controller (or you could
@@ -60,6 +79,11 @@ public class VideoSvcIntegrationTest {
 	@Autowired
 	private VideoSvc videoService;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
 	// This is the mock interface to our application that we will use to 
 	// send mock HTTP requests
 	private MockMvc mockMvc;
@@ -100,4 +124,150 @@ public class VideoSvcIntegrationTest {
 	            .andReturn();
 	}
 
+	// Polling the list with the ETag from the last response gets an
+	// empty 304 Not Modified until another video is added
+	@Test
+	public void testConditionalGet() throws Exception {
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(TestData.randomVideo())))
+				.andExpect(status().isOk());
+
+		String etag = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(ETagCachingClient.ETAG_HEADER);
+
+		mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH)
+				.header(ETagCachingClient.IF_NONE_MATCH_HEADER, etag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		Video video = TestData.randomVideo();
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(video)))
+				.andExpect(status().isOk());
+
+		String newEtag = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH)
+				.header(ETagCachingClient.IF_NONE_MATCH_HEADER, etag))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString(video.getName())))
+				.andReturn().getResponse().getHeader(ETagCachingClient.ETAG_HEADER);
+		assertFalse(etag.equals(newEtag));
+	}
+
+	// Saving several videos with one request to /video/batch, either as
+	// a JSON array or as newline-delimited JSON
+	@Test
+	public void testVideoBatchAdd() throws Exception {
+		Video first = TestData.randomVideo();
+		Video second = TestData.randomVideo();
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(Arrays.asList(first, second))))
+				.andExpect(status().isOk())
+				.andExpect(content().string("2"));
+
+		Video third = TestData.randomVideo();
+		Video fourth = TestData.randomVideo();
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(MediaType.valueOf(VideoSvcApi.NDJSON_MEDIA_TYPE))
+				.content(TestData.toJson(third) + "\n" + TestData.toJson(fourth) + "\n"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("2"));
+
+		for (Video v : Arrays.asList(first, second, third, fourth)) {
+			mockMvc.perform(
+					get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+					.param(VideoSvcApi.TITLE_PARAMETER, v.getName()))
+					.andExpect(status().isOk())
+					.andExpect(content().string(containsString(v.getUrl())));
+		}
+	}
+
+	// Paging through the videos with a matching title, two at a time,
+	// returns every match once and in the order that they were added
+	@Test
+	public void testFindByTitlePages() throws Exception {
+		String title = "Video-" + UUID.randomUUID();
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < 5; i++) {
+			Video v = new Video(title, "http://coursera.org/some/video-" + i, i + 1);
+			videoService.addVideo(v);
+			added.add(v);
+		}
+
+		List<Video> seen = new ArrayList<Video>();
+		String after = null;
+		int pages = 0;
+		do {
+			String json = mockMvc.perform(
+					get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+					.param(VideoSvcApi.TITLE_PARAMETER, title)
+					.param(VideoSvcApi.LIMIT_PARAMETER, "2")
+					.param(VideoSvcApi.AFTER_PARAMETER, after == null ? "" : after))
+					.andExpect(status().isOk())
+					.andReturn().getResponse().getContentAsString();
+			VideoPage page = objectMapper.readValue(json, VideoPage.class);
+			seen.addAll(page.getVideos());
+			after = page.getNext();
+			pages++;
+		} while (after != null);
+
+		assertEquals(3, pages);
+		assertEquals(added, seen);
+
+		// The whole list can be paged through the same way
+		String json = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH)
+				.param(VideoSvcApi.LIMIT_PARAMETER, "2"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		VideoPage first = objectMapper.readValue(json, VideoPage.class);
+		assertEquals(2, first.getVideos().size());
+		assertNotNull(first.getNext());
+	}
+
+	// The summaries have the id, title and duration of each video, but
+	// not its url, and are built without loading any Video entities
+	@Test
+	public void testVideoSummaries() throws Exception {
+		Video video = TestData.randomVideo();
+		videoService.addVideo(video);
+
+		String json = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SUMMARY_PATH))
+				.andExpect(status().isOk())
+				.andExpect(header().string(ETagCachingClient.ETAG_HEADER, videoService.catalogETag()))
+				.andReturn().getResponse().getContentAsString();
+
+		JsonNode summary = null;
+		for (JsonNode node : objectMapper.readTree(json)) {
+			if (video.getName().equals(node.get("name").asText())) {
+				summary = node;
+			}
+		}
+		assertNotNull(summary);
+		assertTrue(summary.get("id").asLong() > 0);
+		assertEquals(video.getDuration(), summary.get("duration").asLong());
+		assertFalse(summary.has("url"));
+
+		Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long loaded = stats.getEntityLoadCount();
+		assertFalse(videoService.getVideoSummaries().isEmpty());
+		assertEquals(loaded, stats.getEntityLoadCount());
+
+		mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SUMMARY_PATH)
+				.header(ETagCachingClient.IF_NONE_MATCH_HEADER, videoService.catalogETag()))
+				.andExpect(status().isNotModified());
+	}
+
 }
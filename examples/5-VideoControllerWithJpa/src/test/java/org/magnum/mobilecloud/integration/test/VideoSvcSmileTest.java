@@ -0,0 +1,220 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.ETagCachingClient;
+import org.magnum.mobilecloud.video.client.SmileConverter;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedOutput;
+
+/**
+ *
+ * This test sends videos to the VideoSvc as Smile, one at a time and in a
+ * batch, and asks for the list back as Smile, using the SmileConverter that
+ * Retrofit clients use to encode and decode the bodies. It checks that
+ * clients that don't ask for Smile still get JSON, and that the two are
+ * sent with different ETags.
+ *
+ * Unlike VideoSvcIntegrationTest, the MockMvc is built from the whole web
+ * application context, so that the requests go through the same message
+ * converters as they would in the running Application.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoSvcSmileTest {
+
+	private static final MediaType SMILE = MediaType.valueOf(VideoSvcApi.SMILE_MEDIA_TYPE);
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private VideoSvc videoService;
+
+	private final SmileConverter smile = new SmileConverter();
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+	}
+
+	@Test
+	public void testSmileAddAndList() throws Exception {
+		Video video = TestData.randomVideo();
+		TypedOutput body = smile.toBody(video);
+
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(SMILE)
+				.content(((TypedByteArray) body).getBytes()))
+				.andExpect(status().isOk());
+
+		MockHttpServletResponse response = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH)
+				.accept(SMILE))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertTrue(response.getContentType().startsWith(VideoSvcApi.SMILE_MEDIA_TYPE));
+		byte[] list = response.getContentAsByteArray();
+
+		List<Video> videos = Arrays.asList((Video[]) smile.fromBody(
+				new TypedByteArray(VideoSvcApi.SMILE_MEDIA_TYPE, list), Video[].class));
+		assertTrue(videos.contains(video));
+
+		// The same list, in JSON for a client that didn't ask for Smile
+		response = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertTrue(response.getContentType().startsWith(MediaType.APPLICATION_JSON_VALUE));
+		String json = response.getContentAsString();
+		assertTrue(json.contains(TestData.toJson(video)));
+		assertTrue(list.length < json.getBytes("UTF-8").length);
+	}
+
+	@Test
+	public void testSmileSearch() throws Exception {
+		Video video = TestData.randomVideo();
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(video)))
+				.andExpect(status().isOk());
+
+		MockHttpServletResponse response = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+				.param(VideoSvcApi.TITLE_PARAMETER, video.getName())
+				.accept(SMILE))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertTrue(response.getContentType().startsWith(VideoSvcApi.SMILE_MEDIA_TYPE));
+
+		Video[] videos = (Video[]) smile.fromBody(new TypedByteArray(
+				VideoSvcApi.SMILE_MEDIA_TYPE, response.getContentAsByteArray()), Video[].class);
+		assertArrayEquals(new Video[] { video }, videos);
+	}
+
+	// A Retrofit client that uses the SmileConverter sends every body as
+	// Smile, including the list of videos for VideoSvcApi.addVideos()
+	@Test
+	public void testSmileBatch() throws Exception {
+		List<Video> batch = Arrays.asList(TestData.randomVideo(), TestData.randomVideo());
+		TypedOutput body = smile.toBody(batch);
+
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_BATCH_PATH)
+				.contentType(SMILE)
+				.content(((TypedByteArray) body).getBytes()))
+				.andExpect(status().isOk())
+				.andExpect(content().string("2"));
+
+		for (Video v : batch) {
+			MockHttpServletResponse response = mockMvc.perform(
+					get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+					.param(VideoSvcApi.TITLE_PARAMETER, v.getName())
+					.accept(SMILE))
+					.andExpect(status().isOk())
+					.andReturn().getResponse();
+			Video[] found = (Video[]) smile.fromBody(new TypedByteArray(
+					VideoSvcApi.SMILE_MEDIA_TYPE, response.getContentAsByteArray()), Video[].class);
+			assertArrayEquals(new Video[] { v }, found);
+		}
+	}
+
+	// The JSON and Smile lists are different bytes, so a client that has
+	// one must never be told that it already has the other
+	@Test
+	public void testSmileHasItsOwnETag() throws Exception {
+		mockMvc.perform(
+				post(VideoSvcApi.VIDEO_SVC_PATH)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(TestData.toJson(TestData.randomVideo())))
+				.andExpect(status().isOk());
+
+		String jsonETag = videoService.catalogETag(false);
+		String smileETag = videoService.catalogETag(true);
+		assertFalse(jsonETag.equals(smileETag));
+
+		for (String path : new String[] { VideoSvcApi.VIDEO_SVC_PATH, VideoSvcApi.VIDEO_SUMMARY_PATH }) {
+			assertFalse(sendsSmile(path, null));
+			assertFalse(sendsSmile(path, "*/*"));
+			assertFalse(sendsSmile(path, "application/*"));
+			assertTrue(sendsSmile(path, VideoSvcApi.SMILE_MEDIA_TYPE));
+			assertTrue(sendsSmile(path, "application/json;q=0.5, " + VideoSvcApi.SMILE_MEDIA_TYPE));
+			assertFalse(sendsSmile(path, VideoSvcApi.SMILE_MEDIA_TYPE + ";q=0.5, application/json"));
+			assertFalse(sendsSmile(path, VideoSvcApi.SMILE_MEDIA_TYPE + ";q=0, */*"));
+
+			// The JSON ETag doesn't match the Smile list...
+			mockMvc.perform(
+					get(path)
+					.accept(SMILE)
+					.header(ETagCachingClient.IF_NONE_MATCH_HEADER, jsonETag))
+					.andExpect(status().isOk());
+
+			// ...but the Smile one does
+			mockMvc.perform(
+					get(path)
+					.accept(SMILE)
+					.header(ETagCachingClient.IF_NONE_MATCH_HEADER, smileETag))
+					.andExpect(status().isNotModified())
+					.andExpect(header().string("Vary", "Accept"));
+		}
+	}
+
+	// Asks for the path with the Accept header and checks that the ETag
+	// that comes back is the one for whatever Spring actually sent
+	private boolean sendsSmile(String path, String accept) throws Exception {
+		MockHttpServletRequestBuilder request = get(path);
+		if (accept != null) {
+			request.header("Accept", accept);
+		}
+		MockHttpServletResponse response = mockMvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(header().string("Vary", "Accept"))
+				.andReturn().getResponse();
+		boolean smile = response.getContentType().startsWith(VideoSvcApi.SMILE_MEDIA_TYPE);
+		assertEquals(accept, videoService.catalogETag(smile), response.getHeader(ETagCachingClient.ETAG_HEADER));
+		return smile;
+	}
+
+}
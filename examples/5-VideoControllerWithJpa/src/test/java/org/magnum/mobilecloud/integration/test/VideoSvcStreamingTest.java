@@ -0,0 +1,142 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 
+ * This test loads a million videos into H2 and then streams all of them
+ * out of the VideoSvc as JSON.
+ * 
+ * The test is meant to be run with a small heap, by "gradle streamingTest"
+ * (see the streamingTest task in build.gradle, which runs it with -Xmx64m
+ * and isn't part of the normal build). A million Video objects, or the
+ * JSON for them (~100MB), would not fit in that heap, so the test can only
+ * pass if the videos really are written out one at a time as they are
+ * read from the database.
+ * 
+ * The JSON is read back, one video at a time, on another thread while it is
+ * being written, to check that every video is sent exactly once and in
+ * order without ever holding the whole response.
+ * 
+ * The "streaming" profile (src/test/resources/application-streaming.properties)
+ * keeps the database in a file rather than in memory.
+ * 
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("streaming")
+public class VideoSvcStreamingTest {
+
+	private static final int VIDEOS = 1000000;
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private DataSource dataSource;
+
+	private ExecutorService reader = Executors.newSingleThreadExecutor();
+
+	@Before
+	public void setUp() {
+		// Going through JPA would take far too long, so let H2 generate the
+		// rows itself. The ids normally come from a sequence that Hibernate
+		// reads, so they are given here too.
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		if (jdbc.queryForObject("select count(*) from video", Integer.class) < VIDEOS) {
+			// The title search index refers to the videos, so it goes first
+			jdbc.update("delete from video_title_term");
+			jdbc.update("delete from video");
+			jdbc.update("insert into video (id, name, url, duration) "
+					+ "select x, 'Video-' || x, 'http://coursera.org/some/video-' || x, x "
+					+ "from system_range(1, " + VIDEOS + ")");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		reader.shutdownNow();
+	}
+
+	@Test
+	public void testStreamAMillionVideos() throws Exception {
+		final PipedInputStream in = new PipedInputStream(64 * 1024);
+		PipedOutputStream out = new PipedOutputStream(in);
+
+		Future<Integer> read = reader.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return readVideos(in);
+			}
+		});
+
+		int written;
+		try {
+			written = videoService.writeVideoList(out);
+		} finally {
+			out.close();
+		}
+
+		assertEquals(VIDEOS, written);
+		assertEquals(VIDEOS, read.get(1, TimeUnit.MINUTES).intValue());
+	}
+
+	// Reads the JSON array back one video at a time, checking that the
+	// videos arrive in the order that they were inserted
+	private int readVideos(PipedInputStream in) throws IOException {
+		JsonParser parser = objectMapper.getFactory().createParser(in);
+		assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+		int count = 0;
+		long lastId = 0;
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			Video v = objectMapper.readValue(parser, Video.class);
+			assertTrue(v.getId() > lastId);
+			lastId = v.getId();
+			count++;
+			assertEquals("Video-" + count, v.getName());
+		}
+		assertEquals(JsonToken.END_ARRAY, parser.getCurrentToken());
+		parser.close();
+		return count;
+	}
+
+}
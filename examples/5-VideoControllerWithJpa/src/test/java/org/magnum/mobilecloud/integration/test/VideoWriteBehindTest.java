@@ -0,0 +1,155 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.WriteBehindVideoQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test runs the VideoSvc in write-behind mode and checks that adds
+ * that arrive together share a transaction, and that the queue never
+ * acknowledges a video that isn't in the database, even when it is
+ * stopped in the middle of its work as if the application had crashed.
+ *
+ * The "writebehind" profile
+ * (src/test/resources/application-writebehind.properties) turns on
+ * write-behind mode and gives the test a database of its own.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("writebehind")
+public class VideoWriteBehindTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	public void testConcurrentAddsShareTransactions() throws Exception {
+		final int clients = 8;
+		final int perClient = 50;
+		Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		long transactions = stats.getTransactionCount();
+
+		ExecutorService executor = Executors.newFixedThreadPool(clients);
+		List<Future<List<Video>>> results = new ArrayList<Future<List<Video>>>();
+		for (int c = 0; c < clients; c++) {
+			results.add(executor.submit(new Callable<List<Video>>() {
+				@Override
+				public List<Video> call() {
+					List<Video> added = new ArrayList<Video>();
+					for (int i = 0; i < perClient; i++) {
+						Video v = TestData.randomVideo();
+						assertTrue(videoService.addVideo(v));
+						added.add(v);
+					}
+					return added;
+				}
+			}));
+		}
+		List<Video> added = new ArrayList<Video>();
+		for (Future<List<Video>> r : results) {
+			added.addAll(r.get());
+		}
+		executor.shutdown();
+
+		// Fewer commits than videos
+		assertTrue(stats.getTransactionCount() - transactions < clients * perClient / 2);
+
+		// Every add that returned is in the database
+		for (Video v : added) {
+			assertEquals(1, videos.findByName(v.getName()).size());
+		}
+	}
+
+	@Test
+	public void testOnlyAcknowledgedVideosSurviveCrash() throws Exception {
+		// A batch is only saved once it has 10 videos, or after 10 seconds
+		WriteBehindVideoQueue queue = new WriteBehindVideoQueue(videos, 100, 10, 10000, 100);
+
+		List<Video> sent = new ArrayList<Video>();
+		List<Future<Video>> acks = new ArrayList<Future<Video>>();
+		for (int i = 0; i < 10; i++) {
+			Video v = TestData.randomVideo();
+			sent.add(v);
+			acks.add(queue.add(v));
+		}
+		// The first batch is full, so it is saved right away
+		for (Future<Video> ack : acks) {
+			ack.get(10, TimeUnit.SECONDS);
+		}
+
+		// These wait for a batch that never fills up
+		for (int i = 0; i < 5; i++) {
+			Video v = TestData.randomVideo();
+			sent.add(v);
+			acks.add(queue.add(v));
+		}
+
+		queue.shutdownNow();
+
+		int acknowledged = 0;
+		for (int i = 0; i < sent.size(); i++) {
+			Future<Video> ack = acks.get(i);
+			// Nobody is left waiting for an answer
+			assertTrue(ack.isDone());
+			int saved = videos.findByName(sent.get(i).getName()).size();
+			try {
+				ack.get();
+				acknowledged++;
+				assertEquals(1, saved);
+			} catch (ExecutionException e) {
+				assertEquals(0, saved);
+			}
+		}
+		assertEquals(10, acknowledged);
+
+		try {
+			queue.add(TestData.randomVideo());
+			fail("A crashed queue should not take more videos");
+		} catch (WriteBehindVideoQueue.WriteBehindRejectedException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.magnum.mobilecloud.video.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.magnum.mobilecloud.video.repository.Video;
+
+/**
+ * One page of videos from the VideoSvc, together with the cursor that
+ * a client sends back (as the "after" parameter) to get the next page.
+ * 
+ * The cursor is opaque. Clients should not try to build or change it,
+ * only pass it back to the service. When there are no more videos after
+ * this page, the cursor is null.
+ * 
+ * @author jules
+ *
+ */
+public class VideoPage {
+
+	private List<Video> videos = new ArrayList<Video>();
+
+	private String next;
+
+	public VideoPage() {
+	}
+
+	public VideoPage(List<Video> videos, String next) {
+		this.videos = videos;
+		this.next = next;
+	}
+
+	public List<Video> getVideos() {
+		return videos;
+	}
+
+	public void setVideos(List<Video> videos) {
+		this.videos = videos;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+}
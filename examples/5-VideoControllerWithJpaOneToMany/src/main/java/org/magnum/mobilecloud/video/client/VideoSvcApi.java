@@ -23,6 +23,11 @@ import retrofit.http.Query;
  * annotations so that clients can automatically convert the
  * 
  * 
+ * Clients that do not want every video at once can ask for one page
+ * at a time with getVideoPage() or the paged findByTitle(). Each VideoPage
+ * carries an opaque cursor that is passed back as the "after" parameter
+ * to get the next page.
+ * 
  * @author jules
  *
  */
@@ -39,15 +44,30 @@ public interface VideoSvcApi {
 	// The path to search videos by title
 	public static final String VIDEO_TITLE_SEARCH_PATH = VIDEO_SVC_PATH + "/find";
 
+	// The parameters for asking for one page of videos
+	public static final String LIMIT_PARAMETER = "limit";
+	public static final String AFTER_PARAMETER = "after";
+
+	// The most videos that the service will put on one page
+	public static final int MAX_PAGE_SIZE = 1000;
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
 	
+	// Pass a null cursor to get the first page
+	@GET(VIDEO_SVC_PATH)
+	public VideoPage getVideoPage(@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
 	@POST(VIDEO_SVC_PATH)
 	public boolean addVideo(@Body Video v);
 	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
 	
+	@GET(VIDEO_TITLE_SEARCH_PATH)
+	public VideoPage findByTitle(@Query(TITLE_PARAMETER) String title,
+			@Query(LIMIT_PARAMETER) int limit, @Query(AFTER_PARAMETER) String after);
+	
 	@GET(VIDEO_SVC_PATH+"/{category}")
 	public Collection<Video> getVideoListForCategory(@Path("category") String categoryName);
 	
@@ -2,13 +2,20 @@ package org.magnum.mobilecloud.video.controller;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
+
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.Category;
 import org.magnum.mobilecloud.video.repository.CategoryRepository;
 import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoReadModel;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -60,6 +67,25 @@ public class VideoSvc implements VideoSvcApi {
 	@Autowired
 	private CategoryRepository categories;
 
+	// When this is true (set "video.readmodel=true" in
+	// application.properties), getVideoList(), findByTitle() and
+	// getVideoListForCategory() are answered from a copy of the catalog in
+	// memory rather than from the database. The copy is loaded when the
+	// controller starts, and every video saved through JPA after that is
+	// added to it when its transaction commits (see VideoReadModel).
+	@Value("${video.readmodel:false}")
+	private boolean useReadModel;
+
+	@Autowired
+	private VideoReadModel readModel;
+
+	@PostConstruct
+	public void loadReadModel(){
+		if (useReadModel) {
+			readModel.rebuild();
+		}
+	}
+
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
 	// object before adding it to the list. The @RequestBody
@@ -116,15 +142,24 @@ public class VideoSvc implements VideoSvcApi {
 	// annotation.
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET)
 	public @ResponseBody Collection<Video> getVideoList(){
+		if (useReadModel) {
+			return readModel.findAll();
+		}
 		return Lists.newArrayList(videos.findAll());
 	}
 	
 	// Receives GET requests to /video/{category} and returns the current
 	// list of videos that are part of the specified category.
+	//
+	// The videos are loaded with a single query rather than by looking
+	// up the Category and walking its lazy videos collection (see
+	// VideoRepository.findByCategoryName()).
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH+"/{category}", method=RequestMethod.GET)
 	public @ResponseBody Collection<Video> getVideoListForCategory(@PathVariable("category") String categoryName){
-		Category c = categories.findOne(categoryName);
-		return (c != null) ? Lists.newArrayList(c.getVideos()) : new ArrayList<Video>();
+		if (useReadModel) {
+			return readModel.findByCategoryName(categoryName);
+		}
+		return videos.findByCategoryName(categoryName);
 	}
 	
 	
@@ -137,7 +172,48 @@ public class VideoSvc implements VideoSvcApi {
 			// string as the value for the title method parameter
 			@RequestParam(TITLE_PARAMETER) String title
 	){
+		if (useReadModel) {
+			return readModel.findByName(title);
+		}
 		return videos.findByName(title);
 	}
 
+	// Receives GET requests to /video that have a "limit" parameter and
+	// returns just one page of the videos. Spring picks this method rather
+	// than getVideoList() because its mapping is more specific.
+	//
+	// The cursor holds the id of the last video on the previous page and
+	// the query asks for the videos with larger ids, so only one page of
+	// rows is ever loaded, however many videos there are.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage getVideoPage(
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		return page(videos.findByIdGreaterThanOrderByIdAsc(
+				VideoCursor.decode(after), new PageRequest(0, pageSize + 1)), pageSize);
+	}
+
+	// Receives GET requests to /video/find that have a "limit" parameter
+	// and returns one page of the videos with a matching title
+	@RequestMapping(value=VideoSvcApi.VIDEO_TITLE_SEARCH_PATH, method=RequestMethod.GET, params=LIMIT_PARAMETER)
+	public @ResponseBody VideoPage findByTitle(
+			@RequestParam(TITLE_PARAMETER) String title,
+			@RequestParam(LIMIT_PARAMETER) int limit,
+			@RequestParam(value=AFTER_PARAMETER, required=false) String after){
+		int pageSize = VideoCursor.pageSize(limit);
+		return page(videos.findByNameAndIdGreaterThanOrderByIdAsc(
+				title, VideoCursor.decode(after), new PageRequest(0, pageSize + 1)), pageSize);
+	}
+
+	// We ask the database for one more video than fits on the page. If it
+	// comes back, there is another page and we hand out a cursor for it.
+	private VideoPage page(List<Video> fetched, int pageSize){
+		if (fetched.size() <= pageSize) {
+			return new VideoPage(fetched, null);
+		}
+		List<Video> page = new ArrayList<Video>(fetched.subList(0, pageSize));
+		return new VideoPage(page, VideoCursor.encode(page.get(pageSize - 1).getId()));
+	}
+
 }
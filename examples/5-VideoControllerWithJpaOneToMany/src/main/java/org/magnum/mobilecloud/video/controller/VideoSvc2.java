@@ -4,6 +4,7 @@ import java.util.Collection;
 
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repositorywithoutonetomany.Category2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.CategoryRegistry2;
 import org.magnum.mobilecloud.video.repositorywithoutonetomany.CategoryRepository2;
 import org.magnum.mobilecloud.video.repositorywithoutonetomany.Video2;
 import org.magnum.mobilecloud.video.repositorywithoutonetomany.VideoRepository2;
@@ -58,6 +59,11 @@ public class VideoSvc2 {
 	
 	@Autowired
 	private CategoryRepository2 categories;
+	
+	// The names of the categories that exist, kept in memory so that
+	// adding a video doesn't have to look its category up in the database
+	@Autowired
+	private CategoryRegistry2 categoryNames;
 
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
@@ -81,7 +87,10 @@ public class VideoSvc2 {
 		// work to check and ensure that the specified Category actually exists
 		// before we save a Video. If we use @OneToMany, JPA automatically ensures
 		// that a Category referenced by a Video exists.
-		if(categories.findOne(v.getCategory()) == null){
+		//
+		// The check is made against the CategoryRegistry2 rather than the
+		// CategoryRepository2, so it normally costs no database query.
+		if(!categoryNames.exists(v.getCategory())){
 			throw new RuntimeException("Unknown category:"+v.getCategory());
 		}
 		
@@ -107,6 +116,7 @@ public class VideoSvc2 {
 	@RequestMapping(value= "/2" + VideoSvcApi.CATEGORY_SVC_PATH, method=RequestMethod.POST)
 	public @ResponseBody boolean addCategory(@RequestBody Category2 c){
 		 categories.save(c);
+		 categoryNames.add(c.getName());
 		 return true;
 	}
 	
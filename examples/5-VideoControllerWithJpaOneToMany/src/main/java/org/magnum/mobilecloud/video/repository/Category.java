@@ -2,10 +2,14 @@ package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
@@ -17,6 +21,12 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
  *
  */
 @Entity
+// Categories are looked up by name far more often than they change, so
+// they are kept in Hibernate's second-level cache (see ehcache.xml). The
+// videos collection isn't cached: it is the inverse side of the
+// relationship, so saving a Video would not update a cached copy of it.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Category {
 
 	@Id
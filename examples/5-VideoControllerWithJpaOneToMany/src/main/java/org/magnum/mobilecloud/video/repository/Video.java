@@ -1,10 +1,18 @@
 package org.magnum.mobilecloud.video.repository;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import com.google.common.base.Objects;
 
@@ -15,6 +23,19 @@ import com.google.common.base.Objects;
  * 
  */
 @Entity
+// Searching by title pages through the matches in id order (see
+// VideoRepository), which the first index answers without a sort. The
+// second does the same for listing the videos in a category.
+@Table(indexes = {
+		@Index(name = "video_name_id", columnList = "name,id"),
+		@Index(name = "video_category_id", columnList = "category,id") })
+// Keep the videos that have been loaded in Hibernate's second-level cache
+// (see ehcache.xml), so that loading one again by id doesn't go to the
+// database. READ_WRITE keeps the cache in step with saves made through JPA.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// Keeps the VideoReadModel up to date with every save
+@EntityListeners(VideoReadModelListener.class)
 public class Video {
 
 	@Id
@@ -25,7 +46,10 @@ public class Video {
 	private String url;
 	private long duration;
 
+	// The column is named explicitly so that the video_category_id index
+	// above can refer to it
 	@ManyToOne
+	@JoinColumn(name = "category")
 	private Category category;
 
 	public Video() {
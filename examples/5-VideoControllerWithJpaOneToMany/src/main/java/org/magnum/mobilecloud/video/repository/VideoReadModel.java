@@ -0,0 +1,256 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * A copy of the video catalog in memory, indexed by id, by title and by
+ * category, that VideoSvc reads from instead of the database when
+ * "video.readmodel" is true (see application.properties).
+ *
+ * The whole model is one immutable Snapshot. A read just picks up the
+ * current snapshot and looks in it, with no locks and no database, and
+ * keeps seeing the same snapshot however long it takes. A write builds a
+ * new snapshot with the change and then swaps it in. That copies the
+ * whole catalog, so the videos saved in one transaction are collected and
+ * go into the model together, with a single copy when the transaction
+ * commits, however many videos it saved. That is fine as long as videos
+ * are read far more often than they are added.
+ *
+ * The model is loaded from the VideoRepository by rebuild() when VideoSvc
+ * starts. After that, every Video that is inserted or updated through JPA
+ * is put into the model as soon as its transaction commits (see
+ * VideoReadModelListener), so the model never shows a video that isn't in
+ * the database, or that was rolled back. Rows written to the database
+ * without JPA (e.g., by another application) don't show up until the next
+ * rebuild().
+ *
+ * Each read hands out new Video objects, so a caller that changes the
+ * videos that it gets back doesn't change the model.
+ *
+ * @author jules
+ *
+ */
+@Component
+public class VideoReadModel {
+
+	// The values of a video as it was saved. Unlike Video, it can't be
+	// changed once it has been made.
+	private static final class Entry {
+		final long id;
+		final String name;
+		final String url;
+		final long duration;
+		final String category;
+
+		Entry(Video v) {
+			this.id = v.getId();
+			this.name = v.getName();
+			this.url = v.getUrl();
+			this.duration = v.getDuration();
+			this.category = (v.getCategory() != null) ? v.getCategory().getName() : null;
+		}
+
+		Video toVideo() {
+			Video v = new Video(name, url, duration);
+			v.setId(id);
+			if (category != null) {
+				Category c = new Category();
+				c.setName(category);
+				v.setCategory(c);
+			}
+			return v;
+		}
+	}
+
+	private static final class Snapshot {
+		final ImmutableSortedMap<Long, Entry> byId;
+		final ImmutableListMultimap<String, Entry> byName;
+		final ImmutableListMultimap<String, Entry> byCategory;
+
+		// The entries of each name and category stay in id order, because
+		// they are added in id order
+		Snapshot(TreeMap<Long, Entry> entries) {
+			ImmutableListMultimap.Builder<String, Entry> names = ImmutableListMultimap.builder();
+			ImmutableListMultimap.Builder<String, Entry> categories = ImmutableListMultimap.builder();
+			for (Entry e : entries.values()) {
+				if (e.name != null) {
+					names.put(e.name, e);
+				}
+				if (e.category != null) {
+					categories.put(e.category, e);
+				}
+			}
+			this.byId = ImmutableSortedMap.copyOfSorted(entries);
+			this.byName = names.build();
+			this.byCategory = categories.build();
+		}
+	}
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	// The same setting that makes VideoSvc read from the model. When it is
+	// off, saves don't bother keeping the model up to date.
+	@Value("${video.readmodel:false}")
+	private boolean enabled;
+
+	private volatile Snapshot snapshot = new Snapshot(new TreeMap<Long, Entry>());
+
+	@PostConstruct
+	public void listen() {
+		if (enabled) {
+			VideoReadModelListener.register(entityManagerFactory, this);
+		}
+	}
+
+	@PreDestroy
+	public void stopListening() {
+		VideoReadModelListener.unregister(entityManagerFactory);
+	}
+
+	/**
+	 * Throws the model away and loads it again from the repository.
+	 */
+	public synchronized void rebuild() {
+		TreeMap<Long, Entry> entries = new TreeMap<Long, Entry>();
+		for (Video v : videos.findAll()) {
+			entries.put(v.getId(), new Entry(v));
+		}
+		snapshot = new Snapshot(entries);
+	}
+
+	/**
+	 * Adds a video that has just been saved, or replaces the one with the
+	 * same id. Call this only once the video has been committed.
+	 *
+	 * @param v
+	 */
+	public void put(Video v) {
+		put(Collections.singleton(new Entry(v)));
+	}
+
+	/**
+	 * Adds a video that is being saved in the current transaction, once the
+	 * transaction has committed. If it rolls back, the model never sees the
+	 * video. The values are taken now, as they are being saved.
+	 *
+	 * @param v
+	 */
+	void putAfterCommit(Video v) {
+		PendingPuts pending = (PendingPuts) TransactionSynchronizationManager.getResource(this);
+		if (pending == null) {
+			pending = new PendingPuts();
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(pending);
+		}
+		pending.entries.put(v.getId(), new Entry(v));
+	}
+
+	// The videos saved so far in one transaction. It is bound to the
+	// transaction under the read model, so the transaction registers just
+	// one of these however many videos it saves.
+	private final class PendingPuts extends TransactionSynchronizationAdapter {
+
+		// By id, so a video saved more than once in the transaction goes in
+		// as it was last saved
+		final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(VideoReadModel.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(VideoReadModel.this, this);
+		}
+
+		@Override
+		public void afterCommit() {
+			put(entries.values());
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(VideoReadModel.this);
+		}
+	}
+
+	private synchronized void put(Collection<Entry> added) {
+		TreeMap<Long, Entry> entries = new TreeMap<Long, Entry>(snapshot.byId);
+		for (Entry e : added) {
+			entries.put(e.id, e);
+		}
+		snapshot = new Snapshot(entries);
+	}
+
+	/**
+	 * Every video, in id order.
+	 *
+	 * @return
+	 */
+	public List<Video> findAll() {
+		return toVideos(snapshot.byId.values());
+	}
+
+	public Video findOne(long id) {
+		Entry e = snapshot.byId.get(id);
+		return (e != null) ? e.toVideo() : null;
+	}
+
+	/**
+	 * The videos with this title (e.g., Video.name), in id order.
+	 *
+	 * @param title
+	 * @return
+	 */
+	public List<Video> findByName(String title) {
+		return toVideos(snapshot.byName.get(title));
+	}
+
+	/**
+	 * The videos in this category, in id order. A category that doesn't
+	 * exist simply has no videos.
+	 *
+	 * @param category
+	 * @return
+	 */
+	public List<Video> findByCategoryName(String category) {
+		return toVideos(snapshot.byCategory.get(category));
+	}
+
+	public int size() {
+		return snapshot.byId.size();
+	}
+
+	private static List<Video> toVideos(Collection<Entry> entries) {
+		List<Video> list = new ArrayList<Video>(entries.size());
+		for (Entry e : entries) {
+			list.add(e.toVideo());
+		}
+		return list;
+	}
+
+}
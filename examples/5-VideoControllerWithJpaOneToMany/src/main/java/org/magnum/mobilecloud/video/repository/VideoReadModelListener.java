@@ -0,0 +1,59 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PostPersist;
+import javax.persistence.PostUpdate;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The JPA entity listener that keeps the VideoReadModel up to date. JPA
+ * calls it whenever a Video is inserted or updated, however the Video was
+ * saved (through VideoSvc, straight through the VideoRepository, or by any
+ * other code that uses JPA), and it hands the video to the read model,
+ * which adds it, along with the other videos saved in the same
+ * transaction, once the transaction has committed.
+ *
+ * JPA, not Spring, creates entity listeners, so the read models register
+ * themselves here. Each one is registered under the EntityManagerFactory
+ * that its videos are saved with, and the listener finds it through the
+ * factory that Spring has bound to the current transaction. That way two
+ * applications in the same JVM (e.g., two test contexts with databases of
+ * their own) never see each other's videos.
+ *
+ * @author jules
+ *
+ */
+public class VideoReadModelListener {
+
+	private static final ConcurrentMap<Object, VideoReadModel> readModels = new ConcurrentHashMap<Object, VideoReadModel>();
+
+	static void register(EntityManagerFactory factory, VideoReadModel readModel) {
+		readModels.put(factory, readModel);
+	}
+
+	static void unregister(EntityManagerFactory factory) {
+		readModels.remove(factory);
+	}
+
+	@PostPersist
+	@PostUpdate
+	public void saved(Video v) {
+		// Spring Data's repositories always save inside a transaction, so
+		// there is nothing to do if Spring isn't running one
+		if (readModels.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		for (Object resource : TransactionSynchronizationManager.getResourceMap().keySet()) {
+			VideoReadModel readModel = readModels.get(resource);
+			if (readModel != null) {
+				readModel.putAfterCommit(v);
+				return;
+			}
+		}
+	}
+
+}
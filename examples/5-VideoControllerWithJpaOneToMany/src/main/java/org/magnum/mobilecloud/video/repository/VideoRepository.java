@@ -1,7 +1,13 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -16,6 +22,34 @@ import org.springframework.stereotype.Repository;
 public interface VideoRepository extends CrudRepository<Video, Long>{
 
 	// Find all videos with a matching title (e.g., Video.name)
+	//
+	// The results are kept in Hibernate's query cache, which remembers the
+	// ids of the matching videos for each title. The videos themselves
+	// then come from the second-level cache. Hibernate throws away every
+	// cached result for the Video table as soon as a Video is saved, so a
+	// search never misses a video that was just added.
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByName(String title);
 	
+	// Keyset ("seek") queries for paging through the videos in id order.
+	// Each page starts right after the id of the last video on the page
+	// before, so the database jumps straight to the page using the index
+	// rather than counting past every earlier row like an OFFSET would.
+	// Only the first page of the Pageable is ever asked for; it just
+	// limits how many rows come back.
+	public List<Video> findByIdGreaterThanOrderByIdAsc(long id, Pageable page);
+
+	public List<Video> findByNameAndIdGreaterThanOrderByIdAsc(String title, long id, Pageable page);
+
+	// Find all videos within a given category, in id order.
+	//
+	// This is one statement: the videos are found through the index on
+	// their category column (see Video) and the fetch join fills in each
+	// video's Category from the same rows. Going through
+	// Category.getVideos() instead costs one query for the Category, one
+	// for its videos, and initializes the whole collection along the way.
+	// A category that doesn't exist simply has no videos.
+	@Query("select v from Video v join fetch v.category c where c.name = ?1 order by v.id")
+	public List<Video> findByCategoryName(String category);
+	
 }
@@ -0,0 +1,112 @@
+package org.magnum.mobilecloud.video.repositorywithoutonetomany;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-memory copy of the names of the Category2 objects in the
+ * CategoryRepository2, so that VideoSvc2 can check that a Video2's category
+ * exists without asking the database every time a video is added.
+ *
+ * The names are loaded when the application starts and VideoSvc2 adds each
+ * category that it saves. Checking a name is a lookup in a concurrent set,
+ * which never blocks.
+ *
+ * Other instances of the application may share the same database, so this
+ * copy can be out of date in two ways:
+ *
+ * 1. Another instance added a category. A name that isn't in the set is
+ *    always checked against the database before it is rejected, and
+ *    remembered if it is found there.
+ * 2. A category was removed from the database. The whole set is reloaded
+ *    once it is older than the refresh interval (set
+ *    "video.categories.refresh" in application.properties, in
+ *    milliseconds), so a removed category is forgotten within that time.
+ *
+ * @author jules
+ *
+ */
+@Component
+public class CategoryRegistry2 {
+
+	@Autowired
+	private CategoryRepository2 categories;
+
+	@Value("${video.categories.refresh:30000}")
+	private long refreshInterval = 30000;
+
+	// Replaced as a whole by refresh(), so readers either see the old set
+	// or the new one
+	private volatile Set<String> names = newNameSet();
+
+	private volatile long loadedAt;
+
+	// Makes sure that only one thread reloads the set at a time. The
+	// others keep using the old set in the meantime.
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	@PostConstruct
+	public void refresh() {
+		Set<String> loaded = newNameSet();
+		for (Category2 c : categories.findAll()) {
+			loaded.add(c.getName());
+		}
+		names = loaded;
+		loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns true if there is a Category2 with this name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public boolean exists(String name) {
+		if (name == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - loadedAt > refreshInterval
+				&& refreshing.compareAndSet(false, true)) {
+			try {
+				refresh();
+			} finally {
+				refreshing.set(false);
+			}
+		}
+		if (names.contains(name)) {
+			return true;
+		}
+		// Perhaps another instance of the application added it
+		if (categories.exists(name)) {
+			names.add(name);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remembers a Category2 that has just been saved.
+	 *
+	 * @param name
+	 */
+	public void add(String name) {
+		names.add(name);
+	}
+
+	public void setRefreshInterval(long refreshInterval) {
+		this.refreshInterval = refreshInterval;
+	}
+
+	private static Set<String> newNameSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.magnum.mobilecloud.controller.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.Category2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.CategoryRegistry2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.CategoryRepository2;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ *
+ * This test checks that CategoryRegistry2 answers from memory for the
+ * categories that it knows about, and goes back to a mock
+ * CategoryRepository2 for the ones that it doesn't (e.g., because another
+ * instance of the application added them) and when it is time to reload.
+ *
+ * @author jules
+ *
+ */
+public class CategoryRegistry2Test {
+
+	@Mock
+	private CategoryRepository2 categoryRepository;
+
+	@InjectMocks
+	private CategoryRegistry2 registry;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		when(categoryRepository.findAll()).thenReturn(Arrays.asList(category("Comedy")));
+		registry.setRefreshInterval(Long.MAX_VALUE);
+		registry.refresh();
+	}
+
+	@Test
+	public void testKnownCategoryNeedsNoQuery() {
+		for (int i = 0; i < 10; i++) {
+			assertTrue(registry.exists("Comedy"));
+		}
+		verify(categoryRepository, never()).exists("Comedy");
+		verify(categoryRepository, times(1)).findAll();
+	}
+
+	@Test
+	public void testAddedCategoryNeedsNoQuery() {
+		registry.add("Drama");
+
+		assertTrue(registry.exists("Drama"));
+		verify(categoryRepository, never()).exists("Drama");
+	}
+
+	@Test
+	public void testCategoryFromAnotherInstanceIsFound() {
+		when(categoryRepository.exists("Drama")).thenReturn(true);
+
+		assertTrue(registry.exists("Drama"));
+		assertTrue(registry.exists("Drama"));
+		// It is remembered after the first time
+		verify(categoryRepository, times(1)).exists("Drama");
+	}
+
+	@Test
+	public void testUnknownCategory() {
+		assertFalse(registry.exists("Horror"));
+		assertFalse(registry.exists(null));
+	}
+
+	@Test
+	public void testRemovedCategoryIsForgottenOnRefresh() {
+		when(categoryRepository.findAll()).thenReturn(new ArrayList<Category2>());
+		registry.setRefreshInterval(0);
+
+		// Make sure that the set is older than the interval
+		long start = System.currentTimeMillis();
+		while (System.currentTimeMillis() == start) {
+			Thread.yield();
+		}
+
+		assertFalse(registry.exists("Comedy"));
+	}
+
+	private Category2 category(String name) {
+		Category2 c = new Category2();
+		c.setName(name);
+		return c;
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.controller.VideoSvc2;
+import org.magnum.mobilecloud.video.repository.Category;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.Category2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.Video2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test checks that VideoSvc.getVideoListForCategory() loads a
+ * category's videos with a single statement, and that it returns the same
+ * videos as VideoSvc2.getVideoListForCategory(), which stores the category
+ * as a plain string.
+ *
+ * Hibernate's statistics count the statements that are sent to the
+ * database. They are turned on by the test rather than in
+ * application.properties.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoCategoryQueryTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoSvc2 videoService2;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics stats;
+
+	@Before
+	public void setUp() {
+		stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		stats.setStatisticsEnabled(true);
+	}
+
+	@Test
+	public void testCategoryListIsOneStatement() {
+		String category = addCategory();
+		for (int i = 0; i < 5; i++) {
+			addVideo(category);
+		}
+
+		long statements = stats.getPrepareStatementCount();
+
+		Collection<Video> found = videoService.getVideoListForCategory(category);
+
+		assertEquals(5, found.size());
+		for (Video v : found) {
+			assertEquals(category, v.getCategory().getName());
+		}
+		// The categories came back with the videos, so reading them
+		// didn't send anything else to the database
+		assertEquals(statements + 1, stats.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testCategoryListIsInIdOrder() {
+		String category = addCategory();
+		for (int i = 0; i < 5; i++) {
+			addVideo(category);
+		}
+
+		long last = -1;
+		for (Video v : videoService.getVideoListForCategory(category)) {
+			assertTrue(v.getId() > last);
+			last = v.getId();
+		}
+	}
+
+	@Test
+	public void testSameResultsAsVideoSvc2() {
+		String category = addCategory();
+		String other = addCategory();
+		for (int i = 0; i < 3; i++) {
+			addBoth(category);
+		}
+		addBoth(other);
+
+		assertEquals(videos2(category), videos(category));
+		assertEquals(videos2(other), videos(other));
+
+		String missing = "Category-" + UUID.randomUUID();
+		assertTrue(videoService.getVideoListForCategory(missing).isEmpty());
+		assertTrue(videoService2.getVideoListForCategory(missing).isEmpty());
+	}
+
+	private String addCategory() {
+		String name = "Category-" + UUID.randomUUID();
+		Category c = new Category();
+		c.setName(name);
+		videoService.addCategory(c);
+		Category2 c2 = new Category2();
+		c2.setName(name);
+		videoService2.addCategory(c2);
+		return name;
+	}
+
+	private Video addVideo(String category) {
+		Video v = TestData.randomVideo();
+		v.getCategory().setName(category);
+		videoService.addVideo(v);
+		return v;
+	}
+
+	private void addBoth(String category) {
+		Video v = addVideo(category);
+		Video2 v2 = new Video2(v.getName(), v.getUrl(), v.getDuration());
+		v2.setCategory(category);
+		videoService2.addVideo(v2);
+	}
+
+	// The two services return different classes, so they are compared by
+	// the values that make two videos equal
+	private Set<List<Object>> videos(String category) {
+		Set<List<Object>> values = new HashSet<List<Object>>();
+		for (Video v : videoService.getVideoListForCategory(category)) {
+			values.add(values(v.getName(), v.getUrl(), v.getDuration()));
+		}
+		return values;
+	}
+
+	private Set<List<Object>> videos2(String category) {
+		Set<List<Object>> values = new HashSet<List<Object>>();
+		for (Video2 v : videoService2.getVideoListForCategory(category)) {
+			values.add(values(v.getName(), v.getUrl(), v.getDuration()));
+		}
+		return values;
+	}
+
+	private List<Object> values(String name, String url, long duration) {
+		List<Object> values = new ArrayList<Object>();
+		values.add(name);
+		values.add(url);
+		values.add(duration);
+		return values;
+	}
+
+}
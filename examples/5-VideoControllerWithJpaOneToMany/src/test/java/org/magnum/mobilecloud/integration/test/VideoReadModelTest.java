@@ -0,0 +1,213 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Category;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoReadModel;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * This test runs the VideoSvc with its read model turned on and checks
+ * that the reads see every video that has been committed, however it was
+ * saved, without sending a single statement to the database.
+ *
+ * The "readmodel" profile
+ * (src/test/resources/application-readmodel.properties) turns on the read
+ * model and gives the test a database of its own.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("readmodel")
+public class VideoReadModelTest {
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private VideoReadModel readModel;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private Statistics stats;
+
+	@Before
+	public void setUp() {
+		stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		stats.setStatisticsEnabled(true);
+	}
+
+	@Test
+	public void testReadsComeFromMemory() {
+		String category = addCategory();
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < 3; i++) {
+			added.add(addVideo(category));
+		}
+
+		long statements = stats.getPrepareStatementCount();
+
+		assertTrue(videoService.getVideoList().containsAll(added));
+		assertEquals(added, videoService.getVideoListForCategory(category));
+		for (Video v : added) {
+			Collection<Video> found = videoService.findByTitle(v.getName());
+			assertEquals(1, found.size());
+			assertEquals(category, found.iterator().next().getCategory().getName());
+		}
+		assertTrue(videoService.getVideoListForCategory("Category-" + UUID.randomUUID()).isEmpty());
+
+		assertEquals(statements, stats.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testReadsAreInIdOrder() {
+		String category = addCategory();
+		for (int i = 0; i < 5; i++) {
+			addVideo(category);
+		}
+
+		long last = -1;
+		for (Video v : videoService.getVideoList()) {
+			assertTrue(v.getId() > last);
+			last = v.getId();
+		}
+	}
+
+	@Test
+	public void testReturnedVideosAreCopies() {
+		Video v = addVideo(addCategory());
+		String name = v.getName();
+
+		videoService.findByTitle(name).iterator().next().setName("changed");
+
+		assertEquals(1, videoService.findByTitle(name).size());
+		assertTrue(videoService.findByTitle("changed").isEmpty());
+	}
+
+	// The model hears about saves from JPA, so videos saved without going
+	// through the VideoSvc show up too, and so do changes to saved videos
+	@Test
+	public void testRepositoryWritesShowUp() {
+		String category = addCategory();
+		Video v = TestData.randomVideo();
+		v.getCategory().setName(category);
+		Video saved = videos.save(v);
+		assertEquals(1, videoService.findByTitle(v.getName()).size());
+
+		String oldName = saved.getName();
+		saved.setName("Renamed-" + UUID.randomUUID());
+		videos.save(saved);
+		assertTrue(videoService.findByTitle(oldName).isEmpty());
+		assertEquals(1, videoService.findByTitle(saved.getName()).size());
+
+		assertEquals(videos.count(), readModel.size());
+	}
+
+	// A video only goes into the model once its transaction has committed
+	@Test
+	public void testRolledBackWritesDontShowUp() {
+		String category = addCategory();
+		final Video v = TestData.randomVideo();
+		v.getCategory().setName(category);
+
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				videos.save(v);
+				// Not committed yet
+				assertTrue(videoService.findByTitle(v.getName()).isEmpty());
+				status.setRollbackOnly();
+			}
+		});
+
+		assertTrue(videoService.findByTitle(v.getName()).isEmpty());
+		assertEquals(videos.count(), readModel.size());
+	}
+
+	// All the videos saved in one transaction go into the model together
+	// when it commits, each as it was last saved
+	@Test
+	public void testTransactionWritesShowUpTogether() {
+		final String category = addCategory();
+		final List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < 50; i++) {
+			Video v = TestData.randomVideo();
+			v.getCategory().setName(category);
+			added.add(v);
+		}
+		final String oldName = added.get(0).getName();
+
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				videos.save(added);
+				added.get(0).setName("Renamed-" + UUID.randomUUID());
+				videos.save(added.get(0));
+				// Not committed yet
+				assertTrue(videoService.getVideoListForCategory(category).isEmpty());
+			}
+		});
+
+		assertEquals(added, videoService.getVideoListForCategory(category));
+		assertTrue(videoService.findByTitle(oldName).isEmpty());
+		assertEquals(1, videoService.findByTitle(added.get(0).getName()).size());
+		assertEquals(videos.count(), readModel.size());
+	}
+
+	private String addCategory() {
+		String name = "Category-" + UUID.randomUUID();
+		Category c = new Category();
+		c.setName(name);
+		videoService.addCategory(c);
+		return name;
+	}
+
+	private Video addVideo(String category) {
+		Video v = TestData.randomVideo();
+		v.getCategory().setName(category);
+		videoService.addVideo(v);
+		return v;
+	}
+
+}
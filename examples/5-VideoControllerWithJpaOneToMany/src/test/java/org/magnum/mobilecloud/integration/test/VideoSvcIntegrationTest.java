@@ -1,16 +1,23 @@
 package org.magnum.mobilecloud.integration.test;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.magnum.mobilecloud.video.Application;
 import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.VideoPage;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.controller.VideoSvc;
 import org.magnum.mobilecloud.video.repository.Video;
@@ -25,6 +32,8 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * 
  * This test shows how to fully setup and configuration a controller (or you could
@@ -60,6 +69,8 @@ public class VideoSvcIntegrationTest {
 	@Autowired
 	private VideoSvc videoService;
 
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
 	// This is the mock interface to our application that we will use to 
 	// send mock HTTP requests
 	private MockMvc mockMvc;
@@ -100,4 +111,47 @@ public class VideoSvcIntegrationTest {
 	            .andReturn();
 	}
 
+	// Paging through the videos with a matching title, two at a time,
+	// returns every match once and in the order that they were added
+	@Test
+	public void testFindByTitlePages() throws Exception {
+		String title = "Video-" + UUID.randomUUID();
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < 5; i++) {
+			Video v = new Video(title, "http://coursera.org/some/video-" + i, i + 1);
+			videoService.addVideo(v);
+			added.add(v);
+		}
+
+		List<Video> seen = new ArrayList<Video>();
+		String after = null;
+		int pages = 0;
+		do {
+			String json = mockMvc.perform(
+					get(VideoSvcApi.VIDEO_TITLE_SEARCH_PATH)
+					.param(VideoSvcApi.TITLE_PARAMETER, title)
+					.param(VideoSvcApi.LIMIT_PARAMETER, "2")
+					.param(VideoSvcApi.AFTER_PARAMETER, after == null ? "" : after))
+					.andExpect(status().isOk())
+					.andReturn().getResponse().getContentAsString();
+			VideoPage page = objectMapper.readValue(json, VideoPage.class);
+			seen.addAll(page.getVideos());
+			after = page.getNext();
+			pages++;
+		} while (after != null);
+
+		assertEquals(3, pages);
+		assertEquals(added, seen);
+
+		// The whole list can be paged through the same way
+		String json = mockMvc.perform(
+				get(VideoSvcApi.VIDEO_SVC_PATH)
+				.param(VideoSvcApi.LIMIT_PARAMETER, "2"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		VideoPage first = objectMapper.readValue(json, VideoPage.class);
+		assertEquals(2, first.getVideos().size());
+		assertNotNull(first.getNext());
+	}
+
 }
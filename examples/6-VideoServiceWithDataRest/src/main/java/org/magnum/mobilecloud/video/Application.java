@@ -1,5 +1,9 @@
 package org.magnum.mobilecloud.video;
 
+import java.util.Arrays;
+import java.util.List;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.json.ResourcesMapper;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.boot.SpringApplication;
@@ -8,9 +12,13 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 //Tell Spring to automatically inject any dependencies that are marked in
 //our classes with @Autowired
@@ -58,4 +66,27 @@ public class Application extends RepositoryRestMvcConfiguration {
 		return new ResourcesMapper();
 	}
 
+	// Lets clients ask for the compact format of the ResourcesMapper (a
+	// plain array of videos, without any links) by sending
+	// "Accept: application/x-compact+json". The converter is added after
+	// the ones from Spring Data Rest, so that clients that don't ask for
+	// it still get the usual format. Clients can also add "?compact" to
+	// the request instead (see ResourcesMapper).
+	@Override
+	protected void configureHttpMessageConverters(
+			List<HttpMessageConverter<?>> messageConverters){
+		MappingJackson2HttpMessageConverter compact = new MappingJackson2HttpMessageConverter();
+		compact.setObjectMapper(new ResourcesMapper(true));
+		compact.setSupportedMediaTypes(Arrays.asList(ResourcesMapper.COMPACT_JSON));
+		messageConverters.add(compact);
+
+		// Lets clients ask for either format in Smile, the binary form of
+		// JSON, by sending "Accept: application/x-jackson-smile" (see
+		// SmileConverter). It can also read videos that are sent as Smile.
+		MappingJackson2HttpMessageConverter smile = new MappingJackson2HttpMessageConverter();
+		smile.setObjectMapper(new ResourcesMapper(new SmileFactory(), false));
+		smile.setSupportedMediaTypes(Arrays.asList(MediaType.valueOf(VideoSvcApi.SMILE_MEDIA_TYPE)));
+		messageConverters.add(smile);
+	}
+
 }
@@ -0,0 +1,83 @@
+package org.magnum.mobilecloud.video.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+import retrofit.RequestInterceptor;
+import retrofit.converter.ConversionException;
+import retrofit.converter.Converter;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * A Retrofit Converter that sends and receives Smile, the binary form of
+ * JSON (see VideoSvcApi.SMILE_MEDIA_TYPE), instead of JSON text. A list
+ * of videos in Smile is smaller than the same list in JSON and takes far
+ * less CPU to parse, which matters most on a phone.
+ *
+ * It is also a RequestInterceptor that adds the Accept header that asks
+ * the service for Smile, so it is passed to the RestAdapter twice:
+ *
+ * SmileConverter smile = new SmileConverter();
+ * new RestAdapter.Builder()
+ *     .setEndpoint(url)
+ *     .setConverter(smile)
+ *     .setRequestInterceptor(smile)
+ *     .build()
+ *     .create(VideoSvcApi.class);
+ *
+ * A response that comes back as JSON anyway (e.g., from an older service)
+ * is read as JSON.
+ *
+ * @author jules
+ *
+ */
+public class SmileConverter implements Converter, RequestInterceptor {
+
+	private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+	private final ObjectMapper jsonMapper = new ObjectMapper();
+
+	@Override
+	public void intercept(RequestFacade request) {
+		request.addHeader("Accept", VideoSvcApi.SMILE_MEDIA_TYPE);
+	}
+
+	@Override
+	public Object fromBody(TypedInput body, Type type) throws ConversionException {
+		ObjectMapper mapper = isSmile(body.mimeType()) ? smileMapper : jsonMapper;
+		InputStream in = null;
+		try {
+			in = body.in();
+			return mapper.readValue(in, mapper.getTypeFactory().constructType(type));
+		} catch (IOException e) {
+			throw new ConversionException(e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	@Override
+	public TypedOutput toBody(Object object) {
+		try {
+			return new TypedByteArray(VideoSvcApi.SMILE_MEDIA_TYPE, smileMapper.writeValueAsBytes(object));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static boolean isSmile(String mimeType) {
+		return mimeType != null && mimeType.startsWith(VideoSvcApi.SMILE_MEDIA_TYPE);
+	}
+
+}
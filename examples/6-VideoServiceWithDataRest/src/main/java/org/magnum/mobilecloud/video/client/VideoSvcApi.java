@@ -15,6 +15,10 @@ import retrofit.http.Query;
  * interactions. The interface is annotated with Retrofit
  * annotations so that clients can automatically convert the
  * 
+ * Every endpoint that sends or receives JSON also speaks Smile, a binary
+ * form of JSON that is smaller and much cheaper to parse (see
+ * SMILE_MEDIA_TYPE). Clients opt in by building their RestAdapter with a
+ * SmileConverter, which asks for Smile and reads it.
  * 
  * @author jules
  *
@@ -25,6 +29,19 @@ public interface VideoSvcApi {
 	
 	public static final String DURATION_PARAMETER = "duration";
 
+	// The query parameters that pick the page of the videos to send back
+	// (starting at 0), how many videos are on a page, and how they are
+	// sorted (e.g., "duration,desc")
+	public static final String PAGE_PARAMETER = "page";
+
+	public static final String SIZE_PARAMETER = "size";
+
+	public static final String SORT_PARAMETER = "sort";
+
+	// The media type for Smile, the binary form of JSON, which can be
+	// asked for in place of JSON on any of the endpoints
+	public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
@@ -34,16 +51,34 @@ public interface VideoSvcApi {
 	// The path to search videos by title
 	public static final String VIDEO_DURATION_SEARCH_PATH = VIDEO_SVC_PATH + "/search/findByDurationLessThan";
 
+	// The lists of videos come back one page at a time. These methods
+	// without page parameters only get the first page. A page with fewer
+	// videos than its size is the last one. The sort can be null to leave
+	// the videos in the order that the database finds them in.
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
 	
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Video> getVideoList(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort);
+	
 	@POST(VIDEO_SVC_PATH)
 	public Void addVideo(@Body Video v);
 	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
 	
+	@GET(VIDEO_TITLE_SEARCH_PATH)
+	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title,
+			@Query(PAGE_PARAMETER) int page, @Query(SIZE_PARAMETER) int size,
+			@Query(SORT_PARAMETER) String sort);
+	
 	@GET(VIDEO_DURATION_SEARCH_PATH)
 	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) String title);
 	
+	@GET(VIDEO_DURATION_SEARCH_PATH)
+	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) long maxduration,
+			@Query(PAGE_PARAMETER) int page, @Query(SIZE_PARAMETER) int size,
+			@Query(SORT_PARAMETER) String sort);
+	
 }
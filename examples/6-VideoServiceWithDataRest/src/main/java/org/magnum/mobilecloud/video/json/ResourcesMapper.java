@@ -1,9 +1,20 @@
 package org.magnum.mobilecloud.video.json;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
@@ -70,11 +81,51 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
  * This alternate format allows us to directly unmarshall the HTTP response bodies from the VideoRepository
  * into a list of Video objects.
  * 
+ * Even this format still carries a "_links" object for every video, which
+ * is about as big as the video itself. Clients that only want the videos
+ * can ask for the compact format instead, either by adding the "compact"
+ * query parameter (e.g., /video?compact) or by sending
+ * "Accept: application/x-compact+json". The compact format is a plain
+ * array of the videos, with no links at all:
+ * 
+ * [
+    {
+        "id": 1,
+        "name": "Foo",
+        "url": null,
+        "duration": 100
+    }
+   ]
+ * 
+ * Either format can also be sent as Smile, the binary form of JSON, to
+ * clients that ask for it (see Application.configureHttpMessageConverters()).
+ * 
+ * In both formats, the serializer that Jackson finds for each class is kept
+ * in a map, so that it isn't looked up again for every video.
+ * 
  * @author jules
  *
  */
 public class ResourcesMapper extends ObjectMapper {
 
+	// The query parameter that asks for the compact format (e.g.,
+	// /video?compact or /video?compact=true)
+	public static final String COMPACT_PARAMETER = "compact";
+
+	// The media type that asks for the compact format in an Accept header
+	public static final String COMPACT_JSON_VALUE = "application/x-compact+json";
+
+	public static final MediaType COMPACT_JSON = MediaType.valueOf(COMPACT_JSON_VALUE);
+
+	// The serializers that have already been looked up, by the class that
+	// they serialize
+	private final ConcurrentMap<Class<?>, JsonSerializer<Object>> serializers = 
+			new ConcurrentHashMap<Class<?>, JsonSerializer<Object>>();
+
+	// True if this mapper always writes the compact format, no matter what
+	// the request asked for
+	private final boolean compact;
+
 	// This anonymous inner class will handle conversion of the Spring Data Rest
 	// Resources objects into JSON. Resources are objects that Spring Data Rest
 	// creates with the Videos it obtains from your VideoRepository
@@ -94,21 +145,81 @@ public class ResourcesMapper extends ObjectMapper {
 				JsonProcessingException {
 			// Extracted the actual data inside of the Resources object
 			// that we care about (e.g., the list of Video objects)
-			Object content = value.getContent();
-			// Instead of all of the Resources member variables, etc.
-			// Just mashall the actual content (Videos) into the JSON
-			JsonSerializer<Object> s = provider.findValueSerializer(
-					content.getClass(), null);
-			s.serialize(content, jgen, provider);
+			Collection<?> content = value.getContent();
+			if (compact || isCompactRequested()) {
+				writeCompact(content, jgen, provider);
+			} else {
+				// Instead of all of the Resources member variables, etc.
+				// Just mashall the actual content (Videos) into the JSON
+				serializerFor(content.getClass(), provider).serialize(content, jgen, provider);
+			}
 		}
 	};
 	
 	// Create an ObjectMapper and tell it to use our customer serializer
 	// to convert Resources objects into JSON
 	public ResourcesMapper() {
+		this(false);
+	}
+
+	// Create an ObjectMapper that always writes the compact format (see
+	// Application.configureHttpMessageConverters())
+	public ResourcesMapper(boolean compact) {
+		this(new JsonFactory(), compact);
+	}
+
+	// Create an ObjectMapper that writes the same objects with another
+	// JsonFactory (e.g., a SmileFactory, to write Smile rather than JSON)
+	public ResourcesMapper(JsonFactory factory, boolean compact) {
+		super(factory);
+		this.compact = compact;
 		SimpleModule module = new SimpleModule();
 		module.addSerializer(serializer);
 		registerModule(module);
 	}
 
+	// Writes just the objects inside of each Resource (e.g., the Videos),
+	// leaving out their links
+	private void writeCompact(Collection<?> content, JsonGenerator jgen,
+			SerializerProvider provider) throws IOException {
+		jgen.writeStartArray();
+		for (Object item : content) {
+			if (item instanceof Resource) {
+				item = ((Resource<?>) item).getContent();
+			}
+			if (item == null) {
+				jgen.writeNull();
+			} else {
+				serializerFor(item.getClass(), provider).serialize(item, jgen, provider);
+			}
+		}
+		jgen.writeEndArray();
+	}
+
+	private JsonSerializer<Object> serializerFor(Class<?> type,
+			SerializerProvider provider) throws IOException {
+		JsonSerializer<Object> s = serializers.get(type);
+		if (s == null) {
+			s = provider.findValueSerializer(type, null);
+			serializers.putIfAbsent(type, s);
+		}
+		return s;
+	}
+
+	// Looks at the request that is being answered, if there is one, to see
+	// if the client asked for the compact format
+	private static boolean isCompactRequested() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes)) {
+			return false;
+		}
+		HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+		String flag = request.getParameter(COMPACT_PARAMETER);
+		if (flag != null) {
+			return !"false".equalsIgnoreCase(flag);
+		}
+		String accept = request.getHeader("Accept");
+		return accept != null && accept.contains(COMPACT_JSON_VALUE);
+	}
+
 }
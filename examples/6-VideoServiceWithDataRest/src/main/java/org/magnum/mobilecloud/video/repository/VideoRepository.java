@@ -1,9 +1,9 @@
 package org.magnum.mobilecloud.video.repository;
 
-import java.util.Collection;
-
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
@@ -11,6 +11,14 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
  * An interface for a repository that can store Video
  * objects and allow them to be searched by title.
  * 
+ * Because it is a PagingAndSortingRepository, Spring Data Rest answers
+ * /video and the searches below one page at a time. The page, its size,
+ * and the order of the videos are picked with the "page", "size" and
+ * "sort" query parameters (e.g.,
+ * /video/search/findByDurationLessThan?duration=60000&page=0&size=20&sort=duration,desc).
+ * A request without them gets the first page of 20 videos, and no request
+ * gets more than 1000 videos at once.
+ * 
  * @author jules
  *
  */
@@ -26,21 +34,25 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 //    (e.g., /video/search/findByName?title=Foo)
 //
 @RepositoryRestResource(path = VideoSvcApi.VIDEO_SVC_PATH)
-public interface VideoRepository extends CrudRepository<Video, Long>{
+public interface VideoRepository extends PagingAndSortingRepository<Video, Long>{
 
 	// Find all videos with a matching title (e.g., Video.name)
-	public Collection<Video> findByName(
+	public Page<Video> findByName(
 			// The @Param annotation tells Spring Data Rest which HTTP request
 			// parameter it should use to fill in the "title" variable used to
 			// search for Videos
-			@Param(VideoSvcApi.TITLE_PARAMETER) String title);
+			@Param(VideoSvcApi.TITLE_PARAMETER) String title,
+			// Spring Data Rest fills in the Pageable from the "page", "size"
+			// and "sort" request parameters
+			Pageable pageable);
 	
 	// Find all videos that are shorter than a specified duration
-	public Collection<Video> findByDurationLessThan(
+	public Page<Video> findByDurationLessThan(
 			// The @Param annotation tells tells Spring Data Rest which HTTP request
 			// parameter it should use to fill in the "duration" variable used to
 			// search for Videos
-			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration);
+			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration,
+			Pageable pageable);
 	
 	/*
 	 * See: http://docs.spring.io/spring-data/jpa/docs/1.3.0.RELEASE/reference/html/jpa.repositories.html 
@@ -38,6 +38,8 @@ public class VideoSvcClientApiTest {
 
 	private final String TEST_URL = "http://localhost:8080";
 
+	private static final int PAGE_SIZE = 5;
+
 	private VideoSvcApi videoService = new RestAdapter.Builder()
 			.setEndpoint(TEST_URL).setLogLevel(LogLevel.FULL).build()
 			.create(VideoSvcApi.class);
@@ -57,9 +59,40 @@ public class VideoSvcClientApiTest {
 		// Add the video
 		videoService.addVideo(video);
 		
-		// We should get back the video that we added above
-		Collection<Video> videos = videoService.getVideoList();
-		assertTrue(videos.contains(video));
+		// We should get back the video that we added above, on one of
+		// the pages of the list
+		boolean found = false;
+		Collection<Video> videos;
+		int page = 0;
+		do {
+			videos = videoService.getVideoList(page++, PAGE_SIZE, null);
+			found = videos.contains(video);
+		} while (!found && videos.size() == PAGE_SIZE);
+		assertTrue(found);
+	}
+
+	/**
+	 * This test adds enough videos to fill more than one page, and then
+	 * checks that a search for a range of durations only sends back one
+	 * page, sorted the way it was asked for.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDurationSearchIsPagedAndSorted() throws Exception {
+		for (int i = 0; i <= PAGE_SIZE; i++) {
+			videoService.addVideo(TestData.randomVideo());
+		}
+
+		Collection<Video> videos = videoService.findByDurationLessThan(
+				Long.MAX_VALUE, 0, PAGE_SIZE, VideoSvcApi.DURATION_PARAMETER + ",desc");
+		assertEquals(PAGE_SIZE, videos.size());
+
+		long last = Long.MAX_VALUE;
+		for (Video v : videos) {
+			assertTrue(v.getDuration() <= last);
+			last = v.getDuration();
+		}
 	}
 
 }
@@ -0,0 +1,109 @@
+package org.magnum.mobilecloud.json.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.SmileConverter;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.json.ResourcesMapper;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import retrofit.mime.TypedByteArray;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ *
+ * This test converts the same Resources to JSON with the ResourcesMapper
+ * in its usual format and in its compact format, and checks that the
+ * compact format has the same videos without their links, and that a
+ * request can ask for it with a query parameter or an Accept header.
+ * It also checks that the compact format written as Smile can be read by
+ * the SmileConverter that Retrofit clients use.
+ *
+ * @author jules
+ *
+ */
+public class ResourcesMapperTest {
+
+	private Video[] videos;
+
+	private Resources<Resource<Video>> resources;
+
+	@Before
+	public void setUp() {
+		videos = new Video[10];
+		List<Resource<Video>> content = new ArrayList<Resource<Video>>();
+		for (int i = 0; i < videos.length; i++) {
+			videos[i] = TestData.randomVideo();
+			videos[i].setId(i + 1);
+			content.add(new Resource<Video>(videos[i],
+					new Link("http://localhost:8080/video/" + (i + 1))));
+		}
+		resources = new Resources<Resource<Video>>(content,
+				new Link("http://localhost:8080/video"));
+	}
+
+	@After
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void testCompactHasNoLinks() throws Exception {
+		String full = new ResourcesMapper().writeValueAsString(resources);
+		String compact = new ResourcesMapper(true).writeValueAsString(resources);
+
+		assertTrue(full.contains("http://localhost:8080/video/1"));
+		assertFalse(compact.contains("http://localhost:8080/video/1"));
+		assertTrue(compact.length() < full.length());
+
+		Video[] read = new ResourcesMapper().readValue(compact, Video[].class);
+		assertArrayEquals(videos, read);
+	}
+
+	@Test
+	public void testCompactQueryParameter() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/video");
+		request.setParameter(ResourcesMapper.COMPACT_PARAMETER, "");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		assertFalse(new ResourcesMapper().writeValueAsString(resources).contains("/video/1"));
+
+		request.setParameter(ResourcesMapper.COMPACT_PARAMETER, "false");
+		assertTrue(new ResourcesMapper().writeValueAsString(resources).contains("/video/1"));
+	}
+
+	@Test
+	public void testCompactAcceptHeader() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/video");
+		request.addHeader("Accept", ResourcesMapper.COMPACT_JSON_VALUE);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		assertFalse(new ResourcesMapper().writeValueAsString(resources).contains("/video/1"));
+	}
+
+	@Test
+	public void testCompactSmile() throws Exception {
+		byte[] smile = new ResourcesMapper(new SmileFactory(), true).writeValueAsBytes(resources);
+		String json = new ResourcesMapper(true).writeValueAsString(resources);
+		assertTrue(smile.length < json.getBytes("UTF-8").length);
+
+		Video[] read = (Video[]) new SmileConverter().fromBody(
+				new TypedByteArray(VideoSvcApi.SMILE_MEDIA_TYPE, smile), Video[].class);
+		assertArrayEquals(videos, read);
+	}
+
+}
@@ -1,6 +1,8 @@
 package org.magnum.mobilecloud.video;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.catalina.connector.Connector;
 import org.apache.coyote.http11.Http11NioProtocol;
@@ -18,6 +20,8 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -41,6 +45,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @ComponentScan
 public class Application extends RepositoryRestMvcConfiguration {
 
+	// Forward secret suites (ECDHE) with AES-GCM first, then the CBC ones
+	// that older Android versions need. All of them work with the RSA key
+	// in the sample keystore.
+	private static final String DEFAULT_CIPHERS =
+			"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,"
+			+ "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384,"
+			+ "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256,"
+			+ "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA,"
+			+ "TLS_RSA_WITH_AES_128_GCM_SHA256,"
+			+ "TLS_RSA_WITH_AES_128_CBC_SHA";
+
 	// The app now requires that you pass the location of the keystore and
 	// the password for your private key that you would like to setup HTTPS
 	// with. In Eclipse, you can set these options by going to:
@@ -75,6 +90,21 @@ public class Application extends RepositoryRestMvcConfiguration {
 		return new ResourcesMapper();
 	}
 
+	// Lets clients ask for the compact format of the ResourcesMapper (a
+	// plain array of videos, without any links) by sending
+	// "Accept: application/x-compact+json". The converter is added after
+	// the ones from Spring Data Rest, so that clients that don't ask for
+	// it still get the usual format. Clients can also add "?compact" to
+	// the request instead (see ResourcesMapper).
+	@Override
+	protected void configureHttpMessageConverters(
+			List<HttpMessageConverter<?>> messageConverters) {
+		MappingJackson2HttpMessageConverter compact = new MappingJackson2HttpMessageConverter();
+		compact.setObjectMapper(new ResourcesMapper(true));
+		compact.setSupportedMediaTypes(Arrays.asList(ResourcesMapper.COMPACT_JSON));
+		messageConverters.add(compact);
+	}
+
 	// This version uses the Tomcat web container and configures it to
 	// support HTTPS. The code below performs the configuration of Tomcat
 	// for HTTPS. Each web container has a different API for configuring
@@ -97,10 +127,37 @@ public class Application extends RepositoryRestMvcConfiguration {
 	//
 	// http://tomcat.apache.org/tomcat-7.0-doc/ssl-howto.html
 	//
+	// The TLS settings below are there to make reconnecting cheap for
+	// mobile clients, which drop their connections all the time. They can
+	// be changed with properties, e.g., -Dhttps.session-timeout=600:
+	//
+	// https.protocols - the versions of TLS that clients may use
+	// https.ciphers - the cipher suites that clients may use, in order of
+	//    preference. Suites that the JVM doesn't know are skipped.
+	// https.server-cipher-order - whether the server picks the first suite
+	//    in its own list that the client supports, rather than the client
+	//    picking. This needs Tomcat 7.0.58 or later and Java 8; older
+	//    versions log a warning and ignore it.
+	// https.session-cache-size and https.session-timeout (seconds) - how
+	//    many TLS sessions the server remembers, and for how long. A client
+	//    that reconnects within the timeout resumes its session with an
+	//    abbreviated handshake, which skips the expensive RSA operation.
+	// https.keep-alive-timeout (milliseconds) and
+	//    https.max-keep-alive-requests - how long an idle connection is
+	//    kept open, and how many requests it may carry, so that a client
+	//    that is still around doesn't have to reconnect at all.
+	//
 	@Bean
 	EmbeddedServletContainerCustomizer containerCustomizer(
 			@Value("${keystore.file}") String keystoreFile,
-			@Value("${keystore.pass}") final String keystorePass)
+			@Value("${keystore.pass}") final String keystorePass,
+			@Value("${https.protocols:TLSv1.2,TLSv1.1,TLSv1}") final String protocols,
+			@Value("${https.ciphers:" + DEFAULT_CIPHERS + "}") final String ciphers,
+			@Value("${https.server-cipher-order:true}") final boolean serverCipherOrder,
+			@Value("${https.session-cache-size:10000}") final int sessionCacheSize,
+			@Value("${https.session-timeout:3600}") final int sessionTimeout,
+			@Value("${https.keep-alive-timeout:60000}") final int keepAliveTimeout,
+			@Value("${https.max-keep-alive-requests:1000}") final int maxKeepAliveRequests)
 			throws Exception {
 
 		
@@ -133,6 +190,14 @@ public class Application extends RepositoryRestMvcConfiguration {
 						proto.setKeystoreType("JKS");
 						proto.setKeyAlias("tomcat");
 
+						proto.setSslEnabledProtocols(protocols);
+						proto.setCiphers(ciphers);
+						connector.setAttribute("useServerCipherSuitesOrder",
+								String.valueOf(serverCipherOrder));
+						proto.setSessionCacheSize(String.valueOf(sessionCacheSize));
+						proto.setSessionTimeout(String.valueOf(sessionTimeout));
+						proto.setKeepAliveTimeout(keepAliveTimeout);
+						proto.setMaxKeepAliveRequests(maxKeepAliveRequests);
 					}
 				});
 			}
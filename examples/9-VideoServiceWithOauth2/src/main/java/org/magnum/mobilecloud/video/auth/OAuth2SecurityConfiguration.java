@@ -55,6 +55,17 @@ import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 @Configuration
 public class OAuth2SecurityConfiguration {
 
+	// Forward secret suites (ECDHE) with AES-GCM first, then the CBC ones
+	// that older Android versions need. All of them work with the RSA key
+	// in the sample keystore.
+	private static final String DEFAULT_CIPHERS =
+			"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256,"
+			+ "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384,"
+			+ "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256,"
+			+ "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA,"
+			+ "TLS_RSA_WITH_AES_128_GCM_SHA256,"
+			+ "TLS_RSA_WITH_AES_128_CBC_SHA";
+
 	// This first section of the configuration just makes sure that Spring Security picks
 	// up the UserDetailsService that we create below. 
 	@Configuration
@@ -241,10 +252,37 @@ public class OAuth2SecurityConfiguration {
 	//
 	//       http://tomcat.apache.org/tomcat-7.0-doc/ssl-howto.html
 	//
+	// The TLS settings below are there to make reconnecting cheap for
+	// mobile clients, which drop their connections all the time. They can
+	// be changed with properties, e.g., -Dhttps.session-timeout=600:
+	//
+	//    https.protocols - the versions of TLS that clients may use
+	//    https.ciphers - the cipher suites that clients may use, in order of
+	//       preference. Suites that the JVM doesn't know are skipped.
+	//    https.server-cipher-order - whether the server picks the first suite
+	//       in its own list that the client supports, rather than the client
+	//       picking. This needs Tomcat 7.0.58 or later and Java 8; older
+	//       versions log a warning and ignore it.
+	//    https.session-cache-size and https.session-timeout (seconds) - how
+	//       many TLS sessions the server remembers, and for how long. A client
+	//       that reconnects within the timeout resumes its session with an
+	//       abbreviated handshake, which skips the expensive RSA operation.
+	//    https.keep-alive-timeout (milliseconds) and
+	//       https.max-keep-alive-requests - how long an idle connection is
+	//       kept open, and how many requests it may carry, so that a client
+	//       that is still around doesn't have to reconnect at all.
+	//
     @Bean
     EmbeddedServletContainerCustomizer containerCustomizer(
             @Value("${keystore.file:src/main/resources/private/keystore}") String keystoreFile,
-            @Value("${keystore.pass:changeit}") final String keystorePass) throws Exception {
+            @Value("${keystore.pass:changeit}") final String keystorePass,
+            @Value("${https.protocols:TLSv1.2,TLSv1.1,TLSv1}") final String protocols,
+            @Value("${https.ciphers:" + DEFAULT_CIPHERS + "}") final String ciphers,
+            @Value("${https.server-cipher-order:true}") final boolean serverCipherOrder,
+            @Value("${https.session-cache-size:10000}") final int sessionCacheSize,
+            @Value("${https.session-timeout:3600}") final int sessionTimeout,
+            @Value("${https.keep-alive-timeout:60000}") final int keepAliveTimeout,
+            @Value("${https.max-keep-alive-requests:1000}") final int maxKeepAliveRequests) throws Exception {
 
 		// If you were going to reuse this class in another
 		// application, this is one of the key sections that you
@@ -271,6 +309,14 @@ public class OAuth2SecurityConfiguration {
 			                        proto.setKeystorePass(keystorePass);
 			                        proto.setKeystoreType("JKS");
 			                        proto.setKeyAlias("tomcat");
+
+			                        proto.setSslEnabledProtocols(protocols);
+			                        proto.setCiphers(ciphers);
+			                        connector.setAttribute("useServerCipherSuitesOrder", String.valueOf(serverCipherOrder));
+			                        proto.setSessionCacheSize(String.valueOf(sessionCacheSize));
+			                        proto.setSessionTimeout(String.valueOf(sessionTimeout));
+			                        proto.setKeepAliveTimeout(keepAliveTimeout);
+			                        proto.setMaxKeepAliveRequests(maxKeepAliveRequests);
 								}
 		                    });
 		    
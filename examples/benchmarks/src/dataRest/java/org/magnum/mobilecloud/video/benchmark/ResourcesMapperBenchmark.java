@@ -0,0 +1,89 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.json.ResourcesMapper;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+
+/**
+ * Compares the two formats that the ResourcesMapper in
+ * 6-VideoServiceWithDataRest can write a list of videos in: the usual one,
+ * with links for every video (format=links), and the compact one, which is
+ * a plain array of the videos (format=compact).
+ *
+ * The benchmark measures how many lists per second each format can write.
+ * The size of a list in each format is printed when the trial starts, so
+ * that the two can be compared too.
+ *
+ * The videos are wrapped in Resources and Resource objects, with the same
+ * links that Spring Data Rest gives them, but no server is started.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourcesMapperBenchmark {
+
+	@Param({ "links", "compact" })
+	public String format;
+
+	@Param({ "10", "100", "1000" })
+	public int catalogSize;
+
+	private ResourcesMapper mapper;
+
+	private Resources<Resource<Video>> resources;
+
+	private ByteArrayOutputStream out;
+
+	@Setup(Level.Trial)
+	public void buildList() throws IOException {
+		mapper = new ResourcesMapper("compact".equals(format));
+
+		List<Resource<Video>> content = new ArrayList<Resource<Video>>();
+		for (int i = 1; i <= catalogSize; i++) {
+			Video v = TestData.randomVideo();
+			v.setId(i);
+			content.add(new Resource<Video>(v, new Link("http://localhost:8080/video/" + i)));
+		}
+		resources = new Resources<Resource<Video>>(content, new Link("http://localhost:8080/video"));
+
+		out = new ByteArrayOutputStream();
+		int bytes = write();
+		System.out.println(catalogSize + " videos in the " + format + " format: " + bytes + " bytes ("
+				+ (bytes / catalogSize) + " per video)");
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		out.reset();
+		mapper.writeValue(out, resources);
+		return out.size();
+	}
+
+}
@@ -0,0 +1,169 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.io.IOUtils;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Measures what it costs a client of 7-VideoServiceWithHttps to reconnect,
+ * as a phone does every time its connection drops, with TLS session
+ * resumption (resumption=on) and without it (resumption=off).
+ *
+ * handshake() opens a connection, does the TLS handshake and closes the
+ * connection again, so its throughput is handshakes per second.
+ * getVideoList() opens a connection and sends a GET for the list of videos
+ * over it, and is measured as the latency of each request (the JMH output
+ * includes the 99th percentile).
+ *
+ * The example's real Application is started with its HTTPS connector on
+ * port 8443 and the sample keystore. With resumption on, the client offers
+ * the server the session from its last connection, which the server finds
+ * in its session cache (see https.session-cache-size), so the handshake is
+ * abbreviated. With it off, the client throws each session away, as if the
+ * server had forgotten it, so every handshake is a full one. Whether the
+ * sessions really are resumed is printed when the trial starts.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HttpsHandshakeBenchmark {
+
+	private static final String KEYSTORE = "../7-VideoServiceWithHttps/src/main/resources/private/keystore";
+
+	private static final String HOST = "localhost";
+
+	private static final int PORT = 8443;
+
+	private static final int CATALOG_SIZE = 100;
+
+	@Param({ "on", "off" })
+	public String resumption;
+
+	private ConfigurableApplicationContext context;
+
+	private SSLSocketFactory sockets;
+
+	private byte[] request;
+
+	@Setup(Level.Trial)
+	public void startServer() throws Exception {
+		context = BenchmarkContexts.startServer(Application.class,
+				"--keystore.file=" + KEYSTORE, "--keystore.pass=changeit");
+
+		VideoRepository videos = context.getBean(VideoRepository.class);
+		for (int i = 0; i < CATALOG_SIZE; i++) {
+			videos.save(TestData.randomVideo());
+		}
+
+		// The sample keystore has a self-signed certificate, so the client
+		// has to trust any certificate (see UnsafeHttpsClient in the
+		// example's tests). Never do this outside of a test!
+		SSLContext tls = SSLContext.getInstance("TLS");
+		tls.init(null, new TrustManager[] { new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		} }, null);
+		sockets = tls.getSocketFactory();
+
+		request = ("GET " + VideoSvcApi.VIDEO_SVC_PATH + " HTTP/1.1\r\n"
+				+ "Host: " + HOST + ":" + PORT + "\r\n"
+				+ "Accept: application/json\r\n"
+				+ "Connection: close\r\n\r\n").getBytes("US-ASCII");
+
+		SSLSession first = handshake();
+		SSLSession second = handshake();
+		System.out.println("resumption=" + resumption + ": "
+				+ (Arrays.equals(first.getId(), second.getId())
+						? "the second connection resumed the first one's session"
+						: "the second connection did a full handshake")
+				+ " (" + second.getProtocol() + ", " + second.getCipherSuite() + ")");
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public SSLSession handshake() throws IOException {
+		SSLSocket socket = (SSLSocket) sockets.createSocket(HOST, PORT);
+		try {
+			socket.startHandshake();
+			return done(socket.getSession());
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int getVideoList() throws IOException {
+		SSLSocket socket = (SSLSocket) sockets.createSocket(HOST, PORT);
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(request);
+			out.flush();
+			int bytes = IOUtils.toByteArray(socket.getInputStream()).length;
+			done(socket.getSession());
+			return bytes;
+		} finally {
+			socket.close();
+		}
+	}
+
+	// Without resumption, the client forgets every session once it is done
+	// with it, so that the next connection can't offer it to the server
+	private SSLSession done(SSLSession session) {
+		if ("off".equals(resumption)) {
+			session.invalidate();
+		}
+		return session;
+	}
+
+}
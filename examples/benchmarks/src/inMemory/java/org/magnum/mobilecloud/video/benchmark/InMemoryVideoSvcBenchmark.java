@@ -0,0 +1,104 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.AllowsDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Benchmarks the in-memory VideoSvc from 4-VideoControllerWithDependencyInjection,
+ * which keeps its videos in a CopyOnWriteArrayList (AllowsDuplicatesVideoRepository)
+ * or in a set plus a CopyOnWriteArrayList (NoDuplicatesVideoRepository).
+ * 
+ * The catalog is filled with catalogSize videos from TestData.randomVideo()
+ * before every measurement iteration.
+ * 
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InMemoryVideoSvcBenchmark {
+
+	private static final int ADD_BATCH = 100;
+
+	@Param({ "100", "1000", "10000" })
+	public int catalogSize;
+
+	@Param({ "allowsDuplicates", "noDuplicates" })
+	public String repository;
+
+	private VideoSvc videoSvc;
+
+	private Video[] templates;
+
+	private int next;
+
+	@Setup(Level.Iteration)
+	public void loadCatalog() {
+		VideoRepository videos = "noDuplicates".equals(repository)
+				? new NoDuplicatesVideoRepository()
+				: new AllowsDuplicatesVideoRepository();
+
+		// The VideoSvc normally has its repository injected by Spring
+		videoSvc = new VideoSvc();
+		ReflectionTestUtils.setField(videoSvc, "videos", videos);
+
+		templates = new Video[catalogSize];
+		for (int i = 0; i < catalogSize; i++) {
+			templates[i] = TestData.randomVideo();
+			videoSvc.addVideo(templates[i]);
+		}
+	}
+
+	// Adding videos makes the catalog grow, so rather than adding videos
+	// for as long as an iteration lasts, each iteration adds one batch of
+	// ADD_BATCH videos to a freshly loaded catalog and reports the time
+	// for the whole batch.
+	//
+	// Every added video is new, so that NoDuplicatesVideoRepository does
+	// not get to skip them
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = ADD_BATCH)
+	@Measurement(iterations = 20, batchSize = ADD_BATCH)
+	public boolean addVideo() {
+		Video template = templates[next++ % templates.length];
+		return videoSvc.addVideo(new Video(template.getName() + "-" + next,
+				template.getUrl(), template.getDuration()));
+	}
+
+	@Benchmark
+	public Collection<Video> getVideoList() {
+		return videoSvc.getVideoList();
+	}
+
+	// Looks up the title of a video that is in the catalog
+	@Benchmark
+	public Collection<Video> findByTitle() {
+		return videoSvc.findByTitle(templates[next++ % templates.length].getName());
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import javax.persistence.MappedSuperclass;
+
+import org.magnum.mobilecloud.video.repository.Video;
+
+/**
+ * The columns of a Video, without its title search index, for the two
+ * entities that JpaVideoInsertBenchmark uses to compare id generators:
+ * IdentityIdVideo and SequenceIdVideo. They differ only in where their ids
+ * come from, so any difference in how fast they are inserted is down to
+ * that.
+ *
+ * They are found by Spring Boot's entity scan, which covers the packages
+ * below 5-VideoControllerWithJpa's Application, so their tables only exist
+ * when the benchmarks run.
+ *
+ * @author jules
+ *
+ */
+@MappedSuperclass
+public abstract class BaselineVideo {
+
+	private String name;
+	private String url;
+	private long duration;
+
+	protected BaselineVideo() {
+	}
+
+	protected BaselineVideo(Video v) {
+		this.name = v.getName();
+		this.url = v.getUrl();
+		this.duration = v.getDuration();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+}
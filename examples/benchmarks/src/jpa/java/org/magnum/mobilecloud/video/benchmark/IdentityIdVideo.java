@@ -0,0 +1,38 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.magnum.mobilecloud.video.repository.Video;
+
+/**
+ * A video whose id comes from an identity column, as Video's did before it
+ * switched to a sequence. Hibernate has to insert each row on its own to
+ * learn its id, so these inserts are never sent in JDBC batches.
+ *
+ * @author jules
+ *
+ */
+@Entity
+@Table(name = "identity_id_video")
+public class IdentityIdVideo extends BaselineVideo {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private long id;
+
+	public IdentityIdVideo() {
+	}
+
+	public IdentityIdVideo(Video v) {
+		super(v);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+}
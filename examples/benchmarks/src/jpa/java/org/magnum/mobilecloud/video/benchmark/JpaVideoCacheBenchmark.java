@@ -0,0 +1,147 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares reads from the JPA VideoSvc in 5-VideoControllerWithJpa with
+ * Hibernate's second-level cache and query cache turned on (as they are in
+ * the example's application.properties) and turned off.
+ * 
+ * findByTitle() and findOne() only read. The readHeavy group has seven
+ * threads searching by title while one thread keeps adding videos, which
+ * shows what the query cache is worth when every save throws away the
+ * cached search results.
+ * 
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JpaVideoCacheBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int catalogSize;
+
+	@Param({ "true", "false" })
+	public boolean cache;
+
+	private ConfigurableApplicationContext context;
+
+	private VideoSvc videoSvc;
+
+	private VideoRepository videos;
+
+	private JdbcTemplate jdbc;
+
+	private Cache secondLevelCache;
+
+	private String[] titles;
+
+	private long[] ids;
+
+	@Setup(Level.Trial)
+	public void startApplication() {
+		context = BenchmarkContexts.start(Application.class,
+				"--spring.jpa.properties.hibernate.cache.use_second_level_cache=" + cache,
+				"--spring.jpa.properties.hibernate.cache.use_query_cache=" + cache);
+		videoSvc = context.getBean(VideoSvc.class);
+		videos = context.getBean(VideoRepository.class);
+		jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+		secondLevelCache = context.getBean(EntityManagerFactory.class)
+				.unwrap(SessionFactory.class).getCache();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void loadCatalog() {
+		// Hibernate can't see a delete that is made with plain JDBC, so
+		// the caches have to be emptied by hand. The title search index
+		// refers to the videos, so it goes first.
+		jdbc.update("delete from video_title_term");
+		jdbc.update("delete from video");
+		secondLevelCache.evictEntityRegions();
+		secondLevelCache.evictQueryRegions();
+
+		List<Video> catalog = new ArrayList<Video>();
+		for (int i = 0; i < catalogSize; i++) {
+			catalog.add(TestData.randomVideo());
+		}
+		titles = new String[catalogSize];
+		ids = new long[catalogSize];
+		int i = 0;
+		for (Video v : videos.save(catalog)) {
+			titles[i] = v.getName();
+			ids[i] = v.getId();
+			i++;
+		}
+	}
+
+	@Benchmark
+	public Collection<Video> findByTitle() {
+		return videoSvc.findByTitle(titles[random()]);
+	}
+
+	@Benchmark
+	public Video findOne() {
+		return videos.findOne(ids[random()]);
+	}
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(7)
+	public Collection<Video> readHeavySearch() {
+		return videoSvc.findByTitle(titles[random()]);
+	}
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(1)
+	public boolean readHeavyAdd() {
+		return videoSvc.addVideo(TestData.randomVideo());
+	}
+
+	private int random() {
+		return ThreadLocalRandom.current().nextInt(catalogSize);
+	}
+
+}
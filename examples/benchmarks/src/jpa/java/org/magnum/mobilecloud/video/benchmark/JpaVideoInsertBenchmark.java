@@ -0,0 +1,162 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Measures how many videos per second can be inserted into the H2
+ * database of 5-VideoControllerWithJpa, by saving lists of BATCH videos
+ * with VideoRepository.save(Iterable) and with saveInBatches().
+ *
+ * The batchSize param sets hibernate.jdbc.batch_size. With a batch size of
+ * 1 every insert is its own statement, as it was when Video ids came from
+ * an identity column.
+ *
+ * saveIdentityIds() and saveSequenceIds() are the baseline for the switch
+ * from identity ids to the sequence. They save the same batches, in one
+ * transaction with the same flushes as saveInBatches(), as IdentityIdVideo
+ * and SequenceIdVideo, which have the same columns and differ only in
+ * their ids. Neither has Video's title search index, so compare them with
+ * each other rather than with the other two.
+ *
+ * The table is emptied before every iteration so that it doesn't keep
+ * growing through the measurement.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JpaVideoInsertBenchmark {
+
+	private static final int BATCH = 1000;
+
+	@Param({ "1", "50" })
+	public int batchSize;
+
+	private ConfigurableApplicationContext context;
+
+	private VideoRepository videos;
+
+	private JdbcTemplate jdbc;
+
+	private EntityManager entityManager;
+
+	private TransactionTemplate transactions;
+
+	@Setup(Level.Trial)
+	public void startApplication() {
+		context = BenchmarkContexts.start(Application.class,
+				"--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize);
+		videos = context.getBean(VideoRepository.class);
+		jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+		entityManager = SharedEntityManagerCreator.createSharedEntityManager(
+				context.getBean(EntityManagerFactory.class));
+		transactions = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void emptyTable() {
+		// The title search index refers to the videos, so it goes first
+		jdbc.update("delete from video_title_term");
+		jdbc.update("delete from video");
+		jdbc.update("delete from identity_id_video");
+		jdbc.update("delete from sequence_id_video");
+	}
+
+	// The scores are videos inserted per second
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Iterable<Video> saveIterable() {
+		return videos.save(newBatch());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int saveInBatches() {
+		return videos.saveInBatches(newBatch().iterator());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int saveIdentityIds() {
+		return saveBaseline(true);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int saveSequenceIds() {
+		return saveBaseline(false);
+	}
+
+	// Saves a batch the way that VideoRepositoryImpl.saveInBatches() does
+	private int saveBaseline(final boolean identity) {
+		final List<Video> batch = newBatch();
+		return transactions.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				int saved = 0;
+				for (Video v : batch) {
+					entityManager.persist(identity ? new IdentityIdVideo(v) : new SequenceIdVideo(v));
+					saved++;
+					if (saved % batchSize == 0) {
+						entityManager.flush();
+						entityManager.clear();
+					}
+				}
+				entityManager.flush();
+				entityManager.clear();
+				return saved;
+			}
+		});
+	}
+
+	private static List<Video> newBatch() {
+		List<Video> batch = new ArrayList<Video>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			batch.add(TestData.randomVideo());
+		}
+		return batch;
+	}
+
+}
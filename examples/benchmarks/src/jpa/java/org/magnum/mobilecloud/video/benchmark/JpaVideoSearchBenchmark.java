@@ -0,0 +1,132 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.VideoPage;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares VideoSvc.searchTitles() in 5-VideoControllerWithJpa, which looks
+ * up the words of the titles in the video_title_term index, with a plain
+ * LIKE '%...%' query, which has to read every title.
+ *
+ * The catalog of TestData.randomVideo() titles (e.g., "Video-" followed by
+ * a random UUID) is only loaded once per trial, because the benchmarks
+ * only read it. The biggest catalog needs a few GB of heap for the
+ * in-memory database and its index.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class JpaVideoSearchBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	private static final int SAMPLES = 1000;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+
+	private VideoSvc videoSvc;
+
+	private JdbcTemplate jdbc;
+
+	// The last group of hex digits of the UUIDs in some of the titles
+	private String[] words;
+
+	@Setup(Level.Trial)
+	public void loadCatalog() {
+		context = BenchmarkContexts.start(Application.class);
+		videoSvc = context.getBean(VideoSvc.class);
+		jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+
+		words = new String[SAMPLES];
+		context.getBean(VideoRepository.class).saveInBatches(new Iterator<Video>() {
+			private int made = 0;
+
+			@Override
+			public boolean hasNext() {
+				return made < catalogSize;
+			}
+
+			@Override
+			public Video next() {
+				Video v = TestData.randomVideo();
+				if (made < SAMPLES) {
+					String name = v.getName();
+					words[made] = name.substring(name.lastIndexOf('-') + 1);
+				}
+				made++;
+				return v;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+
+	// A whole word of a title
+	@Benchmark
+	public VideoPage searchWord() {
+		return videoSvc.searchTitles(randomWord(), PAGE_SIZE, null);
+	}
+
+	// Six characters from the middle of a word of a title
+	@Benchmark
+	public VideoPage searchSubstring() {
+		return videoSvc.searchTitles(randomWord().substring(3, 9), PAGE_SIZE, null);
+	}
+
+	// The same search as searchSubstring(), the way that it would have to
+	// be done without the index
+	@Benchmark
+	public List<Long> likeScan() {
+		return jdbc.queryForList(
+				"select id from video where lower(name) like ? order by id limit " + PAGE_SIZE,
+				Long.class, "%" + randomWord().substring(3, 9) + "%");
+	}
+
+	private String randomWord() {
+		return words[ThreadLocalRandom.current().nextInt(Math.min(SAMPLES, catalogSize))];
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.shard.ShardedVideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures how the ShardedVideoRepository in 5-VideoControllerWithJpa
+ * behaves as the videos are spread over more shards (the shards param),
+ * each one a separate in-memory H2 database with its own connection pool.
+ *
+ * findOne() only ever goes to one shard. findByName(), findAll() and
+ * count() go to every shard in parallel, so they pay for handing the
+ * query to the executor and merging the answers, and in return each shard
+ * only has to read its own share of the videos.
+ *
+ * The catalog is only loaded once per trial, because the benchmarks only
+ * read it.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JpaVideoShardBenchmark {
+
+	private static final int SAMPLES = 1000;
+
+	@Param({ "1", "2", "4", "8" })
+	public int shards;
+
+	@Param({ "100000" })
+	public int catalogSize;
+
+	private List<org.apache.tomcat.jdbc.pool.DataSource> pools;
+
+	private ExecutorService executor;
+
+	private ShardedVideoRepository videos;
+
+	private long[] ids;
+
+	private String[] titles;
+
+	@Setup(Level.Trial)
+	public void loadCatalog() {
+		String run = UUID.randomUUID().toString();
+		pools = new ArrayList<org.apache.tomcat.jdbc.pool.DataSource>();
+		for (int i = 0; i < shards; i++) {
+			org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+			pool.setDriverClassName("org.h2.Driver");
+			pool.setUrl("jdbc:h2:mem:shard-" + run + "-" + i + ";DB_CLOSE_DELAY=-1;LOG=0;UNDO_LOG=0");
+			pool.setUsername("sa");
+			pool.setPassword("");
+			pools.add(pool);
+		}
+		executor = Executors.newFixedThreadPool(shards);
+		videos = new ShardedVideoRepository(new ArrayList<DataSource>(pools), executor);
+
+		ids = new long[SAMPLES];
+		titles = new String[SAMPLES];
+		List<Video> batch = new ArrayList<Video>();
+		for (int i = 0; i < catalogSize; i++) {
+			batch.add(TestData.randomVideo());
+			if (batch.size() == 1000 || i == catalogSize - 1) {
+				videos.save(batch);
+				for (Video v : batch) {
+					int sample = (int) (v.getId() % SAMPLES);
+					ids[sample] = v.getId();
+					titles[sample] = v.getName();
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void closeShards() {
+		executor.shutdown();
+		for (org.apache.tomcat.jdbc.pool.DataSource pool : pools) {
+			new JdbcTemplate(pool).execute("shutdown");
+			pool.close();
+		}
+	}
+
+	@Benchmark
+	public Video findOne() {
+		return videos.findOne(ids[random()]);
+	}
+
+	@Benchmark
+	public List<Video> findByName() {
+		return videos.findByName(titles[random()]);
+	}
+
+	@Benchmark
+	public long count() {
+		return videos.count();
+	}
+
+	@Benchmark
+	public Iterable<Video> findAll() {
+		return videos.findAll();
+	}
+
+	private static int random() {
+		return ThreadLocalRandom.current().nextInt(SAMPLES);
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Benchmarks the JPA VideoSvc from 5-VideoControllerWithJpa, which stores
+ * its videos in an in-memory H2 database through Spring Data JPA.
+ * 
+ * The table is emptied and filled with catalogSize videos from
+ * TestData.randomVideo() before every measurement iteration.
+ * 
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JpaVideoSvcBenchmark {
+
+	private static final int ADD_BATCH = 100;
+
+	@Param({ "100", "1000", "10000" })
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+
+	private VideoSvc videoSvc;
+
+	private VideoRepository videos;
+
+	private JdbcTemplate jdbc;
+
+	private Video[] templates;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void startApplication() {
+		context = BenchmarkContexts.start(Application.class);
+		videoSvc = context.getBean(VideoSvc.class);
+		videos = context.getBean(VideoRepository.class);
+		jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void loadCatalog() {
+		// The title search index refers to the videos, so it goes first
+		jdbc.update("delete from video_title_term");
+		jdbc.update("delete from video");
+
+		templates = new Video[catalogSize];
+		List<Video> catalog = new ArrayList<Video>();
+		for (int i = 0; i < catalogSize; i++) {
+			templates[i] = TestData.randomVideo();
+			catalog.add(copyOf(templates[i], templates[i].getName()));
+		}
+		videos.save(catalog);
+	}
+
+	// Adding videos makes the catalog grow, so rather than adding videos
+	// for as long as an iteration lasts, each iteration adds one batch of
+	// ADD_BATCH videos to a freshly loaded catalog and reports the time
+	// for the whole batch.
+	//
+	// Every added video is a new entity, so that each call inserts a row
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = ADD_BATCH)
+	@Measurement(iterations = 20, batchSize = ADD_BATCH)
+	public boolean addVideo() {
+		Video template = templates[next++ % templates.length];
+		return videoSvc.addVideo(copyOf(template, template.getName() + "-" + next));
+	}
+
+	@Benchmark
+	public Collection<Video> getVideoList() {
+		return videoSvc.getVideoList();
+	}
+
+	// Looks up the title of a video that is in the catalog
+	@Benchmark
+	public Collection<Video> findByTitle() {
+		return videoSvc.findByTitle(templates[next++ % templates.length].getName());
+	}
+
+	private static Video copyOf(Video template, String name) {
+		return new Video(name, template.getUrl(), template.getDuration());
+	}
+
+}
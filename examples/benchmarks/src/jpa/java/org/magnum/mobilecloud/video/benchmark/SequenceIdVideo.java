@@ -0,0 +1,40 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.magnum.mobilecloud.video.repository.Video;
+
+/**
+ * A video whose id comes from a pooled sequence, exactly as Video's does,
+ * so its inserts can be sent in JDBC batches.
+ *
+ * @author jules
+ *
+ */
+@Entity
+@Table(name = "sequence_id_video")
+public class SequenceIdVideo extends BaselineVideo {
+
+	@Id
+	@SequenceGenerator(name = "sequence_id_video_id", sequenceName = "sequence_id_video_seq",
+			allocationSize = Video.ID_ALLOCATION_SIZE)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_id_video_id")
+	private long id;
+
+	public SequenceIdVideo() {
+	}
+
+	public SequenceIdVideo(Video v) {
+		super(v);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Compares how long it takes to encode and decode a list of videos as JSON
+ * text (format=json), which is what the VideoSvc in
+ * 5-VideoControllerWithJpa sends unless it is asked for something else,
+ * and as Smile (format=smile), the binary form of JSON that clients can
+ * ask for with the SmileConverter.
+ *
+ * decode() is the work that a client does to load the list, and encode()
+ * is the work that the service does to send it. Both use Jackson, with the
+ * same settings as the service and the SmileConverter. The size of the
+ * encoded list is printed when the trial starts.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VideoEncodingBenchmark {
+
+	@Param({ "json", "smile" })
+	public String format;
+
+	@Param({ "10000" })
+	public int catalogSize;
+
+	private ObjectWriter writer;
+
+	private ObjectReader reader;
+
+	private List<Video> videos;
+
+	private byte[] encoded;
+
+	@Setup(Level.Trial)
+	public void encodeList() throws IOException {
+		ObjectMapper mapper = "smile".equals(format)
+				? new ObjectMapper(new SmileFactory())
+				: new ObjectMapper();
+		TypeReference<List<Video>> type = new TypeReference<List<Video>>() {};
+		writer = mapper.writerWithType(type);
+		reader = mapper.reader(type);
+
+		videos = new ArrayList<Video>();
+		for (int i = 1; i <= catalogSize; i++) {
+			Video v = TestData.randomVideo();
+			v.setId(i);
+			videos.add(v);
+		}
+		encoded = encode();
+		System.out.println(catalogSize + " videos as " + format + ": " + encoded.length + " bytes");
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return writer.writeValueAsBytes(videos);
+	}
+
+	@Benchmark
+	public List<Video> decode() throws IOException {
+		return reader.readValue(encoded);
+	}
+
+}
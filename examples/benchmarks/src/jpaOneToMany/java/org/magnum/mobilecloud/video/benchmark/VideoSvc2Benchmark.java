@@ -0,0 +1,141 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.Category2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.CategoryRepository2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.Video2;
+import org.magnum.mobilecloud.video.repositorywithoutonetomany.VideoRepository2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Benchmarks VideoSvc2 from 5-VideoControllerWithJpaOneToMany, which stores
+ * the category of each video as a plain string and checks that the category
+ * exists every time a video is added.
+ * 
+ * The videos are spread across a fixed set of categories. The table is
+ * emptied and filled with catalogSize videos from TestData.randomVideo2()
+ * before every measurement iteration.
+ * 
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VideoSvc2Benchmark {
+
+	private static final int CATEGORIES = 10;
+
+	private static final int ADD_BATCH = 100;
+
+	@Param({ "100", "1000", "10000" })
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+
+	private VideoSvc2 videoSvc;
+
+	private VideoRepository2 videos;
+
+	private JdbcTemplate jdbc;
+
+	private String[] categories = new String[CATEGORIES];
+
+	private Video2[] templates;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void startApplication() {
+		context = BenchmarkContexts.start(Application.class);
+		videoSvc = context.getBean(VideoSvc2.class);
+		videos = context.getBean(VideoRepository2.class);
+		jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+
+		CategoryRepository2 categoryRepository = context.getBean(CategoryRepository2.class);
+		for (int i = 0; i < CATEGORIES; i++) {
+			Category2 c = new Category2();
+			c.setName("Category-" + i);
+			categoryRepository.save(c);
+			categories[i] = c.getName();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+
+	@Setup(Level.Iteration)
+	public void loadCatalog() {
+		jdbc.update("delete from video2");
+
+		templates = new Video2[catalogSize];
+		List<Video2> catalog = new ArrayList<Video2>();
+		for (int i = 0; i < catalogSize; i++) {
+			templates[i] = TestData.randomVideo2();
+			templates[i].setCategory(categories[i % CATEGORIES]);
+			catalog.add(copyOf(templates[i], templates[i].getName()));
+		}
+		videos.save(catalog);
+	}
+
+	// Adding videos makes the catalog grow, so rather than adding videos
+	// for as long as an iteration lasts, each iteration adds one batch of
+	// ADD_BATCH videos to a freshly loaded catalog and reports the time
+	// for the whole batch.
+	//
+	// Every added video is a new entity, so that each call inserts a row
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = ADD_BATCH)
+	@Measurement(iterations = 20, batchSize = ADD_BATCH)
+	public boolean addVideo() {
+		Video2 template = templates[next++ % templates.length];
+		return videoSvc.addVideo(copyOf(template, template.getName() + "-" + next));
+	}
+
+	@Benchmark
+	public Collection<Video2> getVideoList() {
+		return videoSvc.getVideoList();
+	}
+
+	// Looks up the title of a video that is in the catalog
+	@Benchmark
+	public Collection<Video2> findByTitle() {
+		return videoSvc.findByTitle(templates[next++ % templates.length].getName());
+	}
+
+	private static Video2 copyOf(Video2 template, String name) {
+		Video2 v = new Video2(name, template.getUrl(), template.getDuration());
+		v.setCategory(template.getCategory());
+		return v;
+	}
+
+}
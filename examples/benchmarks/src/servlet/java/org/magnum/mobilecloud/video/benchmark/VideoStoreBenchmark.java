@@ -0,0 +1,190 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.magnum.mobilecloud.video.servlet.Video;
+import org.magnum.mobilecloud.video.servlet.VideoStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares how long it takes several threads to add videos to the
+ * VideoStore from 2-VideoServlet, a synchronized ArrayList (what the
+ * VideoServlet needed to be safe) and a CopyOnWriteArrayList (what the
+ * HtmlVideoServlet used) while another thread keeps reading the whole list
+ * (the list param).
+ *
+ * Each invocation starts with an empty list, has WRITERS threads add
+ * VIDEOS_PER_WRITER videos each, and reports the time until they have all
+ * been added. The videos are made once per trial, so making them isn't
+ * measured.
+ *
+ * @author jules
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class VideoStoreBenchmark {
+
+	private static final int WRITERS = 4;
+	private static final int VIDEOS_PER_WRITER = 10000;
+
+	@Param({ "store", "synchronizedList", "copyOnWrite" })
+	public String list;
+
+	private interface Target {
+		public void add(Video v);
+
+		public int read();
+	}
+
+	private ExecutorService threads;
+
+	private Video[] videos;
+
+	private Target target;
+
+	@Setup(Level.Trial)
+	public void makeVideos() {
+		// The writers and the reader
+		threads = Executors.newFixedThreadPool(WRITERS + 1);
+
+		videos = new Video[WRITERS * VIDEOS_PER_WRITER];
+		for (int i = 0; i < videos.length; i++) {
+			videos[i] = new Video("Video-" + i, "http://coursera.org/some/video", i + 1);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopThreads() {
+		threads.shutdownNow();
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyList() {
+		if ("store".equals(list)) {
+			target = new Target() {
+				private final VideoStore videos = new VideoStore();
+
+				public void add(Video v) {
+					videos.add(v);
+				}
+
+				public int read() {
+					return countAll(videos.snapshot());
+				}
+			};
+		} else if ("synchronizedList".equals(list)) {
+			target = new Target() {
+				private final List<Video> videos = Collections.synchronizedList(new ArrayList<Video>());
+
+				public void add(Video v) {
+					videos.add(v);
+				}
+
+				public int read() {
+					List<Video> copy;
+					synchronized (videos) {
+						copy = new ArrayList<Video>(videos);
+					}
+					return countAll(copy);
+				}
+			};
+		} else {
+			target = new Target() {
+				private final List<Video> videos = new CopyOnWriteArrayList<Video>();
+
+				public void add(Video v) {
+					videos.add(v);
+				}
+
+				public int read() {
+					return countAll(videos);
+				}
+			};
+		}
+	}
+
+	// Copying the whole array on every add makes the CopyOnWriteArrayList
+	// quadratic, and every read of the synchronized list holds up all of
+	// the writers while it copies the list
+	@Benchmark
+	public int addVideos() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+
+		Future<?> reader = threads.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				start.await();
+				while (writing.get()) {
+					target.read();
+				}
+				return null;
+			}
+		});
+		List<Future<?>> writers = new ArrayList<Future<?>>();
+		for (int w = 0; w < WRITERS; w++) {
+			final int first = w * VIDEOS_PER_WRITER;
+			writers.add(threads.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = first; i < first + VIDEOS_PER_WRITER; i++) {
+						target.add(videos[i]);
+					}
+					return null;
+				}
+			}));
+		}
+
+		start.countDown();
+		for (Future<?> writer : writers) {
+			writer.get();
+		}
+		writing.set(false);
+		reader.get();
+
+		int count = target.read();
+		if (count != videos.length) {
+			throw new IllegalStateException("Added " + videos.length + " videos but read " + count);
+		}
+		return count;
+	}
+
+	private static int countAll(List<Video> videos) {
+		int count = 0;
+		for (Video v : videos) {
+			if (v != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.magnum.mobilecloud.video.benchmark;
+
+import java.util.Properties;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.web.ServletContextApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+
+/**
+ * Starts an example's Application so that a benchmark can get the VideoSvc
+ * and its repositories from Spring, wired up exactly as they would be when
+ * the example runs.
+ * 
+ * @author jules
+ *
+ */
+public class BenchmarkContexts {
+
+	/**
+	 * Starts the Spring context for the given Application class, without
+	 * starting a web server. The benchmarks call the controllers directly,
+	 * so there is no need for one.
+	 * 
+	 * The args are passed to the Application as if they had been given on
+	 * the command line, so a benchmark can override the example's
+	 * application.properties (e.g., "--video.dedupe=true").
+	 * 
+	 * @param application
+	 * @param args
+	 * @return
+	 */
+	public static ConfigurableApplicationContext start(Class<?> application, String... args) {
+		SpringApplication app = new SpringApplication(application);
+		app.setShowBanner(false);
+		app.setWebEnvironment(false);
+
+		// The Applications are annotated with @EnableWebMvc, which needs a
+		// ServletContext even when there is no web server. This is the same
+		// trick that Spring's integration tests use.
+		app.setApplicationContextClass(GenericWebApplicationContext.class);
+		app.addInitializers(new ServletContextApplicationContextInitializer(new MockServletContext()));
+
+		// Spring Boot prints every SQL statement by default, which would
+		// take longer than running most of the statements
+		Properties defaults = new Properties();
+		defaults.setProperty("spring.jpa.show-sql", "false");
+		app.setDefaultProperties(defaults);
+		return app.run(args);
+	}
+
+	/**
+	 * Starts the given Application with its web server, for the benchmarks
+	 * that measure what happens on the wire rather than in the controllers.
+	 * The args are passed on as they are by start().
+	 * 
+	 * @param application
+	 * @param args
+	 * @return
+	 */
+	public static ConfigurableApplicationContext startServer(Class<?> application, String... args) {
+		SpringApplication app = new SpringApplication(application);
+		app.setShowBanner(false);
+
+		Properties defaults = new Properties();
+		defaults.setProperty("spring.jpa.show-sql", "false");
+		app.setDefaultProperties(defaults);
+		return app.run(args);
+	}
+
+}